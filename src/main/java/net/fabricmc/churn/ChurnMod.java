@@ -8,6 +8,7 @@ import net.fabricmc.churn.ui.ConsoleLogger;
 import net.fabricmc.churn.ui.ProgressConfig;
 import net.fabricmc.churn.ui.ProgressDisplayManager;
 import net.fabricmc.churn.generator.GeneratorManager;
+import net.fabricmc.churn.generator.TPSMonitor;
 
 public class ChurnMod implements ModInitializer {
     public static final String MOD_ID = "churn";
@@ -38,17 +39,28 @@ public class ChurnMod implements ModInitializer {
 
         // Register server tick handler to apply main-thread applier work each tick
         ServerTickEvents.START_SERVER_TICK.register(server -> {
+            TPSMonitor.getInstance().tickStart(System.nanoTime());
             try {
                 GeneratorManager.getInstance().tickApply();
             } catch (Exception e) {
                 ConsoleLogger.error("Tick apply error: %s", e);
             }
         });
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            TPSMonitor.getInstance().tickEnd(System.nanoTime());
+            try {
+                GeneratorManager.getInstance().tickEnd();
+            } catch (Exception e) {
+                ConsoleLogger.error("Tick end error: %s", e);
+            }
+        });
 
         // Clean up on server stopping
         ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
             try {
                 GeneratorManager.getInstance().cancelCurrentJob();
+                // Let a job's output finish closing before the JVM goes away
+                GeneratorManager.getInstance().awaitClose();
             } catch (Exception e) {
                 // ignore
             }
@@ -74,7 +74,7 @@ public class ChurnCommand {
                 // /churn format <type>
                 .then(literal("format")
                     .then(argument("type", StringArgumentType.word())
-                        .suggests((ctx, builder) -> suggestOptions(builder, new String[]{"json", "csv"}))
+                        .suggests((ctx, builder) -> suggestOptions(builder, JobConfig.OUTPUT_FORMATS))
                         .executes(ChurnCommand::executeSetFormat)))
                 
                 // /churn option <key> <value>
@@ -177,7 +177,7 @@ public class ChurnCommand {
         src.sendMessage(Text.literal("  §7/churn threads <value> §r - Set worker threads (1-32)"));
         src.sendMessage(Text.literal("  §7/churn output <path> §r - Set output directory"));
         src.sendMessage(Text.literal("  §7/churn minTps <value> §r - Set minimum TPS threshold (0-20)"));
-        src.sendMessage(Text.literal("  §7/churn format <json|csv> §r - Set output format"));
+        src.sendMessage(Text.literal("  §7/churn format <json|csv|pack|arrow|sqlite> §r - Set output format"));
         src.sendMessage(Text.literal("  §7/churn reset §r - Reset all settings to defaults"));
         src.sendMessage(Text.literal(""));
         src.sendMessage(Text.literal("§eJob Management:"));
@@ -318,8 +318,8 @@ public class ChurnCommand {
         String playerId = src.getPlayer() != null ? src.getPlayer().getUuidAsString() : "console";
         ChurnSettings settings = ChurnSettings.getSettings(playerId);
 
-        if (!format.equals("json") && !format.equals("csv")) {
-            src.sendMessage(Text.literal("§cInvalid format: " + format + " (must be 'json' or 'csv')"));
+        if (!Arrays.asList(JobConfig.OUTPUT_FORMATS).contains(format)) {
+            src.sendMessage(Text.literal("§cInvalid format: " + format + " (must be one of " + String.join(", ", JobConfig.OUTPUT_FORMATS) + ")"));
             return 0;
         }
         settings.setOutputFormat(format);
@@ -456,6 +456,11 @@ public class ChurnCommand {
         ServerCommandSource src = ctx.getSource();
         try {
             GeneratorManager manager = GeneratorManager.getInstance();
+            if ("json".equalsIgnoreCase(format)) {
+                // Machine-readable status including per-stage pipeline metrics
+                src.sendMessage(Text.literal(manager.getStatusJson()));
+                return 1;
+            }
             long total = manager.getChunksTotal();
             long completed = manager.getChunksCompleted();
             
@@ -0,0 +1,495 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal writer for the Arrow IPC file format (Feather v2) with non-nullable
+ * Int32, Int64 and Utf8 columns, so the output loads directly with
+ * {@code pyarrow.feather.read_table}, {@code pandas.read_feather} or DuckDB.
+ *
+ * The file is {@code ARROW1}, the schema message, one record batch message per
+ * {@link #writeBatch} call, an end-of-stream marker and the footer listing the
+ * batches. Message metadata is a FlatBuffer built by the small builder below
+ * (metadata version V5, little-endian); batch bodies are the column buffers,
+ * each padded to 8 bytes. Nothing but the current batch and the list of batch
+ * positions is held in memory.
+ *
+ * A file that lost its footer (the process died while writing it) can be
+ * {@link #recover}ed: its complete record batches are kept and the footer is
+ * written behind them.
+ */
+public class ArrowIpcWriter implements AutoCloseable {
+    public enum Type { INT32, INT64, UTF8 }
+
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    private static final short METADATA_V5 = 4;
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORD_BATCH = 3;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_UTF8 = 5;
+
+    private final FileChannel ch;
+    private final String[] names;
+    private final Type[] types;
+    private final List<long[]> blocks = new ArrayList<>(); // offset, metadata length, body length
+    private long position;
+    private long rows;
+
+    private ArrowIpcWriter(FileChannel ch, String[] names, Type[] types, long position) {
+        this.ch = ch;
+        this.names = names;
+        this.types = types;
+        this.position = position;
+    }
+
+    public ArrowIpcWriter(Path file, String[] names, Type[] types) throws IOException {
+        this.names = names;
+        this.types = types;
+        this.ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer head = ByteBuffer.allocate(8);
+        head.put(MAGIC).put(new byte[2]).flip();
+        write(head);
+        writeMessage(schemaMessage(), null);
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    /**
+     * Write one record batch of {@code length} rows. Each column is an {@code int[]}
+     * (INT32), {@code long[]} (INT64) or {@code String[]} (UTF8) with at least
+     * {@code length} values.
+     */
+    public void writeBatch(int length, Object[] columns) throws IOException {
+        if (length == 0) return;
+        int n = types.length;
+        List<ByteBuffer> buffers = new ArrayList<>();
+        long[][] bufferSpans = new long[n * 3][]; // validity, (offsets), data per column
+        int spans = 0;
+        long bodyLength = 0;
+        for (int c = 0; c < n; c++) {
+            bufferSpans[spans++] = new long[]{bodyLength, 0}; // no validity bitmap: no nulls
+            if (types[c] == Type.UTF8) {
+                String[] values = (String[]) columns[c];
+                byte[][] utf = new byte[length][];
+                ByteBuffer offsets = le(4L * (length + 1));
+                int total = 0;
+                offsets.putInt(0);
+                for (int i = 0; i < length; i++) {
+                    utf[i] = values[i].getBytes(StandardCharsets.UTF_8);
+                    total += utf[i].length;
+                    offsets.putInt(total);
+                }
+                ByteBuffer data = le(total);
+                for (byte[] b : utf) data.put(b);
+                bodyLength = addBuffer(buffers, offsets, bodyLength, bufferSpans, spans++);
+                bodyLength = addBuffer(buffers, data, bodyLength, bufferSpans, spans++);
+            } else if (types[c] == Type.INT32) {
+                int[] values = (int[]) columns[c];
+                ByteBuffer data = le(4L * length);
+                for (int i = 0; i < length; i++) data.putInt(values[i]);
+                bodyLength = addBuffer(buffers, data, bodyLength, bufferSpans, spans++);
+            } else {
+                long[] values = (long[]) columns[c];
+                ByteBuffer data = le(8L * length);
+                for (int i = 0; i < length; i++) data.putLong(values[i]);
+                bodyLength = addBuffer(buffers, data, bodyLength, bufferSpans, spans++);
+            }
+        }
+        byte[] meta = recordBatchMessage(length, Arrays.copyOf(bufferSpans, spans), bodyLength);
+        writeMessage(meta, buffers);
+        rows += length;
+    }
+
+    private static ByteBuffer le(long size) {
+        return ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long addBuffer(List<ByteBuffer> out, ByteBuffer b, long at, long[][] spans, int span) {
+        b.flip();
+        int len = b.remaining();
+        spans[span] = new long[]{at, len};
+        out.add(b);
+        int pad = pad8(len);
+        if (pad > 0) out.add(ByteBuffer.allocate(pad));
+        return at + len + pad;
+    }
+
+    private static int pad8(long n) {
+        return (int) ((8 - (n & 7)) & 7);
+    }
+
+    /**
+     * Encapsulated message: continuation marker, metadata length, FlatBuffer padded
+     * to 8 bytes, then the body.
+     */
+    private void writeMessage(byte[] meta, List<ByteBuffer> body) throws IOException {
+        int padded = meta.length + pad8(8 + meta.length);
+        ByteBuffer prefix = le(8);
+        prefix.putInt(0xFFFFFFFF).putInt(padded).flip();
+        long start = position;
+        write(prefix);
+        write(ByteBuffer.wrap(meta));
+        write(ByteBuffer.allocate(padded - meta.length));
+        long bodyLength = 0;
+        if (body != null) {
+            for (ByteBuffer b : body) {
+                bodyLength += b.remaining();
+                write(b);
+            }
+            blocks.add(new long[]{start, 8 + padded, bodyLength});
+        }
+    }
+
+    private void write(ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) position += ch.write(b);
+    }
+
+    /**
+     * Write the end-of-stream marker and the footer, then close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            ByteBuffer eos = le(8);
+            eos.putInt(0xFFFFFFFF).putInt(0).flip();
+            write(eos);
+            byte[] footer = footer();
+            write(ByteBuffer.wrap(footer));
+            ByteBuffer tail = le(4 + MAGIC.length);
+            tail.putInt(footer.length).put(MAGIC).flip();
+            write(tail);
+        } finally {
+            ch.close();
+        }
+    }
+
+    /**
+     * Reopen an unterminated file written with the same columns, dropping whatever
+     * follows its last complete record batch. Returns null if not even the header
+     * and schema are intact. Closing the returned writer terminates the file.
+     */
+    public static ArrowIpcWriter recover(Path file, String[] names, Type[] types) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = ch.size();
+            ByteBuffer head = le(8);
+            if (!readFully(ch, head, 0) || !Arrays.equals(Arrays.copyOf(head.array(), MAGIC.length), MAGIC)) {
+                ch.close();
+                return null;
+            }
+            ArrowIpcWriter w = new ArrowIpcWriter(ch, names, types, 0);
+            long pos = 8;
+            long end = -1; // end of the schema or the last complete batch
+            ByteBuffer prefix = le(8);
+            while (pos + 8 <= size) {
+                prefix.clear();
+                if (!readFully(ch, prefix, pos) || prefix.getInt(0) != 0xFFFFFFFF) break;
+                int metaLength = prefix.getInt(4);
+                if (metaLength <= 0 || pos + 8 + metaLength > size) break; // end of stream, or torn
+                ByteBuffer meta = le(metaLength);
+                if (!readFully(ch, meta, pos + 8)) break;
+                byte headerType;
+                long bodyLength;
+                try {
+                    headerType = (byte) messageField(meta, 1, 1);
+                    bodyLength = messageField(meta, 3, 8);
+                } catch (IndexOutOfBoundsException e) {
+                    break; // garbage where metadata should be
+                }
+                long next = pos + 8 + metaLength + bodyLength;
+                if (bodyLength < 0 || next > size) break;
+                if (headerType == HEADER_SCHEMA && end < 0) {
+                    end = next;
+                } else if (headerType == HEADER_RECORD_BATCH && end >= 0) {
+                    w.blocks.add(new long[]{pos, 8 + metaLength, bodyLength});
+                    end = next;
+                } else {
+                    break;
+                }
+                pos = next;
+            }
+            if (end < 0) {
+                ch.close();
+                return null;
+            }
+            ch.truncate(end);
+            ch.position(end);
+            w.position = end;
+            return w;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer b, long at) throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, at);
+            if (n < 0) return false;
+            at += n;
+        }
+        return true;
+    }
+
+    /**
+     * Scalar field of a Message table ({@code size} 1 or 8 bytes), 0 when absent.
+     */
+    private static long messageField(ByteBuffer meta, int field, int size) {
+        int table = meta.getInt(0);
+        int vtable = table - meta.getInt(table);
+        int vtableSize = meta.getShort(vtable) & 0xFFFF;
+        if (4 + 2 * field + 2 > vtableSize) return 0;
+        int offset = meta.getShort(vtable + 4 + 2 * field) & 0xFFFF;
+        if (offset == 0) return 0;
+        return size == 1 ? meta.get(table + offset) : meta.getLong(table + offset);
+    }
+
+    // ---- FlatBuffer metadata ----------------------------------------------
+
+    private int schema(FlatBufferBuilder fb) {
+        int[] fields = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            int name = fb.createString(names[i]);
+            int type;
+            byte typeType;
+            if (types[i] == Type.UTF8) {
+                fb.startTable(0);
+                type = fb.endTable();
+                typeType = TYPE_UTF8;
+            } else {
+                fb.startTable(2);
+                fb.addInt(0, types[i] == Type.INT32 ? 32 : 64, 0);
+                fb.addBool(1, true, false);
+                type = fb.endTable();
+                typeType = TYPE_INT;
+            }
+            fb.startVector(4, 0, 4);
+            int children = fb.endVector(0);
+            fb.startTable(7);
+            fb.addOffset(0, name);
+            fb.addBool(1, false, false);        // nullable
+            fb.addByte(2, typeType, 0);          // type_type
+            fb.addOffset(3, type);
+            fb.addOffset(5, children);
+            fields[i] = fb.endTable();
+        }
+        fb.startVector(4, fields.length, 4);
+        for (int i = fields.length - 1; i >= 0; i--) fb.putOffset(fields[i]);
+        int fieldVector = fb.endVector(fields.length);
+        fb.startTable(4);
+        fb.addOffset(1, fieldVector); // endianness left at its default, Little
+        return fb.endTable();
+    }
+
+    private byte[] schemaMessage() {
+        FlatBufferBuilder fb = new FlatBufferBuilder();
+        int schema = schema(fb);
+        return fb.finish(message(fb, HEADER_SCHEMA, schema, 0));
+    }
+
+    private byte[] recordBatchMessage(int length, long[][] buffers, long bodyLength) {
+        FlatBufferBuilder fb = new FlatBufferBuilder();
+        fb.startVector(16, buffers.length, 8);
+        for (int i = buffers.length - 1; i >= 0; i--) {
+            fb.putLong(buffers[i][1]); // length
+            fb.putLong(buffers[i][0]); // offset
+        }
+        int bufferVector = fb.endVector(buffers.length);
+        fb.startVector(16, types.length, 8);
+        for (int i = types.length - 1; i >= 0; i--) {
+            fb.putLong(0);      // null_count
+            fb.putLong(length); // length
+        }
+        int nodeVector = fb.endVector(types.length);
+        fb.startTable(3);
+        fb.addLong(0, length, 0);
+        fb.addOffset(1, nodeVector);
+        fb.addOffset(2, bufferVector);
+        int batch = fb.endTable();
+        return fb.finish(message(fb, HEADER_RECORD_BATCH, batch, bodyLength));
+    }
+
+    private static int message(FlatBufferBuilder fb, byte headerType, int header, long bodyLength) {
+        fb.startTable(4);
+        fb.addLong(3, bodyLength, 0);
+        fb.addOffset(2, header);
+        fb.addShort(0, METADATA_V5, (short) 0);
+        fb.addByte(1, headerType, 0);
+        return fb.endTable();
+    }
+
+    private byte[] footer() {
+        FlatBufferBuilder fb = new FlatBufferBuilder();
+        int schema = schema(fb);
+        fb.startVector(24, blocks.size(), 8);
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            long[] b = blocks.get(i);
+            fb.putLong(b[2]);       // bodyLength
+            fb.putInt(0);           // struct padding
+            fb.putInt((int) b[1]);  // metaDataLength
+            fb.putLong(b[0]);       // offset
+        }
+        int batches = fb.endVector(blocks.size());
+        fb.startVector(24, 0, 8);
+        int dictionaries = fb.endVector(0);
+        fb.startTable(4);
+        fb.addOffset(1, schema);
+        fb.addOffset(2, dictionaries);
+        fb.addOffset(3, batches);
+        fb.addShort(0, METADATA_V5, (short) 0);
+        return fb.finish(fb.endTable());
+    }
+
+    /**
+     * Back-to-front FlatBuffer builder covering what Arrow metadata needs: tables
+     * with scalar and offset fields, strings and vectors of offsets or structs.
+     * Offsets are counted from the end of the buffer, as in the reference builder.
+     */
+    private static final class FlatBufferBuilder {
+        private ByteBuffer bb = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        private int space = bb.capacity();
+        private int minAlign = 1;
+        private int[] vtable;
+        private int objectStart;
+
+        int offset() {
+            return bb.capacity() - space;
+        }
+
+        private void grow(int needed) {
+            while (space < needed) {
+                int old = bb.capacity();
+                ByteBuffer nb = ByteBuffer.allocate(old * 2).order(ByteOrder.LITTLE_ENDIAN);
+                nb.position(old);
+                bb.position(0);
+                nb.put(bb);
+                bb = nb;
+                space += old;
+            }
+        }
+
+        /**
+         * Pad so that after writing {@code additional} bytes the head is aligned to
+         * {@code size}.
+         */
+        void prep(int size, int additional) {
+            if (size > minAlign) minAlign = size;
+            int pad = (~(offset() + additional) + 1) & (size - 1);
+            grow(pad + size + additional);
+            for (int i = 0; i < pad; i++) bb.put(--space, (byte) 0);
+        }
+
+        void putByte(byte v) { grow(1); bb.put(--space, v); }
+        void putShort(short v) { grow(2); space -= 2; bb.putShort(space, v); }
+        void putInt(int v) { grow(4); space -= 4; bb.putInt(space, v); }
+        void putLong(long v) { grow(8); space -= 8; bb.putLong(space, v); }
+
+        void putOffset(int off) {
+            prep(4, 0);
+            putInt(offset() - off + 4);
+        }
+
+        int createString(String s) {
+            byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+            prep(4, utf.length + 1);
+            putByte((byte) 0);
+            for (int i = utf.length - 1; i >= 0; i--) putByte(utf[i]);
+            putInt(utf.length);
+            return offset();
+        }
+
+        void startVector(int elemSize, int count, int alignment) {
+            prep(4, elemSize * count);
+            prep(alignment, elemSize * count);
+        }
+
+        int endVector(int count) {
+            prep(4, 0);
+            putInt(count);
+            return offset();
+        }
+
+        void startTable(int fields) {
+            vtable = new int[fields];
+            objectStart = offset();
+        }
+
+        void addBool(int slot, boolean v, boolean def) {
+            if (v == def) return;
+            prep(1, 0);
+            putByte((byte) (v ? 1 : 0));
+            vtable[slot] = offset();
+        }
+
+        void addByte(int slot, byte v, int def) {
+            if (v == def) return;
+            prep(1, 0);
+            putByte(v);
+            vtable[slot] = offset();
+        }
+
+        void addShort(int slot, short v, short def) {
+            if (v == def) return;
+            prep(2, 0);
+            putShort(v);
+            vtable[slot] = offset();
+        }
+
+        void addInt(int slot, int v, int def) {
+            if (v == def) return;
+            prep(4, 0);
+            putInt(v);
+            vtable[slot] = offset();
+        }
+
+        void addLong(int slot, long v, long def) {
+            if (v == def) return;
+            prep(8, 0);
+            putLong(v);
+            vtable[slot] = offset();
+        }
+
+        void addOffset(int slot, int off) {
+            putOffset(off);
+            vtable[slot] = offset();
+        }
+
+        int endTable() {
+            prep(4, 0);
+            putInt(0); // vtable offset, patched below
+            int object = offset();
+            int used = vtable.length;
+            while (used > 0 && vtable[used - 1] == 0) used--;
+            for (int i = used - 1; i >= 0; i--) {
+                prep(2, 0);
+                putShort((short) (vtable[i] != 0 ? object - vtable[i] : 0));
+            }
+            putShort((short) (object - objectStart));
+            putShort((short) ((used + 2) * 2));
+            int vt = offset();
+            bb.putInt(bb.capacity() - object, vt - object);
+            vtable = null;
+            return object;
+        }
+
+        byte[] finish(int root) {
+            prep(minAlign, 4);
+            putOffset(root);
+            byte[] out = new byte[offset()];
+            bb.position(space);
+            bb.get(out);
+            return out;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Columnar output for analytics: two Arrow IPC (Feather v2) files per run under
+ * {@code <output>/arrow}.
+ *
+ * <ul>
+ * <li>{@code chunks-<n>.arrow}: chunkX, chunkZ, minY, maxY, blockCount, entityCount
+ * (int32) and timestamp (int64), one row per chunk.</li>
+ * <li>{@code palette-<n>.arrow}: chunkX, chunkZ, blockState (utf8), count (int32),
+ * one row per block state of a chunk.</li>
+ * </ul>
+ *
+ * Rows are collected into column arrays and written as a record batch whenever a
+ * region completes (once at least {@value #MIN_BATCH_ROWS} chunks are buffered) or
+ * the arrays are full, so memory is bounded by one batch. Files are written as
+ * {@code .part} and renamed when the job ends or pauses; a resumed job starts the
+ * next {@code <n>}, so readers load all files of the directory as one dataset.
+ *
+ * A {@code .part} file left by a run that died is salvaged when the next writer
+ * opens the directory: its complete batches are kept, the footer is written and
+ * the file gets its final name. Only chunks of complete batches were checkpointed,
+ * so nothing checkpointed is lost; a file too short to salvage is deleted.
+ *
+ * A chunk is reported {@link Durable durable} once the batch holding its row, and
+ * the palette rows written before it, are in the files.
+ */
+public class ArrowOutputWriter implements ChunkSink {
+    public static final String DIR_NAME = "arrow";
+    private static final int MIN_BATCH_ROWS = 1024;
+    private static final int MAX_BATCH_ROWS = 65536;
+
+    private static final String[] CHUNK_NAMES = {"chunkX", "chunkZ", "minY", "maxY", "blockCount", "entityCount", "timestamp"};
+    private static final ArrowIpcWriter.Type[] CHUNK_TYPES = {
+        ArrowIpcWriter.Type.INT32, ArrowIpcWriter.Type.INT32, ArrowIpcWriter.Type.INT32, ArrowIpcWriter.Type.INT32,
+        ArrowIpcWriter.Type.INT32, ArrowIpcWriter.Type.INT32, ArrowIpcWriter.Type.INT64};
+    private static final String[] PALETTE_NAMES = {"chunkX", "chunkZ", "blockState", "count"};
+    private static final ArrowIpcWriter.Type[] PALETTE_TYPES = {
+        ArrowIpcWriter.Type.INT32, ArrowIpcWriter.Type.INT32, ArrowIpcWriter.Type.UTF8, ArrowIpcWriter.Type.INT32};
+
+    private final RegionCountdown pending = new RegionCountdown();
+    private final Path chunksPart;
+    private final Path palettePart;
+    private final ArrowIpcWriter chunksFile;
+    private final ArrowIpcWriter paletteFile;
+
+    // Current batch; guarded by this
+    private final int[][] chunkInts = new int[6][MAX_BATCH_ROWS];
+    private final long[] timestamps = new long[MAX_BATCH_ROWS];
+    private int chunkRows;
+    private int[] palX = new int[MAX_BATCH_ROWS];
+    private int[] palZ = new int[MAX_BATCH_ROWS];
+    private String[] palState = new String[MAX_BATCH_ROWS];
+    private int[] palCount = new int[MAX_BATCH_ROWS];
+    private int paletteRows;
+    private boolean closed;
+    private volatile Durable durable;
+
+    // Reported in the status
+    private volatile long batches;
+    private volatile long chunksWritten;
+    private volatile long paletteWritten;
+
+    public ArrowOutputWriter(Path outputDir) throws IOException {
+        Path dir = outputDir.resolve(DIR_NAME);
+        Files.createDirectories(dir);
+        salvage(dir);
+        int n = 0;
+        while (Files.exists(dir.resolve(name("chunks", n))) || Files.exists(dir.resolve(name("chunks", n) + ".part"))) n++;
+        chunksPart = dir.resolve(name("chunks", n) + ".part");
+        palettePart = dir.resolve(name("palette", n) + ".part");
+        chunksFile = new ArrowIpcWriter(chunksPart, CHUNK_NAMES, CHUNK_TYPES);
+        paletteFile = new ArrowIpcWriter(palettePart, PALETTE_NAMES, PALETTE_TYPES);
+    }
+
+    private static String name(String table, int n) {
+        return String.format(Locale.ROOT, "%s-%05d.arrow", table, n);
+    }
+
+    /**
+     * Terminate and rename the {@code .part} files of earlier runs.
+     */
+    private static void salvage(Path dir) throws IOException {
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(dir, "*.arrow.part")) {
+            for (Path part : parts) {
+                String name = part.getFileName().toString();
+                ArrowIpcWriter w;
+                if (name.startsWith("chunks-")) {
+                    w = ArrowIpcWriter.recover(part, CHUNK_NAMES, CHUNK_TYPES);
+                } else if (name.startsWith("palette-")) {
+                    w = ArrowIpcWriter.recover(part, PALETTE_NAMES, PALETTE_TYPES);
+                } else {
+                    continue;
+                }
+                if (w == null) {
+                    System.err.println("[Churn] deleting unreadable " + name);
+                    Files.delete(part);
+                    continue;
+                }
+                w.close();
+                move(part);
+                System.out.println("[Churn] salvaged " + name);
+            }
+        }
+    }
+
+    @Override
+    public boolean setDurableListener(Durable listener) {
+        this.durable = listener;
+        return true;
+    }
+
+    @Override
+    public void expect(int regionX, int regionZ, int chunks) {
+        pending.expect(regionX, regionZ, chunks);
+    }
+
+    @Override
+    public synchronized void write(ChunkData c) throws IOException {
+        if (closed) throw new IOException("arrow writer is closed");
+        if (chunkRows == MAX_BATCH_ROWS) flush();
+        int r = chunkRows++;
+        chunkInts[0][r] = c.chunkX;
+        chunkInts[1][r] = c.chunkZ;
+        chunkInts[2][r] = c.minY;
+        chunkInts[3][r] = c.maxY;
+        chunkInts[4][r] = c.blockCount;
+        chunkInts[5][r] = c.entities.size();
+        timestamps[r] = c.timestamp;
+        for (Map.Entry<String, Integer> e : c.blockPalette.entrySet()) {
+            if (paletteRows == palX.length) growPalette();
+            int p = paletteRows++;
+            palX[p] = c.chunkX;
+            palZ[p] = c.chunkZ;
+            palState[p] = e.getKey();
+            palCount[p] = e.getValue();
+        }
+        if (pending.countDown(RegionCountdown.keyOfChunk(c.chunkX, c.chunkZ)) && chunkRows >= MIN_BATCH_ROWS) flush();
+    }
+
+    @Override
+    public synchronized void skip(int chunkX, int chunkZ) {
+        if (pending.countDown(RegionCountdown.keyOfChunk(chunkX, chunkZ)) && chunkRows >= MIN_BATCH_ROWS && !closed) {
+            try {
+                flush();
+            } catch (IOException e) {
+                System.err.println("[Churn] failed to write arrow batch: " + e);
+            }
+        }
+    }
+
+    /**
+     * Chunks with large palettes can outgrow the palette arrays; they grow up to four
+     * times their size, after which the palette rows go out as a batch of their own.
+     */
+    private void growPalette() throws IOException {
+        if (paletteRows < MAX_BATCH_ROWS * 4) {
+            int size = palX.length * 2;
+            palX = Arrays.copyOf(palX, size);
+            palZ = Arrays.copyOf(palZ, size);
+            palState = Arrays.copyOf(palState, size);
+            palCount = Arrays.copyOf(palCount, size);
+        } else {
+            paletteFile.writeBatch(paletteRows, new Object[]{palX, palZ, palState, palCount});
+            paletteWritten += paletteRows;
+            paletteRows = 0;
+        }
+    }
+
+    /**
+     * Write the palette rows, then the chunk rows that own them, then report the
+     * chunks. A batch that fails to write is dropped and its chunks stay unmarked.
+     */
+    private void flush() throws IOException {
+        if (paletteRows > 0) {
+            int n = paletteRows;
+            paletteRows = 0;
+            try {
+                paletteFile.writeBatch(n, new Object[]{palX, palZ, palState, palCount});
+            } catch (IOException e) {
+                chunkRows = 0;
+                throw e;
+            } finally {
+                Arrays.fill(palState, 0, n, null);
+            }
+            paletteWritten += n;
+        }
+        if (chunkRows > 0) {
+            int n = chunkRows;
+            chunkRows = 0;
+            Object[] cols = new Object[7];
+            for (int i = 0; i < 6; i++) cols[i] = chunkInts[i];
+            cols[6] = timestamps;
+            chunksFile.writeBatch(n, cols);
+            chunksWritten += n;
+            batches++;
+            Durable l = durable;
+            if (l != null) {
+                for (int r = 0; r < n; r++) l.durable(chunkInts[0][r], chunkInts[1][r]);
+            }
+        }
+    }
+
+    /**
+     * Write the last batch and the footers, then give both files their final names.
+     */
+    @Override
+    public synchronized void close(boolean finished) throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            flush();
+        } finally {
+            chunksFile.close();
+            paletteFile.close();
+        }
+        move(chunksPart);
+        move(palettePart);
+    }
+
+    private static void move(Path part) throws IOException {
+        String name = part.getFileName().toString();
+        Path fin = part.resolveSibling(name.substring(0, name.length() - ".part".length()));
+        try {
+            Files.move(part, fin, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, fin, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public String statsJson() {
+        return "{\"format\":\"arrow\",\"chunks\":" + chunksWritten + ",\"paletteRows\":" + paletteWritten
+            + ",\"batches\":" + batches + "}";
+    }
+}
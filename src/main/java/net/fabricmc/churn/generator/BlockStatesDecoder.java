@@ -0,0 +1,156 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decoder for 1.18+ {@code sections[].block_states}: a palette of block states plus a
+ * packed {@code data} long array holding one palette index per block (4096 per
+ * section, YZX order).
+ *
+ * Indices use max(4, ceil(log2(palette size))) bits and do not straddle longs: each
+ * long holds floor(64 / bits) entries from its low bits up, the rest is padding.
+ * A palette with a single entry has no data array at all.
+ *
+ * Counting is done per palette index and then folded into
+ * {@link ChunkData#blockPalette}, keyed by the full block state
+ * ({@code minecraft:oak_log[axis=y]}).
+ */
+public final class BlockStatesDecoder {
+    public static final int SECTION_BLOCKS = 4096;
+    private static final int MIN_BITS = 4;
+
+    // Per-job counters, reported under "sections" in the status
+    static final LongAdder UNIFORM_SECTIONS = new LongAdder();
+    static final LongAdder DECODED_SECTIONS = new LongAdder();
+    static final LongAdder UNIFORM_CHUNKS = new LongAdder();
+
+    // Per-thread scratch: counts per palette index and the unpacked words
+    private static final ThreadLocal<int[]> COUNTS = ThreadLocal.withInitial(() -> new int[1 << 12]);
+    private static final ThreadLocal<long[]> WORDS = ThreadLocal.withInitial(() -> new long[SECTION_BLOCKS]);
+
+    private BlockStatesDecoder() {
+    }
+
+    /**
+     * Count the blocks of one section into {@code cd.blockPalette}. Returns the number
+     * of non-air blocks in the section.
+     */
+    public static int decodeSection(NbtCompound blockStates, ChunkData cd) throws IOException {
+        NbtList palette = blockStates.getList("palette");
+        if (palette == null || palette.size() == 0) throw new IOException("block_states without palette");
+        int n = palette.size();
+        if (n > SECTION_BLOCKS) throw new IOException("block_states palette too large: " + n);
+        NbtArray data = blockStates.getArray("data");
+
+        if (n == 1 || data == null || data.length() == 0) {
+            // Single-entry palette: the whole section is one state, nothing to unpack
+            UNIFORM_SECTIONS.increment();
+            String state = stateKey(palette.getCompound(0));
+            cd.blockPalette.merge(state, SECTION_BLOCKS, Integer::sum);
+            return isAir(state) ? 0 : SECTION_BLOCKS;
+        }
+        if (data.type() != NbtReader.TAG_LONG_ARRAY) throw new IOException("block_states data is not a long array");
+
+        int bits = Math.max(MIN_BITS, 32 - Integer.numberOfLeadingZeros(n - 1));
+        int perLong = 64 / bits;
+        int words = (SECTION_BLOCKS + perLong - 1) / perLong;
+        if (data.length() != words) {
+            throw new IOException("block_states data has " + data.length() + " longs, expected " + words + " for " + bits + " bits");
+        }
+
+        DECODED_SECTIONS.increment();
+        long[] packed = WORDS.get();
+        for (int i = 0; i < words; i++) packed[i] = data.getLong(i);
+
+        int[] counts = COUNTS.get();
+        int slots = 1 << bits; // at most 4096 given the palette bound
+        java.util.Arrays.fill(counts, 0, slots, 0);
+
+        count(packed, words, bits, counts);
+
+        int nonAir = 0;
+        int invalid = 0;
+        for (int i = 0; i < slots; i++) {
+            int c = counts[i];
+            if (c == 0) continue;
+            if (i >= n) {
+                invalid += c; // index past the palette: corrupt section
+                continue;
+            }
+            String state = stateKey(palette.getCompound(i));
+            cd.blockPalette.merge(state, c, Integer::sum);
+            if (!isAir(state)) nonAir += c;
+        }
+        if (invalid > 0) cd.metadata.merge("invalid_palette_indices", String.valueOf(invalid),
+            (a, b) -> String.valueOf(Integer.parseInt(a) + Integer.parseInt(b)));
+        return nonAir;
+    }
+
+    /**
+     * Clear the per-job section counters (called when a job starts).
+     */
+    public static void resetStats() {
+        UNIFORM_SECTIONS.reset();
+        DECODED_SECTIONS.reset();
+        UNIFORM_CHUNKS.reset();
+    }
+
+    /**
+     * Section counters as a JSON object: sections taking the uniform fast path,
+     * sections unpacked in full, and chunks made only of uniform sections.
+     */
+    public static String statsJson() {
+        return "{\"uniform\":" + UNIFORM_SECTIONS.sum()
+            + ",\"decoded\":" + DECODED_SECTIONS.sum()
+            + ",\"uniformChunks\":" + UNIFORM_CHUNKS.sum() + "}";
+    }
+
+    /**
+     * Unpack the first {@code words} words into per-index counts. The last word of a
+     * section only counts the entries up to {@link #SECTION_BLOCKS}; its padding is
+     * ignored.
+     */
+    static void count(long[] packed, int words, int bits, int[] counts) {
+        int perLong = 64 / bits;
+        long mask = (1L << bits) - 1;
+        for (int w = 0; w < words; w++) {
+            long word = packed[w];
+            int entries = Math.min(perLong, SECTION_BLOCKS - w * perLong);
+            for (int j = 0; j < entries; j++) {
+                counts[(int) (word & mask)]++;
+                word >>>= bits;
+            }
+        }
+    }
+
+    /**
+     * Block state key: the name plus sorted properties, e.g. {@code minecraft:oak_log[axis=y]}.
+     */
+    static String stateKey(NbtCompound entry) {
+        if (entry == null) return "minecraft:air";
+        String name = entry.getString("Name");
+        if (name == null) name = "minecraft:air";
+        NbtCompound props = entry.getCompound("Properties");
+        if (props == null || props.size() == 0) return name;
+        Map<String, String> sorted = new TreeMap<>();
+        for (String key : props.keySet()) {
+            Object v = props.get(key);
+            sorted.put(key, v == null ? "" : v.toString());
+        }
+        StringBuilder sb = new StringBuilder(name).append('[');
+        boolean first = true;
+        for (Map.Entry<String, String> e : sorted.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(e.getKey()).append('=').append(e.getValue());
+        }
+        return sb.append(']').toString();
+    }
+
+    static boolean isAir(String state) {
+        return state.equals("minecraft:air") || state.equals("minecraft:cave_air") || state.equals("minecraft:void_air");
+    }
+}
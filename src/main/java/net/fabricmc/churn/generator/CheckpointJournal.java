@@ -0,0 +1,249 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Append-only journal of done chunks with group commit.
+ *
+ * {@link #append} only adds the chunk to an in-memory batch. A single committer
+ * thread swaps the batch out, writes it with one positional write and then syncs
+ * according to the {@link Durability} mode, so thousands of completions cost one
+ * write and at most one fsync. Once the journal holds
+ * {@code checkpointCompactEntries} entries it is compacted: the checkpoint bitmap
+ * is forced to disk as the snapshot and the journal is truncated.
+ *
+ * On startup {@link #replay} re-applies whatever the journal holds on top of the
+ * bitmap, so after a crash at most the unsynced tail of completions is redone.
+ * If the journal file cannot be written, appends are dropped and the committer
+ * forces the bitmap to disk once per sync interval instead.
+ */
+public class CheckpointJournal {
+    public static final String FILE_NAME = "checkpoints.journal";
+    private static final int ENTRY_BYTES = 8; // chunkX, chunkZ
+
+    public enum Durability {
+        /** Never fsync the journal; the OS decides when it reaches disk. */
+        NONE,
+        /** fsync once per interval or entry count, whichever comes first. */
+        INTERVAL,
+        /** fsync after every group write. */
+        BATCH;
+
+        public static Durability parse(String s) {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final RegionCheckpointManager bitmap;
+    private final FileChannel channel;
+    private final Durability durability;
+    private final long syncIntervalNanos;
+    private final int syncEntries;
+    private final int compactEntries;
+    private final Thread committer;
+
+    // Batch being filled by append(); guarded by lock
+    private final Object lock = new Object();
+    private long[] pending = new long[1024];
+    private int pendingCount;
+    private boolean closing;
+    // Set when the journal file cannot be written; appends are dropped from then on
+    private volatile boolean failed;
+
+    // Committer thread only
+    private long[] writing = new long[1024];
+    private ByteBuffer out = ByteBuffer.allocateDirect(1024 * ENTRY_BYTES);
+    private long position;
+    private long journalEntries;
+    private int unsyncedEntries;
+    private long lastSync = System.nanoTime();
+
+    // Stats, read by the status command
+    private volatile long entriesWritten;
+    private volatile long writes;
+    private volatile long syncs;
+    private volatile long compactions;
+
+    CheckpointJournal(RegionCheckpointManager bitmap, Path file, Durability durability,
+                      long syncIntervalMs, int syncEntries, int compactEntries) throws IOException {
+        this.bitmap = bitmap;
+        this.durability = durability;
+        this.syncIntervalNanos = syncIntervalMs * 1_000_000L;
+        this.syncEntries = syncEntries;
+        this.compactEntries = compactEntries;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Drop a torn trailing entry from a crash mid-write
+        this.position = channel.size() - channel.size() % ENTRY_BYTES;
+        this.journalEntries = position / ENTRY_BYTES;
+        this.committer = new Thread(this::run, "Churn-checkpoint-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Re-apply a journal left by a previous run to the bitmap. Returns the number of
+     * entries read.
+     */
+    static long replay(Path file, RegionCheckpointManager bitmap) throws IOException {
+        if (!Files.exists(file)) return 0;
+        long entries = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            while (ch.read(buf) > 0 || buf.position() > 0) {
+                buf.flip();
+                if (buf.remaining() < ENTRY_BYTES) break; // torn tail
+                while (buf.remaining() >= ENTRY_BYTES) {
+                    bitmap.markChunkDone(buf.getInt(), buf.getInt());
+                    entries++;
+                }
+                buf.compact();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Queue a completed chunk for the next group write. Never blocks on I/O.
+     */
+    public void append(int chunkX, int chunkZ) {
+        if (failed) return; // the committer flushes the bitmap instead
+        synchronized (lock) {
+            if (pendingCount == pending.length) pending = java.util.Arrays.copyOf(pending, pending.length * 2);
+            pending[pendingCount++] = ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+            if (pendingCount == 1) lock.notifyAll();
+        }
+    }
+
+    /**
+     * Write out what is pending, sync, compact and stop the committer.
+     */
+    public void close() {
+        synchronized (lock) {
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("[Churn] failed to close checkpoint journal: " + e);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                int n;
+                boolean last;
+                synchronized (lock) {
+                    while (pendingCount == 0 && !closing) {
+                        long waitMs = durability == Durability.INTERVAL && unsyncedEntries > 0
+                            ? Math.max(1, (syncIntervalNanos - (System.nanoTime() - lastSync)) / 1_000_000L)
+                            : 0;
+                        lock.wait(waitMs);
+                        if (pendingCount == 0 && waitMs > 0) break; // interval elapsed with unsynced data
+                    }
+                    last = closing && pendingCount == 0;
+                    long[] t = pending;
+                    pending = writing;
+                    writing = t;
+                    n = pendingCount;
+                    pendingCount = 0;
+                }
+                if (n > 0) write(writing, n);
+                maybeSync(last);
+                if (journalEntries >= compactEntries || last) compact();
+                if (last) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("[Churn] checkpoint journal failed, falling back to bitmap flushes: " + e);
+            flushUntilClosed();
+        }
+    }
+
+    /**
+     * After a journal failure: stop buffering appends and instead force the bitmap
+     * to disk once per sync interval, and a last time on close.
+     */
+    private void flushUntilClosed() {
+        synchronized (lock) {
+            failed = true;
+            pendingCount = 0;
+        }
+        long intervalMs = Math.max(100, syncIntervalNanos / 1_000_000L);
+        try {
+            while (true) {
+                bitmap.flush();
+                syncs++;
+                synchronized (lock) {
+                    if (closing) return;
+                    lock.wait(intervalMs); // the next pass flushes once more after close()
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(long[] batch, int n) throws IOException {
+        if (out.capacity() < n * ENTRY_BYTES) out = ByteBuffer.allocateDirect(Integer.highestOneBit(n * ENTRY_BYTES) << 1);
+        out.clear();
+        for (int i = 0; i < n; i++) out.putLong(batch[i]); // high int chunkX, low int chunkZ
+        out.flip();
+        while (out.hasRemaining()) position += channel.write(out, position);
+        journalEntries += n;
+        unsyncedEntries += n;
+        entriesWritten += n;
+        writes++;
+    }
+
+    private void maybeSync(boolean force) throws IOException {
+        if (unsyncedEntries == 0) return;
+        boolean sync;
+        switch (durability) {
+            case BATCH: sync = true; break;
+            case INTERVAL: sync = force || unsyncedEntries >= syncEntries || System.nanoTime() - lastSync >= syncIntervalNanos; break;
+            default: sync = false;
+        }
+        if (!sync) return;
+        channel.force(false);
+        unsyncedEntries = 0;
+        lastSync = System.nanoTime();
+        syncs++;
+    }
+
+    /**
+     * Make the bitmap the durable snapshot and start the journal over.
+     */
+    private void compact() throws IOException {
+        if (journalEntries == 0) return;
+        bitmap.flush();
+        channel.truncate(0);
+        channel.force(true);
+        position = 0;
+        journalEntries = 0;
+        unsyncedEntries = 0;
+        compactions++;
+    }
+
+    public String statsJson() {
+        return "{\"durability\":\"" + durability.name().toLowerCase(Locale.ROOT) + "\""
+            + ",\"entries\":" + entriesWritten
+            + ",\"writes\":" + writes
+            + ",\"syncs\":" + syncs
+            + ",\"compactions\":" + compactions
+            + ",\"failed\":" + failed + "}";
+    }
+}
@@ -0,0 +1,70 @@
+package net.fabricmc.churn.generator;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Growable byte buffer recycled through a small global pool. Decompressed chunk
+ * data lives in one of these between the inflate and parse stages, so steady-state
+ * extraction does not allocate a new array per chunk.
+ */
+public class ChunkBuffer {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MAX_POOLED = 256;
+    // Buffers grown past this (oversized chunks) are dropped instead of pooled
+    private static final int MAX_RETAINED_CAPACITY = 8 * 1024 * 1024;
+
+    private static final ConcurrentLinkedQueue<ChunkBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    public byte[] array;
+    public int length;
+
+    private ChunkBuffer(int capacity) {
+        this.array = new byte[capacity];
+    }
+
+    public static ChunkBuffer acquire() {
+        ChunkBuffer b = POOL.poll();
+        if (b == null) return new ChunkBuffer(INITIAL_CAPACITY);
+        POOLED.decrementAndGet();
+        b.length = 0;
+        return b;
+    }
+
+    /**
+     * Return the buffer to the pool. It must not be used afterwards.
+     */
+    public void release() {
+        length = 0;
+        if (array.length > MAX_RETAINED_CAPACITY) return;
+        if (POOLED.incrementAndGet() > MAX_POOLED) {
+            POOLED.decrementAndGet();
+            return;
+        }
+        POOL.offer(this);
+    }
+
+    /**
+     * Make room for at least {@code extra} more bytes after {@link #length}.
+     */
+    public void ensureSpare(int extra) {
+        if (array.length - length >= extra) return;
+        long wanted = Math.max((long) array.length * 2, (long) length + extra);
+        byte[] grown = new byte[(int) Math.min(wanted, Integer.MAX_VALUE - 8)];
+        System.arraycopy(array, 0, grown, 0, length);
+        array = grown;
+    }
+
+    public int spare() {
+        return array.length - length;
+    }
+
+    /**
+     * Read-only view of the filled part of the buffer.
+     */
+    public ByteBuffer view() {
+        return ByteBuffer.wrap(array, 0, length).asReadOnlyBuffer();
+    }
+}
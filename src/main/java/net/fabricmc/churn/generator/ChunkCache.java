@@ -1,19 +1,18 @@
 package net.fabricmc.churn.generator;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
- * Simple LRU cache for chunk serialized bytes to limit memory usage.
+ * Simple LRU cache for chunk serialized bytes, bounded by total size in bytes.
+ * Jobs set the bound from their memory budget via {@link #setMaxBytes}.
  */
 public class ChunkCache {
-    private static final int MAX_CACHED_CHUNKS = 1000;
-    private static final Map<String, byte[]> cache = new LinkedHashMap<String, byte[]>(MAX_CACHED_CHUNKS, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
-            return size() > MAX_CACHED_CHUNKS;
-        }
-    };
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final Map<String, byte[]> cache = new LinkedHashMap<String, byte[]>(256, 0.75f, true);
+    private static long maxBytes = DEFAULT_MAX_BYTES;
+    private static long bytes;
 
     public static synchronized byte[] get(String key) {
         return cache.get(key);
@@ -21,10 +20,33 @@ public class ChunkCache {
 
     public static synchronized void put(String key, byte[] value) {
         if (key == null || value == null) return;
-        cache.put(key, value);
+        if (value.length > maxBytes) return;
+        byte[] old = cache.put(key, value);
+        bytes += value.length - (old == null ? 0 : old.length);
+        evict();
+    }
+
+    /**
+     * Change the size bound, evicting least recently used entries as needed.
+     */
+    public static synchronized void setMaxBytes(long max) {
+        maxBytes = Math.max(0, max);
+        evict();
+    }
+
+    private static void evict() {
+        Iterator<byte[]> it = cache.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().length;
+            it.remove();
+        }
     }
 
     public static synchronized int size() {
         return cache.size();
     }
+
+    public static synchronized long bytes() {
+        return bytes;
+    }
 }
@@ -0,0 +1,225 @@
+package net.fabricmc.churn.generator;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Pooled chunk decompressor. Each instance owns its {@link Inflater}s and inflates
+ * straight from the (mapped) payload buffer into a pooled {@link ChunkBuffer}, so
+ * no streams or intermediate arrays are created per chunk. Instances are taken with
+ * {@link #acquire()} and handed back with {@link #release()}; the pool is bounded,
+ * and an instance that does not fit is {@code end()}ed so its native zlib memory
+ * is freed at once rather than whenever GC gets to it. Pipeline stages may run on
+ * virtual threads, which is why this is not a thread-local.
+ *
+ * Supports all region compression types: gzip (1), zlib (2), uncompressed (3)
+ * and LZ4 (4). Per-codec chunk, byte and time counters are kept for the status.
+ */
+public class ChunkDecompressor {
+    public static final int COMPRESSION_GZIP = 1;
+    public static final int COMPRESSION_ZLIB = 2;
+    public static final int COMPRESSION_NONE = 3;
+    public static final int COMPRESSION_LZ4 = 4;
+    private static final String[] CODEC_NAMES = {null, "gzip", "zlib", "none", "lz4"};
+
+    // Indexed by compression type
+    private static final LongAdder[] CHUNKS = adders();
+    private static final LongAdder[] BYTES_IN = adders();
+    private static final LongAdder[] BYTES_OUT = adders();
+    private static final LongAdder[] NANOS = adders();
+
+    private static final int STREAM_BUFFER = 64 * 1024;
+
+    private static final int MAX_POOLED = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final ConcurrentLinkedQueue<ChunkDecompressor> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private final Inflater zlib = new Inflater();
+    private final Inflater raw = new Inflater(true); // gzip body, header parsed by hand
+
+    private ChunkDecompressor() {
+    }
+
+    public static ChunkDecompressor acquire() {
+        ChunkDecompressor d = POOL.poll();
+        if (d == null) return new ChunkDecompressor();
+        POOLED.decrementAndGet();
+        return d;
+    }
+
+    /**
+     * Return the decompressor to the pool, or free its inflaters if the pool is
+     * full. It must not be used afterwards.
+     */
+    public void release() {
+        if (POOLED.incrementAndGet() > MAX_POOLED) {
+            POOLED.decrementAndGet();
+            zlib.end();
+            raw.end();
+            return;
+        }
+        POOL.offer(this);
+    }
+
+    /**
+     * Decompress {@code payload} into {@code out} (appending after out.length).
+     * The payload buffer's position is advanced past the consumed input.
+     */
+    public void decompress(int compression, ByteBuffer payload, ChunkBuffer out) throws IOException {
+        long start = System.nanoTime();
+        int in = payload.remaining();
+        int before = out.length;
+        switch (compression) {
+            case COMPRESSION_GZIP:
+                skipGzipHeader(payload);
+                inflate(raw, payload, out);
+                break;
+            case COMPRESSION_ZLIB:
+                inflate(zlib, payload, out);
+                break;
+            case COMPRESSION_NONE:
+                out.ensureSpare(in);
+                payload.get(out.array, out.length, in);
+                out.length += in;
+                break;
+            case COMPRESSION_LZ4:
+                Lz4BlockDecoder.decode(payload, out);
+                break;
+            default:
+                throw new IOException("Unknown compression: " + compression);
+        }
+        CHUNKS[compression].increment();
+        BYTES_IN[compression].add(in);
+        BYTES_OUT[compression].add(out.length - before);
+        NANOS[compression].add(System.nanoTime() - start);
+    }
+
+    /**
+     * Wrap a compressed stream (e.g. an external .mcc file) so it is decompressed
+     * incrementally. The returned stream uses this decompressor's inflaters, so it
+     * must be closed before the decompressor is released.
+     */
+    public InputStream openStream(int compression, InputStream in) throws IOException {
+        switch (compression) {
+            case COMPRESSION_GZIP:
+                skipGzipHeader(in);
+                raw.reset();
+                return new InflaterInputStream(in, raw, STREAM_BUFFER);
+            case COMPRESSION_ZLIB:
+                zlib.reset();
+                return new InflaterInputStream(in, zlib, STREAM_BUFFER);
+            case COMPRESSION_NONE:
+                return in;
+            case COMPRESSION_LZ4:
+                return Lz4BlockDecoder.stream(in);
+            default:
+                throw new IOException("Unknown compression: " + compression);
+        }
+    }
+
+    /**
+     * Clear the per-codec counters (called when a job starts).
+     */
+    public static void resetStats() {
+        for (int i = 1; i < CODEC_NAMES.length; i++) {
+            CHUNKS[i].reset();
+            BYTES_IN[i].reset();
+            BYTES_OUT[i].reset();
+            NANOS[i].reset();
+        }
+    }
+
+    /**
+     * Per-codec counters as a JSON object; throughput is decompressed MB per
+     * second of decompression time, summed over all threads.
+     */
+    public static String statsJson() {
+        StringBuilder sb = new StringBuilder("{");
+        boolean first = true;
+        for (int i = 1; i < CODEC_NAMES.length; i++) {
+            long chunks = CHUNKS[i].sum();
+            if (chunks == 0) continue;
+            long nanos = NANOS[i].sum();
+            long out = BYTES_OUT[i].sum();
+            double mbPerSec = nanos == 0 ? 0.0 : (out / 1_048_576.0) / (nanos / 1e9);
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('"').append(CODEC_NAMES[i]).append("\":{")
+              .append("\"chunks\":").append(chunks)
+              .append(",\"bytesIn\":").append(BYTES_IN[i].sum())
+              .append(",\"bytesOut\":").append(out)
+              .append(",\"mbPerSec\":").append(String.format(java.util.Locale.ROOT, "%.1f", mbPerSec))
+              .append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] a = new LongAdder[CODEC_NAMES.length];
+        for (int i = 0; i < a.length; i++) a[i] = new LongAdder();
+        return a;
+    }
+
+    private static void inflate(Inflater inf, ByteBuffer payload, ChunkBuffer out) throws IOException {
+        inf.reset();
+        inf.setInput(payload);
+        try {
+            while (!inf.finished()) {
+                if (out.spare() == 0) out.ensureSpare(out.array.length);
+                int n = inf.inflate(out.array, out.length, out.spare());
+                out.length += n;
+                if (n == 0) {
+                    if (inf.finished()) break;
+                    if (inf.needsInput()) throw new IOException("truncated compressed chunk data");
+                    if (inf.needsDictionary()) throw new IOException("compressed chunk needs a preset dictionary");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt compressed chunk data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stream variant of {@link #skipGzipHeader(ByteBuffer)}.
+     */
+    private static void skipGzipHeader(InputStream in) throws IOException {
+        DataInputStream d = new DataInputStream(in);
+        if (d.readUnsignedByte() != 0x1F || d.readUnsignedByte() != 0x8B) throw new IOException("not in GZIP format");
+        if (d.readUnsignedByte() != 8) throw new IOException("unsupported GZIP compression method");
+        int flags = d.readUnsignedByte();
+        d.skipNBytes(6); // mtime, xfl, os
+        if ((flags & 0x04) != 0) d.skipNBytes(d.readUnsignedByte() | (d.readUnsignedByte() << 8)); // FEXTRA
+        if ((flags & 0x08) != 0) while (d.readUnsignedByte() != 0) { } // FNAME
+        if ((flags & 0x10) != 0) while (d.readUnsignedByte() != 0) { } // FCOMMENT
+        if ((flags & 0x02) != 0) d.skipNBytes(2); // FHCRC
+    }
+
+    /**
+     * Advance past an RFC 1952 member header, leaving the buffer at the deflate body.
+     */
+    private static void skipGzipHeader(ByteBuffer in) throws IOException {
+        try {
+            if ((in.get() & 0xFF) != 0x1F || (in.get() & 0xFF) != 0x8B) throw new IOException("not in GZIP format");
+            if (in.get() != 8) throw new IOException("unsupported GZIP compression method");
+            int flags = in.get() & 0xFF;
+            in.position(in.position() + 6); // mtime, xfl, os
+            if ((flags & 0x04) != 0) { // FEXTRA
+                int xlen = (in.get() & 0xFF) | ((in.get() & 0xFF) << 8);
+                in.position(in.position() + xlen);
+            }
+            if ((flags & 0x08) != 0) while (in.get() != 0) { } // FNAME
+            if ((flags & 0x10) != 0) while (in.get() != 0) { } // FCOMMENT
+            if ((flags & 0x02) != 0) in.position(in.position() + 2); // FHCRC
+        } catch (RuntimeException e) {
+            throw new IOException("truncated GZIP header");
+        }
+    }
+}
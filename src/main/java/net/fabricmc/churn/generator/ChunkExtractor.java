@@ -1,9 +1,9 @@
 package net.fabricmc.churn.generator;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.*;
 import java.util.*;
-import java.util.zip.*;
 
 /**
  * Chunk extraction engine for Minecraft Anvil format (.mca region files).
@@ -12,12 +12,20 @@ import java.util.zip.*;
 public class ChunkExtractor {
     private static final int REGION_SIZE = 32; // 32x32 chunks per region
     private static final int CHUNK_SIZE = 16;  // 16x16 blocks per chunk
+    private static final int EXTERNAL_FLAG = 0x80; // compression byte flag for .mcc chunks
+    private static final int EXTERNAL_READ_BUFFER = 64 * 1024;
     private final WorldNavigator navigator;
     private final ProgressLogger logger;
+    private final NbtProjection projection; // tags decoded by the parse stage
 
     public ChunkExtractor(WorldNavigator navigator, ProgressLogger logger) {
+        this(navigator, logger, NbtProjection.DEFAULT);
+    }
+
+    public ChunkExtractor(WorldNavigator navigator, ProgressLogger logger, NbtProjection projection) {
         this.navigator = navigator;
         this.logger = logger;
+        this.projection = projection;
     }
 
     /**
@@ -49,6 +57,7 @@ public class ChunkExtractor {
             int[] parts = regionKey.split("\\.") .length == 2 ? 
                 new int[]{Integer.parseInt(regionKey.split("\\.")[0]), Integer.parseInt(regionKey.split("\\.")[1])} : new int[2];
             
+            RegionFile region = null;
             try {
                 Path regionFile = navigator.getRegionFile(parts[0], parts[1]);
                 if (regionFile == null) {
@@ -56,10 +65,10 @@ public class ChunkExtractor {
                     continue;
                 }
 
-                File rf = regionFile.toFile();
-                if (!rf.exists() || rf.length() == 0) {
+                region = RegionFile.acquire(regionFile);
+                if (region == null) {
                     // Region file missing or empty; warn once and skip
-                    net.fabricmc.churn.ui.ConsoleLogger.warn("Region file not found or empty: %s", rf.getName());
+                    net.fabricmc.churn.ui.ConsoleLogger.warn("Region file not found or empty: %s", regionFile.getFileName());
                     continue;
                 }
 
@@ -74,7 +83,7 @@ public class ChunkExtractor {
                             continue;
                         }
 
-                        ChunkData cd = extractChunkFromRegion(regionFile, coord[0], coord[1]);
+                        ChunkData cd = extractChunkFromRegion(region, coord[0], coord[1]);
                         if (cd != null) {
                             chunks.add(cd);
                             // Cache serialized representation (simple JSON bytes used elsewhere)
@@ -87,6 +96,8 @@ public class ChunkExtractor {
                 }
             } catch (Exception e) {
                 net.fabricmc.churn.ui.ConsoleLogger.warn("failed to extract region %s: %s", regionKey, e.getMessage());
+            } finally {
+                if (region != null) region.release();
             }
         }
 
@@ -94,93 +105,177 @@ public class ChunkExtractor {
     }
 
     /**
-     * Extract a single chunk from a region file using NBT parsing.
+     * Acquire the shared mapping for a region, or null if the region file is missing.
+     * The caller must {@link RegionFile#release()} it.
      */
-    private ChunkData extractChunkFromRegion(Path regionFile, int chunkX, int chunkZ) {
-        try {
-            int localX = Math.floorMod(chunkX, REGION_SIZE);
-            int localZ = Math.floorMod(chunkZ, REGION_SIZE);
-            int offset = (localX + localZ * REGION_SIZE) * 4096;
-
-            byte[] header = new byte[4];
-            try (RandomAccessFile raf = new RandomAccessFile(regionFile.toFile(), "r")) {
-                raf.seek((long) offset);
-                int read = raf.read(header);
-                if (read < 4) {
-                    // No header present for this chunk
-                    return null;
-                }
-
-                int dataLength = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16) | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
-                if (dataLength <= 0) return null; // empty chunk or not present
-
-                int comp = raf.read();
-                if (comp == -1) return null;
-                byte compression = (byte) comp;
-                int payloadLen = dataLength - 1;
-                if (payloadLen <= 0) return null;
-
-                byte[] compressedData = new byte[payloadLen];
-                int got = raf.read(compressedData);
-                if (got < payloadLen) {
-                    // truncated data
-                    net.fabricmc.churn.ui.ConsoleLogger.warnCorruptedRegion(regionFile.getFileName().toString(), "truncated chunk data");
-                    return null;
-                }
-
-                byte[] decompressed;
-                try {
-                    decompressed = decompress(compression, compressedData);
-                } catch (IOException ioe) {
-                    // Unknown compression or decompression failure -> warn and skip
-                    net.fabricmc.churn.ui.ConsoleLogger.warnCorruptedRegion(regionFile.getFileName().toString(), ioe.getMessage());
-                    return null;
-                }
+    public RegionFile openRegion(int regionX, int regionZ) throws IOException {
+        Path regionFile = navigator.getRegionFile(regionX, regionZ);
+        return regionFile == null ? null : RegionFile.acquire(regionFile);
+    }
 
-                return parseNBT(chunkX, chunkZ, decompressed);
-            }
+    /**
+     * Extract a single chunk from a mapped region file using NBT parsing.
+     * Runs the read, inflate and parse steps back to back on the calling thread.
+     */
+    ChunkData extractChunkFromRegion(RegionFile region, int chunkX, int chunkZ) {
+        try {
+            ChunkWork work = new ChunkWork(chunkX, chunkZ);
+            if (!readChunk(region, work)) return null;
+            inflate(work);
+            if (work.data != null) return null; // inflate failed, already reported
+            parse(work);
+            return work.data;
         } catch (Exception e) {
             // Graceful fallback: log a warning and return null so the job can continue
-            net.fabricmc.churn.ui.ConsoleLogger.warn("Exception reading chunk %d,%d from %s: %s", chunkX, chunkZ, regionFile.getFileName().toString(), e.getMessage());
+            net.fabricmc.churn.ui.ConsoleLogger.warn("Exception reading chunk %d,%d from %s: %s", chunkX, chunkZ, region.getPath().getFileName().toString(), e.getMessage());
             return null;
         }
     }
 
     /**
-     * Decompress chunk data (gzip or zlib).
+     * Read stage: attach the chunk's compressed payload to the work item. The region
+     * is retained until the payload has been inflated. Returns false if the chunk is
+     * absent or could not be read; only the latter marks the work item failed.
+     */
+    boolean readChunk(RegionFile region, ChunkWork work) {
+        int index = RegionFile.index(work.chunkX, work.chunkZ);
+        if (!region.hasChunk(index)) {
+            // No location entry: chunk was never generated
+            return false;
+        }
+        try {
+            int compression = region.compressionType(index);
+            if (compression < 0) {
+                work.failed = true;
+                return false;
+            }
+            work.timestamp = region.timestamp(index);
+            if ((compression & EXTERNAL_FLAG) != 0) {
+                // Oversized chunk: the payload lives in c.<x>.<z>.mcc next to the region
+                work.compression = compression & ~EXTERNAL_FLAG;
+                work.external = region.getPath().resolveSibling("c." + work.chunkX + "." + work.chunkZ + ".mcc");
+                return true;
+            }
+            ByteBuffer payload = region.chunkPayload(index);
+            if (payload == null || !payload.hasRemaining()) {
+                work.failed = true;
+                return false;
+            }
+            work.compression = compression;
+            work.payload = payload;
+            region.retain();
+            work.region = region;
+            return true;
+        } catch (IOException ioe) {
+            net.fabricmc.churn.ui.ConsoleLogger.warnCorruptedRegion(region.getPath().getFileName().toString(), ioe.getMessage());
+            work.failed = true;
+            return false;
+        }
+    }
+
+    /**
+     * Inflate stage: decompress the payload and release the region reference.
+     * On failure the work item is completed with a stub marked as failed.
      */
-    private byte[] decompress(byte compression, byte[] data) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        InputStream inflater;
-        if (compression == 1) {
-            // gzip
-            inflater = new GZIPInputStream(bais);
-        } else if (compression == 2) {
-            // zlib/deflate
-            inflater = new InflaterInputStream(bais);
+    void inflate(ChunkWork work) {
+        // External chunks are inflated while parsing, see parse()
+        if (work.data != null || work.external != null) return;
+        ChunkBuffer out = ChunkBuffer.acquire();
+        ChunkDecompressor decompressor = ChunkDecompressor.acquire();
+        try {
+            decompressor.decompress(work.compression, work.payload, out);
+            work.decompressed = out;
+            out = null;
+        } catch (IOException ioe) {
+            // Unknown compression or decompression failure -> warn and skip
+            String regionName = work.region == null ? "?" : work.region.getPath().getFileName().toString();
+            net.fabricmc.churn.ui.ConsoleLogger.warnCorruptedRegion(regionName, ioe.getMessage());
+            work.data = failedChunk(work.chunkX, work.chunkZ);
+            work.failed = true;
+        } finally {
+            decompressor.release();
+            if (out != null) out.release();
+            work.releasePayload();
+        }
+    }
+
+    /**
+     * Parse stage: turn the decompressed NBT into chunk data and recycle the buffer.
+     * The chunk's timestamp is the region's last-modified entry in milliseconds, the
+     * same instant passthrough copies, rather than the time of extraction.
+     */
+    void parse(ChunkWork work) throws IOException {
+        if (work.data != null) return;
+        if (work.external != null) {
+            work.data = parseExternal(work);
         } else {
-            throw new IOException("Unknown compression: " + compression);
+            ChunkBuffer buf = work.decompressed;
+            work.decompressed = null;
+            try {
+                work.data = parseNBT(work.chunkX, work.chunkZ, buf.array, buf.length);
+            } finally {
+                buf.release();
+            }
         }
+        if (work.timestamp != 0) work.data.timestamp = work.timestamp * 1000L;
+    }
 
-        byte[] buffer = new byte[8192];
-        int count;
-        while ((count = inflater.read(buffer)) != -1) {
-            baos.write(buffer, 0, count);
+    /**
+     * Stream an oversized chunk from its .mcc file through the inflater into the
+     * parser, so the decompressed chunk is never held as a single array.
+     */
+    private ChunkData parseExternal(ChunkWork work) {
+        Path file = work.external;
+        work.external = null;
+        if (!Files.exists(file)) {
+            net.fabricmc.churn.ui.ConsoleLogger.warnCorruptedRegion(file.getFileName().toString(), "external chunk file missing");
+            work.failed = true;
+            return failedChunk(work.chunkX, work.chunkZ);
         }
-        inflater.close();
-        return baos.toByteArray();
+        // The decoders read the file in bulk; only the decoded side, which the parser
+        // reads a few bytes at a time, needs a buffer
+        ChunkDecompressor decompressor = ChunkDecompressor.acquire();
+        try (InputStream in = decompressor.openStream(work.compression, Files.newInputStream(file))) {
+            NbtCompound root = NbtReader.readCompact(new BufferedInputStream(in, EXTERNAL_READ_BUFFER), projection);
+            ChunkData cd = NBTParser.extractChunkData(root, work.chunkX, work.chunkZ);
+            cd.metadata.put("external", "true");
+            return cd;
+        } catch (IOException ioe) {
+            net.fabricmc.churn.ui.ConsoleLogger.warnCorruptedRegion(file.getFileName().toString(), ioe.getMessage());
+            work.failed = true;
+            return failedChunk(work.chunkX, work.chunkZ);
+        } finally {
+            decompressor.release(); // after the stream is closed
+        }
+    }
+
+    /**
+     * Placeholder for a chunk that could not be read from the world.
+     */
+    static ChunkData failedChunk(int chunkX, int chunkZ) {
+        ChunkData cd = new ChunkData();
+        cd.chunkX = chunkX;
+        cd.chunkZ = chunkZ;
+        cd.minY = -64;
+        cd.maxY = 320;
+        cd.blockCount = 0;
+        cd.timestamp = System.currentTimeMillis();
+        cd.metadata.put("status", "extraction_failed");
+        return cd;
     }
 
     /**
      * Parse NBT (Named Binary Tag) data and extract chunk information.
-     * Uses full NBT parsing to extract chunk metadata, entities, and block data.
+     * Only the tags in the job's {@link NbtProjection} are decoded; the rest are skipped.
      */
     private ChunkData parseNBT(int chunkX, int chunkZ, byte[] data) throws IOException {
+        return parseNBT(chunkX, chunkZ, data, data.length);
+    }
+
+    private ChunkData parseNBT(int chunkX, int chunkZ, byte[] data, int length) throws IOException {
         try {
-            NBTParser parser = new NBTParser(data);
-            Map<String, Object> nbtRoot = parser.parseRoot();
+            // Array tags in the compact tree are views into data; it is consumed before the buffer is released
+            NbtCompound nbtRoot = NbtReader.readCompact(ByteBuffer.wrap(data, 0, length), projection);
             return NBTParser.extractChunkData(nbtRoot, chunkX, chunkZ);
         } catch (Exception e) {
             // If NBT parsing fails, return a stub chunk with error metadata
@@ -0,0 +1,346 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary chunk pack: one random-access file per region ({@code r.<x>.<z>.cpk}),
+ * written as a {@link ShardedOutputWriter} format and read by {@link ChunkPackReader}.
+ *
+ * <pre>
+ * header   "CHPK" u8 version, 3 reserved bytes
+ * records  uvarint length, then the record:
+ *            svarint chunkX, chunkZ, minY, maxY
+ *            uvarint blockCount, svarint64 timestamp, uvarint entityCount
+ *            uvarint paletteSize, (string blockState, uvarint count)*
+ *            uvarint metadataSize, (string key, string value)*
+ *          string = uvarint UTF-8 length + bytes
+ * index    (i32 chunkZ, i32 chunkX, i64 record offset)*, sorted by z then x
+ * trailer  i64 index offset, i32 entry count, "CHPK"
+ * </pre>
+ *
+ * Records are buffered and written in {@value #BLOCK_BYTES}-byte blocks; the index
+ * is kept in memory (at most 1024 entries) and written when the shard is sealed.
+ * A {@code .part} file has no index yet: reopening it (after a pause or an LRU
+ * eviction) rebuilds the index by walking the records and drops a torn tail.
+ * Reopening a sealed pack reads its index and cuts it off before appending. A
+ * chunk written twice keeps its latest record. Fixed-size fields are big-endian.
+ */
+public final class ChunkPack {
+    public static final String SUFFIX = ".cpk";
+    public static final int MAGIC = 0x4348504B; // "CHPK"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+    public static final int INDEX_ENTRY_BYTES = 16;
+    public static final int TRAILER_BYTES = 16;
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    public static final ShardedOutputWriter.Format FORMAT = new ShardedOutputWriter.Format() {
+        @Override
+        public String suffix() {
+            return SUFFIX;
+        }
+
+        @Override
+        public byte[] encode(ChunkData chunk) {
+            return ChunkPack.encode(chunk);
+        }
+
+        @Override
+        public ShardedOutputWriter.Shard open(Path file) throws IOException {
+            return new Writer(file);
+        }
+    };
+
+    private ChunkPack() {
+    }
+
+    /**
+     * Length-prefixed record for one chunk.
+     */
+    public static byte[] encode(ChunkData c) {
+        Buf b = new Buf(64 + 24 * c.blockPalette.size());
+        b.svarint(c.chunkX);
+        b.svarint(c.chunkZ);
+        b.svarint(c.minY);
+        b.svarint(c.maxY);
+        b.uvarint(c.blockCount);
+        b.svarint64(c.timestamp);
+        b.uvarint(c.entities.size());
+        b.uvarint(c.blockPalette.size());
+        for (Map.Entry<String, Integer> e : c.blockPalette.entrySet()) {
+            b.string(e.getKey());
+            b.uvarint(e.getValue());
+        }
+        b.uvarint(c.metadata.size());
+        for (Map.Entry<String, String> e : c.metadata.entrySet()) {
+            b.string(e.getKey());
+            b.string(e.getValue());
+        }
+        Buf out = new Buf(b.len + 5);
+        out.uvarint(b.len);
+        out.bytes(b.a, 0, b.len);
+        return out.len == out.a.length ? out.a : Arrays.copyOf(out.a, out.len);
+    }
+
+    // ---- varints -----------------------------------------------------------
+
+    public static long readUvarint(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+            if (shift >= 63) throw new IllegalArgumentException("varint too long");
+        }
+    }
+
+    public static long readSvarint(ByteBuffer in) {
+        long v = readUvarint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public static String readString(ByteBuffer in) {
+        int n = (int) readUvarint(in);
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), n, StandardCharsets.UTF_8);
+        } else {
+            byte[] tmp = new byte[n];
+            in.get(in.position(), tmp);
+            s = new String(tmp, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + n);
+        return s;
+    }
+
+    /** Growable byte array with varint writers, used on the encoding side. */
+    private static final class Buf {
+        byte[] a;
+        int len;
+
+        Buf(int capacity) {
+            a = new byte[Math.max(16, capacity)];
+        }
+
+        private void ensure(int n) {
+            if (len + n > a.length) a = Arrays.copyOf(a, Math.max(a.length * 2, len + n));
+        }
+
+        void uvarint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                a[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            a[len++] = (byte) v;
+        }
+
+        void svarint(int v) {
+            uvarint(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+        }
+
+        void svarint64(long v) {
+            uvarint((v << 1) ^ (v >> 63));
+        }
+
+        void string(String s) {
+            byte[] utf = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+            uvarint(utf.length);
+            bytes(utf, 0, utf.length);
+        }
+
+        void bytes(byte[] src, int off, int n) {
+            ensure(n);
+            System.arraycopy(src, off, a, len, n);
+            len += n;
+        }
+    }
+
+    // ---- writer ------------------------------------------------------------
+
+    /**
+     * Appends records to one pack file; owned by the output writer thread.
+     */
+    private static final class Writer implements ShardedOutputWriter.Shard {
+        private final FileChannel ch;
+        private final ByteBuffer block = ByteBuffer.allocate(BLOCK_BYTES);
+        private final Map<Long, Long> index = new HashMap<>(); // (z,x) -> record offset
+        private long end; // file offset where the block starts
+
+        Writer(Path file) throws IOException {
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long size = ch.size();
+                if (size < HEADER_BYTES) {
+                    ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+                    h.putInt(MAGIC).put((byte) VERSION).put(new byte[3]).flip();
+                    ch.truncate(0);
+                    writeFully(h, 0);
+                    end = HEADER_BYTES;
+                } else {
+                    ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+                    readFully(h, 0);
+                    if (h.getInt(0) != MAGIC) throw new IOException("not a chunk pack: " + file.getFileName());
+                    end = loadIndex(size) ? end : scanRecords(size);
+                    ch.truncate(end);
+                }
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Take the index of a sealed pack and position {@link #end} where it began.
+         */
+        private boolean loadIndex(long size) throws IOException {
+            if (size < HEADER_BYTES + TRAILER_BYTES) return false;
+            ByteBuffer t = ByteBuffer.allocate(TRAILER_BYTES);
+            readFully(t, size - TRAILER_BYTES);
+            long indexAt = t.getLong(0);
+            int count = t.getInt(8);
+            if (t.getInt(12) != MAGIC || count < 0 || indexAt < HEADER_BYTES
+                || indexAt + (long) count * INDEX_ENTRY_BYTES != size - TRAILER_BYTES) return false;
+            ByteBuffer idx = ByteBuffer.allocate(count * INDEX_ENTRY_BYTES);
+            readFully(idx, indexAt);
+            idx.flip();
+            for (int i = 0; i < count; i++) {
+                int z = idx.getInt();
+                int x = idx.getInt();
+                index.put(key(x, z), idx.getLong());
+            }
+            end = indexAt;
+            return true;
+        }
+
+        /**
+         * Rebuild the index of an unsealed pack; returns the end of the last whole record.
+         * A malformed record is treated like a torn tail and cut off with everything after it.
+         */
+        private long scanRecords(long size) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK_BYTES);
+            long pos = HEADER_BYTES;
+            while (pos < size) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), size - pos));
+                readFully(buf, pos);
+                buf.flip();
+                int start = 0;
+                boolean corrupt = false;
+                try {
+                    while (buf.remaining() > 0) {
+                        start = buf.position();
+                        long n = readUvarint(buf);
+                        if (n > buf.remaining()) break;
+                        int recordAt = buf.position();
+                        int x = (int) readSvarint(buf);
+                        int z = (int) readSvarint(buf);
+                        if (buf.position() > recordAt + n) throw new IllegalArgumentException("record header overruns record");
+                        index.put(key(x, z), pos + start);
+                        buf.position(recordAt + (int) n);
+                        start = buf.position();
+                    }
+                } catch (java.nio.BufferUnderflowException e) {
+                    // record header crosses the buffer end
+                } catch (IllegalArgumentException e) {
+                    corrupt = true; // malformed varint: nothing after it can be trusted
+                }
+                if (corrupt) {
+                    pos += start;
+                    break;
+                }
+                if (start == 0) {
+                    if (size - pos <= buf.capacity()) break; // torn tail
+                    buf = ByteBuffer.allocate(buf.capacity() * 2); // a record larger than the buffer
+                    continue;
+                }
+                pos += start;
+            }
+            return Math.min(pos, size);
+        }
+
+        @Override
+        public void append(byte[] record) throws IOException {
+            ByteBuffer r = ByteBuffer.wrap(record);
+            readUvarint(r);
+            int x = (int) readSvarint(r);
+            int z = (int) readSvarint(r);
+            if (record.length > block.remaining()) flush();
+            index.put(key(x, z), end + block.position());
+            if (record.length > block.capacity()) {
+                writeFully(ByteBuffer.wrap(record), end);
+                end += record.length;
+            } else {
+                block.put(record);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            block.flip();
+            int n = block.remaining();
+            writeFully(block, end);
+            end += n;
+            block.clear();
+        }
+
+        @Override
+        public void close(boolean seal) throws IOException {
+            try {
+                flush();
+                if (seal) writeIndex();
+            } finally {
+                ch.close();
+            }
+        }
+
+        private void writeIndex() throws IOException {
+            long[] keys = new long[index.size()];
+            int i = 0;
+            for (long k : index.keySet()) keys[i++] = k;
+            Arrays.sort(keys); // (z,x) keys sort as z then x
+            ByteBuffer idx = ByteBuffer.allocate(keys.length * INDEX_ENTRY_BYTES + TRAILER_BYTES);
+            for (long k : keys) {
+                idx.putInt(keyZ(k)).putInt(keyX(k)).putLong(index.get(k));
+            }
+            idx.putLong(end).putInt(keys.length).putInt(MAGIC).flip();
+            writeFully(idx, end);
+            ch.force(false);
+        }
+
+        private void writeFully(ByteBuffer b, long at) throws IOException {
+            while (b.hasRemaining()) at += ch.write(b, at);
+        }
+
+        private void readFully(ByteBuffer b, long at) throws IOException {
+            while (b.hasRemaining()) {
+                int n = ch.read(b, at);
+                if (n < 0) throw new IOException("unexpected end of chunk pack");
+                at += n;
+            }
+        }
+    }
+
+    /**
+     * Index key that sorts by chunk Z, then X, as a signed long.
+     */
+    static long key(int x, int z) {
+        return ((long) z << 32) | ((x & 0xFFFFFFFFL) ^ 0x80000000L);
+    }
+
+    static int keyZ(long key) {
+        return (int) (key >> 32);
+    }
+
+    static int keyX(long key) {
+        return (int) (key ^ 0x80000000L);
+    }
+}
@@ -0,0 +1,195 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Random-access reader for a directory of sealed {@link ChunkPack} files, e.g.
+ * {@code <output>/shards}.
+ *
+ * Each region's pack is memory-mapped on first use and stays mapped until
+ * {@link #close()}. A point lookup is a binary search over the mapped index plus
+ * one record decode; a range scan walks the index rows of each region in order.
+ * Unsealed {@code .part} files are ignored. Safe for concurrent readers.
+ */
+public class ChunkPackReader implements AutoCloseable {
+    /**
+     * One decoded record.
+     */
+    public static final class Record {
+        public int chunkX;
+        public int chunkZ;
+        public int minY;
+        public int maxY;
+        public int blockCount;
+        public long timestamp;
+        public int entityCount;
+        public final Map<String, Integer> blockPalette = new LinkedHashMap<>();
+        public final Map<String, String> metadata = new LinkedHashMap<>();
+
+        @Override
+        public String toString() {
+            return "Record{x=" + chunkX + ", z=" + chunkZ + ", y=[" + minY + "," + maxY + "], blocks=" + blockCount
+                + ", entities=" + entityCount + ", palette=" + blockPalette.size() + '}';
+        }
+    }
+
+    private static final Region MISSING = new Region(null, 0, 0);
+
+    private final Path dir;
+    private final ConcurrentHashMap<Long, Region> regions = new ConcurrentHashMap<>();
+
+    public ChunkPackReader(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Record of a chunk, or null if no pack holds it.
+     */
+    public Record get(int chunkX, int chunkZ) throws IOException {
+        ByteBuffer r = raw(chunkX, chunkZ);
+        return r == null ? null : decode(r);
+    }
+
+    /**
+     * The undecoded record of a chunk (without its length prefix) as a read-only
+     * slice of the mapping, or null if no pack holds it.
+     */
+    public ByteBuffer raw(int chunkX, int chunkZ) throws IOException {
+        Region region = region(chunkX >> 5, chunkZ >> 5);
+        int i = region.find(chunkZ, chunkX);
+        return i < 0 || region.indexZ(i) != chunkZ || region.indexX(i) != chunkX ? null : region.record(i);
+    }
+
+    /**
+     * Visit every stored chunk in the rectangle [minX..maxX] x [minZ..maxZ], region by
+     * region, each region in Z then X order.
+     */
+    public void scan(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, Consumer<Record> visitor) throws IOException {
+        for (int rz = minChunkZ >> 5; rz <= maxChunkZ >> 5; rz++) {
+            for (int rx = minChunkX >> 5; rx <= maxChunkX >> 5; rx++) {
+                Region region = region(rx, rz);
+                int start = region.find(minChunkZ, minChunkX);
+                if (start < 0) continue;
+                for (int i = start; i < region.count; i++) {
+                    int z = region.indexZ(i);
+                    if (z > maxChunkZ) break;
+                    int x = region.indexX(i);
+                    if (x < minChunkX || x > maxChunkX) continue;
+                    visitor.accept(decode(region.record(i)));
+                }
+            }
+        }
+    }
+
+    public static Record decode(ByteBuffer in) {
+        Record r = new Record();
+        r.chunkX = (int) ChunkPack.readSvarint(in);
+        r.chunkZ = (int) ChunkPack.readSvarint(in);
+        r.minY = (int) ChunkPack.readSvarint(in);
+        r.maxY = (int) ChunkPack.readSvarint(in);
+        r.blockCount = (int) ChunkPack.readUvarint(in);
+        r.timestamp = ChunkPack.readSvarint(in);
+        r.entityCount = (int) ChunkPack.readUvarint(in);
+        int palette = (int) ChunkPack.readUvarint(in);
+        for (int i = 0; i < palette; i++) r.blockPalette.put(ChunkPack.readString(in), (int) ChunkPack.readUvarint(in));
+        int meta = (int) ChunkPack.readUvarint(in);
+        for (int i = 0; i < meta; i++) r.metadata.put(ChunkPack.readString(in), ChunkPack.readString(in));
+        return r;
+    }
+
+    private Region region(int regionX, int regionZ) throws IOException {
+        long key = ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+        Region r = regions.get(key);
+        if (r != null) return r;
+        Path file = dir.resolve("r." + regionX + "." + regionZ + ChunkPack.SUFFIX);
+        r = Files.exists(file) ? Region.open(file) : MISSING;
+        Region prev = regions.putIfAbsent(key, r);
+        return prev != null ? prev : r;
+    }
+
+    /**
+     * Drop all mappings; they are released once no returned slice is reachable.
+     */
+    @Override
+    public void close() {
+        regions.clear();
+    }
+
+    /** A mapped, sealed pack file. */
+    private static final class Region {
+        final MappedByteBuffer map;
+        final int indexAt;
+        final int count;
+
+        Region(MappedByteBuffer map, int indexAt, int count) {
+            this.map = map;
+            this.indexAt = indexAt;
+            this.count = count;
+        }
+
+        static Region open(Path file) throws IOException {
+            MappedByteBuffer map;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                if (size > Integer.MAX_VALUE) throw new IOException("chunk pack too large: " + file.getFileName());
+                map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            int size = map.capacity();
+            if (size < ChunkPack.HEADER_BYTES + ChunkPack.TRAILER_BYTES || map.getInt(0) != ChunkPack.MAGIC
+                || map.getInt(size - 4) != ChunkPack.MAGIC) {
+                throw new IOException("not a sealed chunk pack: " + file.getFileName());
+            }
+            long indexAt = map.getLong(size - ChunkPack.TRAILER_BYTES);
+            int count = map.getInt(size - ChunkPack.TRAILER_BYTES + 8);
+            if (count < 0 || indexAt + (long) count * ChunkPack.INDEX_ENTRY_BYTES != size - ChunkPack.TRAILER_BYTES) {
+                throw new IOException("corrupt chunk pack index: " + file.getFileName());
+            }
+            return new Region(map, (int) indexAt, count);
+        }
+
+        int indexZ(int i) {
+            return map.getInt(indexAt + i * ChunkPack.INDEX_ENTRY_BYTES);
+        }
+
+        int indexX(int i) {
+            return map.getInt(indexAt + i * ChunkPack.INDEX_ENTRY_BYTES + 4);
+        }
+
+        /**
+         * First index entry at or after (z, x), or -1 if all entries are before it.
+         */
+        int find(int z, int x) {
+            int lo = 0, hi = count - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int mz = indexZ(mid);
+                int c = mz != z ? Integer.compare(mz, z) : Integer.compare(indexX(mid), x);
+                if (c >= 0) {
+                    found = mid;
+                    hi = mid - 1;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return found;
+        }
+
+        ByteBuffer record(int i) {
+            int at = (int) map.getLong(indexAt + i * ChunkPack.INDEX_ENTRY_BYTES + 8);
+            ByteBuffer b = map.duplicate();
+            b.position(at);
+            int n = (int) ChunkPack.readUvarint(b);
+            return b.slice(b.position(), n).asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+
+/**
+ * Destination for the parsed chunks of a read-only job, fed by {@link CommitSink}
+ * from the pipeline's commit threads.
+ *
+ * Sinks that group output by region are told up front how many chunks of a region
+ * the job will hand them ({@link #expect}); every such chunk later arrives through
+ * either {@link #write} or {@link #skip}, so the sink knows when a region is done.
+ *
+ * A chunk is checkpointed only once its record is stored. Sinks that write
+ * synchronously are done when {@link #write} returns; sinks that queue or buffer
+ * records report them later through a {@link Durable} listener.
+ */
+public interface ChunkSink {
+    /**
+     * Told when a chunk's record has reached the output file. Called from the
+     * sink's own threads.
+     */
+    interface Durable {
+        void durable(int chunkX, int chunkZ);
+    }
+
+    /**
+     * Register the listener for records that are stored after {@link #write}
+     * returns. Returns false if the sink does not defer: its records are stored
+     * when {@code write} returns and the listener is never called.
+     */
+    default boolean setDurableListener(Durable listener) {
+        return false;
+    }
+
+    /**
+     * The job planned {@code chunks} more chunks of this region.
+     */
+    default void expect(int regionX, int regionZ, int chunks) {}
+
+    /**
+     * Write one chunk. Safe to call from several threads.
+     */
+    void write(ChunkData chunk) throws IOException;
+
+    /**
+     * Write one chunk as it leaves the pipeline. Sinks of parsed chunks take its
+     * data; sinks that copy raw payloads override this.
+     */
+    default void write(ChunkWork work) throws IOException {
+        if (work.data != null) write(work.data);
+        else skip(work.chunkX, work.chunkZ);
+    }
+
+    /**
+     * A planned chunk that will not be written, e.g. because it was already done.
+     */
+    default void skip(int chunkX, int chunkZ) {}
+
+    /**
+     * Flush and release everything. When {@code finished} is false the job was paused
+     * or cancelled, and partial output is left so a resumed job can continue it.
+     */
+    default void close(boolean finished) throws IOException {}
+
+    default String statsJson() {
+        return "{}";
+    }
+}
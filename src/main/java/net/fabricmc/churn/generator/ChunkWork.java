@@ -0,0 +1,65 @@
+package net.fabricmc.churn.generator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single chunk travelling through the {@link ExtractionPipeline}. Each stage
+ * fills in the next field and clears what later stages no longer need.
+ */
+public class ChunkWork {
+    public final int chunkX;
+    public final int chunkZ;
+    // region task the chunk was claimed from; unfinished chunks are handed back to it
+    public RegionTask task;
+    // set when a stage could not process the chunk; it is not counted as done
+    public boolean failed;
+
+    // read stage
+    public RegionFile region; // retained while the payload slice is in use
+    public int compression;
+    public ByteBuffer payload;
+    public java.nio.file.Path external; // oversized chunk stored in a .mcc file
+    public int timestamp; // location table timestamp, epoch seconds
+
+    // inflate stage; pooled, released by the parse stage
+    public ChunkBuffer decompressed;
+
+    // parse stage
+    public ChunkData data;
+
+    // serialize stage
+    public byte[] serialized;
+
+    // bytes reserved in the job's MemoryBudget for this chunk
+    public MemoryBudget budget;
+    public long charged;
+
+    public ChunkWork(int chunkX, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+    }
+
+    /**
+     * Drop the payload and the region reference taken by the read stage.
+     */
+    public void releasePayload() {
+        payload = null;
+        if (region != null) {
+            region.release();
+            region = null;
+        }
+    }
+
+    /**
+     * Give back this chunk's memory reservation. Safe to call more than once.
+     */
+    public void releaseBudget() {
+        if (budget != null) budget.release(charged);
+        charged = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkWork{" + "x=" + chunkX + ", z=" + chunkZ + '}';
+    }
+}
@@ -8,11 +8,25 @@ public class ChurnBuildResult {
     public final int chunkX;
     public final int chunkZ;
     public final byte[] data; // placeholder serialized data
+    // memory reservation taken over from the pipeline, released once applied
+    private final MemoryBudget budget;
+    private long charged;
 
     public ChurnBuildResult(int chunkX, int chunkZ, byte[] data) {
+        this(chunkX, chunkZ, data, null, 0);
+    }
+
+    public ChurnBuildResult(int chunkX, int chunkZ, byte[] data, MemoryBudget budget, long charged) {
         this.chunkX = chunkX;
         this.chunkZ = chunkZ;
         this.data = data;
+        this.budget = budget;
+        this.charged = charged;
+    }
+
+    public void releaseBudget() {
+        if (budget != null) budget.release(charged);
+        charged = 0;
     }
 
     @Override
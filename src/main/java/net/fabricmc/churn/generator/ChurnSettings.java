@@ -16,7 +16,7 @@ public class ChurnSettings {
     private String checkpointPath = "churn_checkpoints";
     private double minTps = 15.0;
     private boolean verbose = false;
-    private String outputFormat = "json"; // json or csv
+    private String outputFormat = "json"; // json, csv, pack, arrow or sqlite
     private boolean fastMode = false;
 
     private ChurnSettings() {
@@ -40,6 +40,7 @@ public class ChurnSettings {
         s.outputPath = cfg.outputPath;
         s.checkpointPath = cfg.checkpointPath;
         s.minTps = cfg.minTps;
+        if (cfg.outputFormat != null) s.setOutputFormat(cfg.outputFormat);
         return s;
     }
 
@@ -54,6 +55,7 @@ public class ChurnSettings {
         cfg.outputPath = this.outputPath;
         cfg.checkpointPath = this.checkpointPath;
         cfg.minTps = this.minTps;
+        cfg.outputFormat = this.outputFormat;
         return cfg;
     }
 
@@ -81,7 +83,7 @@ public class ChurnSettings {
 
     public String getOutputFormat() { return outputFormat; }
     public void setOutputFormat(String format) { 
-        if (format.equals("json") || format.equals("csv")) this.outputFormat = format;
+        if (Arrays.asList(JobConfig.OUTPUT_FORMATS).contains(format)) this.outputFormat = format;
     }
 
     public boolean isFastMode() { return fastMode; }
@@ -1,69 +1,127 @@
 package net.fabricmc.churn.generator;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.io.BufferedWriter;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
 
+/**
+ * Queue of region-granular work units. Tasks handed out by {@link #poll()} stay
+ * visible as "active" until every chunk claimed from them has left the pipeline
+ * ({@link #retire}), so idle workers can {@link #steal()} from them and so a pause
+ * can tell which regions are still unfinished.
+ *
+ * Explicitly enqueued tasks (re-queued chunks) are served first; after that new
+ * tasks come from the {@link RegionCursor}, if the queue has one.
+ *
+ * A planned-work listener sees every task entering the queue either way, before
+ * any of its chunks is read (stolen halves are not new work and are not reported).
+ */
 public class ChurnWorkQueue {
-    private final ConcurrentLinkedQueue<ChurnTask> queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<RegionTask> queue = new ConcurrentLinkedQueue<>();
+    private final Set<RegionTask> active = ConcurrentHashMap.newKeySet();
+    private final RegionCursor cursor;
+    // Lowest cursor position of a region with a chunk that failed in the pipeline
+    private final AtomicInteger failedFrom = new AtomicInteger(Integer.MAX_VALUE);
+    private volatile java.util.function.Consumer<RegionTask> onPlanned;
 
-    public void enqueue(ChurnTask task) {
+    public ChurnWorkQueue() {
+        this(null);
+    }
+
+    public ChurnWorkQueue(RegionCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    public RegionCursor cursor() {
+        return cursor;
+    }
+
+    public void setPlannedListener(java.util.function.Consumer<RegionTask> listener) {
+        this.onPlanned = listener;
+    }
+
+    public void enqueue(RegionTask task) {
+        planned(task);
         queue.add(task);
     }
 
-    public ChurnTask poll() {
-        return queue.poll();
+    public RegionTask poll() {
+        RegionTask t = queue.poll();
+        if (t == null && cursor != null) {
+            t = cursor.next();
+            if (t != null) planned(t);
+        }
+        if (t != null) active.add(t);
+        return t;
     }
 
-    public int size() {
-        return queue.size();
+    private void planned(RegionTask task) {
+        java.util.function.Consumer<RegionTask> l = onPlanned;
+        if (l != null) l.accept(task);
     }
 
     /**
-     * Drain current queue to a newline-separated file with format `chunkX,chunkZ`.
-     * Returns the number of entries written.
+     * Split off half of the largest active task, or return null if no active task
+     * is big enough to be worth sharing.
      */
-    public int drainToFile(Path out) throws IOException {
-        List<String> lines = new ArrayList<>();
-        ChurnTask t;
-        while ((t = queue.poll()) != null) {
-            lines.add(t.chunkX + "," + t.chunkZ);
-        }
-        if (!lines.isEmpty()) {
-            try (BufferedWriter w = Files.newBufferedWriter(out)) {
-                for (String l : lines) w.write(l + System.lineSeparator());
+    public RegionTask steal() {
+        RegionTask victim = null;
+        int best = RegionTask.MIN_SPLIT - 1;
+        for (RegionTask t : active) {
+            int r = t.remaining();
+            if (r > best) {
+                best = r;
+                victim = t;
             }
         }
-        return lines.size();
+        if (victim == null) return null;
+        RegionTask stolen = victim.splitHalf();
+        if (stolen != null) active.add(stolen);
+        return stolen;
     }
 
     /**
-     * Load a queue from a file created by `drainToFile`.
+     * Called by the worker once it has claimed the last chunk of a task. The task
+     * stays active while any of its chunks is still in the pipeline.
      */
-    public static ChurnWorkQueue loadFromFile(Path in) throws IOException {
-        ChurnWorkQueue q = new ChurnWorkQueue();
-        try (BufferedReader r = Files.newBufferedReader(in)) {
-            String line;
-            while ((line = r.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    try {
-                        int x = Integer.parseInt(parts[0]);
-                        int z = Integer.parseInt(parts[1]);
-                        q.enqueue(new ChurnTask(x, z));
-                    } catch (NumberFormatException ex) {
-                        // skip malformed
-                    }
-                }
-            }
+    public void finish(RegionTask task) {
+        if (task.settled()) active.remove(task);
+    }
+
+    /**
+     * Called when a chunk has been committed, skipped or dropped by the pipeline.
+     * A failed chunk keeps its region in the resume range.
+     */
+    public void retire(ChunkWork work) {
+        if (work.failed && cursor != null) {
+            failedFrom.accumulateAndGet(cursor.regionIndex(work.chunkX >> 5, work.chunkZ >> 5), Math::min);
+        }
+        RegionTask t = work.task;
+        if (t != null && t.complete()) active.remove(t);
+    }
+
+    /**
+     * Number of queued (not yet claimed) region tasks, not counting regions the
+     * cursor has yet to produce.
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Cursor position from which a resumed job covers every chunk not yet done:
+     * the lowest region still queued, active or holding a failed chunk, or the
+     * cursor's own position. Only meaningful once the pipeline has stopped.
+     */
+    public int resumePosition() {
+        int pos = Math.min(cursor.position(), failedFrom.get());
+        for (RegionTask t : queue) {
+            if (t.remaining() > 0) pos = Math.min(pos, cursor.regionIndex(t.regionX, t.regionZ));
+        }
+        for (RegionTask t : active) {
+            if (!t.settled()) pos = Math.min(pos, cursor.regionIndex(t.regionX, t.regionZ));
         }
-        return q;
+        return Math.max(0, pos);
     }
 }
@@ -0,0 +1,84 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Commit target for read-only extraction jobs. The pipeline's commit stage calls
+ * {@link #commit} directly from its worker threads: the chunk's output is written
+ * and its checkpoint marked, with no hop through the server thread. Throughput is
+ * bounded by the commit stage, not by ticks.
+ *
+ * When the output buffers records, the checkpoint is set once the output reports
+ * the record stored ({@link ChunkSink.Durable}), so a crash never leaves a chunk
+ * marked done without its record. Chunks that failed to read are not marked and
+ * a resumed job retries them.
+ *
+ * Only jobs that change the world ({@link JobConfig#applyToWorld}) go through
+ * {@link MainThreadApplier}.
+ */
+public class CommitSink {
+    private final ChunkSink output;
+    private final RegionCheckpointManager checkpoints;
+    private final boolean deferred; // checkpoints are set by the output's durable listener
+
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder markErrors = new LongAdder();
+
+    /**
+     * @param output      where chunk records go, or null to only checkpoint
+     * @param checkpoints checkpoint bitmap, or null when the job runs without one
+     */
+    public CommitSink(ChunkSink output, RegionCheckpointManager checkpoints) {
+        this.output = output;
+        this.checkpoints = checkpoints;
+        this.deferred = output != null && checkpoints != null && output.setDurableListener(this::durable);
+    }
+
+    private void durable(int chunkX, int chunkZ) {
+        try {
+            checkpoints.markChunkDone(chunkX, chunkZ);
+        } catch (IOException e) {
+            markErrors.increment();
+            if (markErrors.sum() <= 10) System.err.println("[Churn] failed to checkpoint chunk " + chunkX + "," + chunkZ + ": " + e);
+        }
+    }
+
+    /**
+     * Write one parsed chunk and mark it done. Safe to call from any number of
+     * threads; chunks already checkpointed (e.g. re-queued after a pause) are skipped,
+     * and so are failed chunks, which are left unmarked.
+     */
+    public void commit(ChunkWork w) throws IOException {
+        if (w.failed) {
+            failed.increment();
+            if (output != null) output.skip(w.chunkX, w.chunkZ);
+            return;
+        }
+        if (checkpoints != null && checkpoints.isChunkDone(w.chunkX, w.chunkZ)) {
+            skipped.increment();
+            if (output != null) output.skip(w.chunkX, w.chunkZ);
+            return;
+        }
+        if (output != null) output.write(w);
+        if (checkpoints != null && !deferred) checkpoints.markChunkDone(w.chunkX, w.chunkZ);
+        committed.increment();
+        if (net.fabricmc.churn.ui.ProgressConfig.getInstance().shouldLogChunkDetails()) {
+            System.out.println("[Churn][Commit] Committed chunk " + w.chunkX + "," + w.chunkZ);
+        }
+    }
+
+    public ChunkSink output() { return output; }
+
+    public long committed() { return committed.sum(); }
+
+    public long skipped() { return skipped.sum(); }
+
+    public long failed() { return failed.sum(); }
+
+    public String statsJson() {
+        return "{\"committed\":" + committed.sum() + ",\"skipped\":" + skipped.sum() + ",\"failed\":" + failed.sum() + "}";
+    }
+}
@@ -0,0 +1,175 @@
+package net.fabricmc.churn.generator;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AIMD controller for the read workers: decides how many of them may run and how
+ * much each one pauses between chunks.
+ *
+ * Once per control period {@link #update} looks at the server's MSPT and TPS
+ * ({@link TPSMonitor}), the process CPU load ({@code OperatingSystemMXBean}) and
+ * the completion rate:
+ * <ul>
+ * <li>Overloaded (MSPT above {@code targetMspt}, or TPS below {@code minTps}):
+ * halve the active workers; with a single worker left, double the per-chunk pacing
+ * instead.</li>
+ * <li>Otherwise: first halve the pacing back to zero, then add one worker, as long
+ * as the process CPU load is below {@code maxCpuLoad}. If the last added worker
+ * did not raise the completion rate, it is taken away again and growth holds for a
+ * few periods.</li>
+ * </ul>
+ *
+ * Workers call {@link #await} before each chunk. Worker {@code i} runs while
+ * {@code i < limit} and the controller is not paused; otherwise it parks and is
+ * unparked as soon as it may run again.
+ */
+public class ConcurrencyController {
+    private static final long PERIOD_NANOS = 1_000_000_000L;
+    private static final long MIN_PACING_NANOS = 1_000_000L;   // 1 ms
+    private static final long MAX_PACING_NANOS = 100_000_000L; // 100 ms
+    private static final double MIN_GAIN = 1.05; // a new worker must add 5% throughput
+    private static final int HOLD_PERIODS = 10;
+
+    private final int maxWorkers;
+    private final double targetMspt;
+    private final double minTps;
+    private final double maxCpuLoad;
+    private final AtomicLong progress;
+    private final AtomicReferenceArray<Thread> parked;
+    private final com.sun.management.OperatingSystemMXBean os;
+
+    // Read by workers
+    private volatile int limit;
+    private volatile long pacingNanos;
+    private volatile boolean paused;
+
+    // Controller state, touched only by update()
+    private long lastUpdate;
+    private long lastProgress;
+    private double lastRate;
+    private boolean grew;
+    private int hold;
+
+    // Reported in the status
+    private volatile double rate;
+    private volatile double cpuLoad = -1.0;
+    private volatile long increases;
+    private volatile long decreases;
+
+    public ConcurrencyController(int maxWorkers, double targetMspt, double minTps, double maxCpuLoad, AtomicLong progress) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.targetMspt = targetMspt;
+        this.minTps = minTps;
+        this.maxCpuLoad = maxCpuLoad;
+        this.progress = progress;
+        this.parked = new AtomicReferenceArray<>(this.maxWorkers);
+        this.limit = this.maxWorkers;
+        java.lang.management.OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        this.os = bean instanceof com.sun.management.OperatingSystemMXBean
+            ? (com.sun.management.OperatingSystemMXBean) bean : null;
+    }
+
+    /**
+     * Block worker {@code index} while it is not allowed to run, then apply the
+     * current pacing. Returns immediately in the common case.
+     */
+    public void await(int index) throws InterruptedException {
+        if (index >= limit || paused) {
+            Thread self = Thread.currentThread();
+            parked.set(index, self);
+            try {
+                // Registered before the check, so an update in between unparks us
+                while (index >= limit || paused) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) throw new InterruptedException();
+                }
+            } finally {
+                parked.set(index, null);
+            }
+        }
+        long pace = pacingNanos;
+        if (pace > 0) {
+            LockSupport.parkNanos(this, pace);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        if (!paused) wakeAll();
+    }
+
+    /**
+     * Run one control step if a period has elapsed. Called from the server tick.
+     */
+    public void update(long now) {
+        if (lastUpdate == 0) {
+            lastUpdate = now;
+            lastProgress = progress.get();
+            return;
+        }
+        long dt = now - lastUpdate;
+        if (dt < PERIOD_NANOS) return;
+        long done = progress.get();
+        double r = (done - lastProgress) * 1e9 / dt;
+        lastUpdate = now;
+        lastProgress = done;
+        rate = r;
+        double cpu = os == null ? -1.0 : os.getProcessCpuLoad();
+        cpuLoad = cpu;
+
+        TPSMonitor monitor = TPSMonitor.getInstance();
+        boolean overloaded = monitor.getMspt() > targetMspt || (minTps > 0.0 && monitor.getTps() < minTps);
+        int l = limit;
+        long pace = pacingNanos;
+
+        if (overloaded) {
+            if (l > 1) l = Math.max(1, l / 2);
+            else pace = pace == 0 ? MIN_PACING_NANOS : Math.min(MAX_PACING_NANOS, pace * 2);
+            grew = false;
+            decreases++;
+        } else if (pace > 0) {
+            pace = pace / 2 < MIN_PACING_NANOS ? 0 : pace / 2;
+        } else if (grew && r < lastRate * MIN_GAIN) {
+            // The last worker did not pay off (I/O or a later stage is the limit)
+            l = Math.max(1, l - 1);
+            grew = false;
+            hold = HOLD_PERIODS;
+            decreases++;
+        } else if (hold > 0) {
+            hold--;
+            grew = false;
+        } else if (l < maxWorkers && (cpu < 0 || cpu < maxCpuLoad)) {
+            l++;
+            grew = true;
+            increases++;
+        } else {
+            grew = false;
+        }
+        lastRate = r;
+        pacingNanos = pace;
+        if (l != limit) {
+            limit = l;
+            wakeAll();
+        }
+    }
+
+    private void wakeAll() {
+        for (int i = 0; i < parked.length(); i++) {
+            Thread t = parked.get(i);
+            if (t != null) LockSupport.unpark(t);
+        }
+    }
+
+    public int limit() { return limit; }
+
+    public String statsJson() {
+        return String.format(Locale.ROOT,
+            "{\"activeWorkers\":%d,\"maxWorkers\":%d,\"paused\":%b,\"pacingMs\":%.1f,\"processCpu\":%.2f,\"rate\":%.1f,\"increases\":%d,\"decreases\":%d}",
+            limit, maxWorkers, paused, pacingNanos / 1_000_000.0, cpuLoad, rate, increases, decreases);
+    }
+}
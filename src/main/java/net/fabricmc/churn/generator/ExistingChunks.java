@@ -0,0 +1,135 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunks that are actually present in a dimension's region files.
+ *
+ * Built by reading only the 4 KiB location table of every {@code r.<x>.<z>.mca}
+ * file: a chunk exists when its location entry is non-zero. Each region is kept as
+ * a 1024-bit mask, so the whole map of a large world fits in a few hundred KiB and
+ * is read-only once built.
+ */
+public class ExistingChunks {
+    private static final int WORDS = RegionFile.CHUNKS_PER_REGION / 64;
+
+    private final Map<Long, long[]> regions = new HashMap<>();
+    private int skippedFiles;
+
+    /**
+     * Scan the location tables of the given region files. Files with an unexpected
+     * name or a truncated header are skipped and counted.
+     */
+    public static ExistingChunks scan(List<Path> regionFiles) {
+        ExistingChunks ec = new ExistingChunks();
+        ByteBuffer table = ByteBuffer.allocate(RegionFile.SECTOR_BYTES);
+        for (Path file : regionFiles) {
+            int[] coords = parseName(file.getFileName().toString());
+            if (coords == null) {
+                ec.skippedFiles++;
+                continue;
+            }
+            try {
+                long[] mask = readMask(file, table);
+                if (mask != null) ec.regions.put(key(coords[0], coords[1]), mask);
+            } catch (IOException e) {
+                System.err.println("[Churn] failed to read region header " + file.getFileName() + ": " + e.getMessage());
+                ec.skippedFiles++;
+            }
+        }
+        return ec;
+    }
+
+    /**
+     * Present-chunk mask of one region file, or null if it holds no chunk.
+     */
+    private static long[] readMask(Path file, ByteBuffer table) throws IOException {
+        table.clear();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (table.hasRemaining()) {
+                if (ch.read(table, table.position()) < 0) break;
+            }
+        }
+        if (table.hasRemaining()) {
+            // An empty file is a region Minecraft created but never wrote to
+            if (table.position() == 0) return null;
+            throw new IOException("truncated location table (" + table.position() + " bytes)");
+        }
+        table.flip();
+        long[] mask = new long[WORDS];
+        boolean any = false;
+        for (int i = 0; i < RegionFile.CHUNKS_PER_REGION; i++) {
+            if (table.getInt() != 0) {
+                mask[i >>> 6] |= 1L << (i & 63);
+                any = true;
+            }
+        }
+        return any ? mask : null;
+    }
+
+    private static int[] parseName(String name) {
+        String[] parts = name.split("\\.");
+        if (parts.length != 4 || !parts[0].equals("r") || !parts[3].equals("mca")) return null;
+        try {
+            return new int[]{Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long key(int regionX, int regionZ) {
+        return ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+    }
+
+    public boolean hasRegion(int regionX, int regionZ) {
+        return regions.containsKey(key(regionX, regionZ));
+    }
+
+    public boolean has(int chunkX, int chunkZ) {
+        long[] mask = regions.get(key(chunkX >> 5, chunkZ >> 5));
+        if (mask == null) return false;
+        int i = RegionFile.index(chunkX, chunkZ);
+        return (mask[i >>> 6] & (1L << (i & 63))) != 0;
+    }
+
+    /**
+     * Present chunks inside the chunk rectangle [minX..maxX] x [minZ..maxZ].
+     */
+    public long count(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        long n = 0;
+        for (Map.Entry<Long, long[]> e : regions.entrySet()) {
+            int rx = (int) (e.getKey() >> 32);
+            int rz = (int) (long) e.getKey();
+            int x0 = Math.max(minChunkX, rx << 5), x1 = Math.min(maxChunkX, (rx << 5) + 31);
+            int z0 = Math.max(minChunkZ, rz << 5), z1 = Math.min(maxChunkZ, (rz << 5) + 31);
+            if (x0 > x1 || z0 > z1) continue;
+            long[] mask = e.getValue();
+            if (x1 - x0 == 31 && z1 - z0 == 31) {
+                for (long w : mask) n += Long.bitCount(w);
+                continue;
+            }
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    int i = RegionFile.index(x, z);
+                    if ((mask[i >>> 6] & (1L << (i & 63))) != 0) n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    public int regionCount() {
+        return regions.size();
+    }
+
+    public int skippedFiles() {
+        return skippedFiles;
+    }
+}
@@ -0,0 +1,263 @@
+package net.fabricmc.churn.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged extraction pipeline: read -> inflate -> parse -> serialize -> commit.
+ *
+ * The read stage is driven by {@link Worker}s, which {@link #submit} chunks into
+ * the first bounded hand-off queue; every later stage pulls from its own queue and
+ * pushes into the next one, so a slow stage back-pressures the stages before it.
+ * I/O stages run on virtual threads, CPU stages on a platform pool sized to the
+ * sum of their thread counts.
+ */
+public class ExtractionPipeline {
+    /**
+     * Work performed by a stage on one chunk.
+     */
+    public interface Handler {
+        void process(ChunkWork work) throws Exception;
+    }
+
+    public static final class Stage {
+        public final String name;
+        public final boolean io;
+        public final int threads;
+        private final ArrayBlockingQueue<ChunkWork> queue; // null for the source (read) stage
+        private final Handler handler;
+        private final AtomicInteger busy = new AtomicInteger();
+        private final AtomicLong processed = new AtomicLong();
+        private Stage next;
+
+        private Stage(String name, boolean io, int threads, int capacity, Handler handler) {
+            this.name = name;
+            this.io = io;
+            this.threads = Math.max(1, threads);
+            this.queue = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : null;
+            this.handler = handler;
+        }
+
+        public int depth() { return queue == null ? 0 : queue.size(); }
+
+        public int busy() { return busy.get(); }
+
+        public double occupancy() { return busy.get() / (double) threads; }
+
+        public long processed() { return processed.get(); }
+
+        /** Mark one thread of a source stage as busy. */
+        public void enter() { busy.incrementAndGet(); }
+
+        /** Counterpart to {@link #enter()}; counts one processed chunk. */
+        public void exit() {
+            busy.decrementAndGet();
+            processed.incrementAndGet();
+        }
+    }
+
+    // How long shutdownNow() waits for interrupted stage threads to return
+    private static final long SHUTDOWN_WAIT_SECONDS = 30;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final AtomicLong completedCounter;
+    private ExecutorService ioExecutor;
+    private ExecutorService cpuExecutor;
+    private volatile boolean running = false;
+    private volatile java.util.function.Consumer<ChunkWork> onRetired;
+
+    public ExtractionPipeline(AtomicLong completedCounter) {
+        this.completedCounter = completedCounter;
+    }
+
+    /**
+     * Listener told about every chunk that leaves the pipeline after the last stage
+     * or through a stage failure; not about chunks handed back on shutdown.
+     */
+    public void setRetireListener(java.util.function.Consumer<ChunkWork> listener) {
+        this.onRetired = listener;
+    }
+
+    /**
+     * Register the source stage. Its threads are supplied by {@link #startSource}.
+     */
+    public Stage addSource(String name, int threads) {
+        return add(new Stage(name, true, threads, 0, null));
+    }
+
+    /**
+     * Append a stage fed by a bounded queue of the given capacity.
+     */
+    public Stage addStage(String name, boolean io, int threads, int capacity, Handler handler) {
+        return add(new Stage(name, io, threads, Math.max(1, capacity), handler));
+    }
+
+    private Stage add(Stage s) {
+        if (!stages.isEmpty()) stages.get(stages.size() - 1).next = s;
+        stages.add(s);
+        return s;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        ioExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Churn-io-", 0).factory());
+        int cpuThreads = 0;
+        for (Stage s : stages) if (s.queue != null && !s.io) cpuThreads += s.threads;
+        cpuExecutor = Executors.newFixedThreadPool(Math.max(1, cpuThreads), r -> {
+            Thread t = new Thread(r, "Churn-cpu");
+            t.setDaemon(true);
+            return t;
+        });
+        for (Stage s : stages) {
+            if (s.queue == null) continue;
+            ExecutorService ex = s.io ? ioExecutor : cpuExecutor;
+            for (int i = 0; i < s.threads; i++) ex.submit(() -> runStage(s));
+        }
+    }
+
+    /**
+     * Run one source-stage thread (e.g. a read worker) on the I/O executor.
+     */
+    public void startSource(Runnable source) {
+        ioExecutor.submit(source);
+    }
+
+    /**
+     * Hand a chunk from the source stage to the first queued stage, blocking while
+     * that stage is full.
+     */
+    public void submit(ChunkWork work) throws InterruptedException {
+        stages.get(0).next.queue.put(work);
+    }
+
+    private void runStage(Stage s) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            ChunkWork w;
+            try {
+                w = s.queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (w == null) continue;
+            s.busy.incrementAndGet();
+            try {
+                s.handler.process(w);
+                s.processed.incrementAndGet();
+                if (s.next != null) s.next.queue.put(w);
+                else retired(w);
+            } catch (InterruptedException e) {
+                // Stopped while handing the chunk on: it goes back to its task
+                handBack(w);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("[Churn] " + s.name + " stage failed for chunk " + w.chunkX + "," + w.chunkZ + ": " + e.getMessage());
+                release(w);
+                w.failed = true;
+                fail(s, w);
+            } finally {
+                s.busy.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Route a chunk a stage failed on straight to the last stage, which skips it
+     * without checkpointing it; a failure in the last stage retires it here.
+     */
+    private void fail(Stage s, ChunkWork w) {
+        Stage last = stages.get(stages.size() - 1);
+        if (s == last) {
+            completedCounter.incrementAndGet();
+            retired(w);
+            return;
+        }
+        try {
+            last.queue.put(w);
+        } catch (InterruptedException e) {
+            handBack(w);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void retired(ChunkWork w) {
+        java.util.function.Consumer<ChunkWork> l = onRetired;
+        if (l != null) l.accept(w);
+    }
+
+    private static void release(ChunkWork w) {
+        w.releasePayload();
+        w.releaseBudget();
+        if (w.decompressed != null) {
+            w.decompressed.release();
+            w.decompressed = null;
+        }
+    }
+
+    /**
+     * Drop an unfinished chunk's resources and put it back on the task it came from.
+     */
+    private static void handBack(ChunkWork w) {
+        release(w);
+        if (w.task != null) w.task.requeue(RegionFile.index(w.chunkX, w.chunkZ));
+    }
+
+    /**
+     * Stop all stages and wait until their threads (and the read workers) have
+     * returned. Chunks still sitting in hand-off queues go back to their tasks and
+     * are also returned as {chunkX, chunkZ} pairs so they can be re-queued.
+     */
+    public synchronized List<int[]> shutdownNow() {
+        running = false;
+        if (ioExecutor != null) ioExecutor.shutdownNow();
+        if (cpuExecutor != null) cpuExecutor.shutdownNow();
+        try {
+            if (ioExecutor != null && !ioExecutor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("[Churn] pipeline I/O threads did not stop within " + SHUTDOWN_WAIT_SECONDS + "s");
+            }
+            if (cpuExecutor != null && !cpuExecutor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("[Churn] pipeline CPU threads did not stop within " + SHUTDOWN_WAIT_SECONDS + "s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<int[]> pending = new ArrayList<>();
+        for (Stage s : stages) {
+            if (s.queue == null) continue;
+            ChunkWork w;
+            while ((w = s.queue.poll()) != null) {
+                handBack(w);
+                pending.add(new int[]{w.chunkX, w.chunkZ});
+            }
+        }
+        return pending;
+    }
+
+    public List<Stage> getStages() { return stages; }
+
+    /**
+     * Per-stage queue depth and occupancy as a JSON object.
+     */
+    public String statusJson() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < stages.size(); i++) {
+            Stage s = stages.get(i);
+            if (i > 0) sb.append(',');
+            sb.append('"').append(s.name).append("\":{")
+              .append("\"threads\":").append(s.threads)
+              .append(",\"io\":").append(s.io)
+              .append(",\"queueDepth\":").append(s.depth())
+              .append(",\"busy\":").append(s.busy())
+              .append(",\"occupancy\":").append(String.format(java.util.Locale.ROOT, "%.2f", s.occupancy()))
+              .append(",\"processed\":").append(s.processed())
+              .append('}');
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -1,6 +1,5 @@
 package net.fabricmc.churn.generator;
 
-import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 import net.fabricmc.churn.ui.ProgressDisplayManager;
 import net.fabricmc.churn.ui.ConsoleLogger;
@@ -15,6 +14,13 @@ public class GeneratorManager {
 
     private volatile JobConfig currentJob;
     private volatile boolean cancelRequested = false;
+    // True while the planner thread prepares the current job, before workers start
+    private volatile boolean planning = false;
+    private Thread planner;
+    // Closes a job's output and checkpoints off the server and command threads
+    private Thread closer;
+    private volatile String closerState; // e.g. "finalizing" while it runs, then "finished"
+    private volatile ChunkSink closingSink;
     
     // Player context for progress display
     private ServerPlayerEntity jobPlayer = null;
@@ -22,8 +28,13 @@ public class GeneratorManager {
 
     // Core engine pieces
     private ChurnWorkQueue workQueue;
-    private ExecutorService workerPool;
+    private ExtractionPipeline pipeline;
     private MainThreadApplier applier = MainThreadApplier.getInstance();
+    private CommitSink commitSink;
+    private ChunkSink outputSink;
+    private volatile TickBudget tickBudget;
+    private volatile ConcurrencyController concurrency;
+    private volatile MemoryBudget memoryBudget;
     private ProgressLogger logger;
 
     // Worker pause flag (used for TPS-based throttling)
@@ -33,9 +44,10 @@ public class GeneratorManager {
     private final AtomicLong chunksTotal = new AtomicLong(0);
     private final AtomicLong chunksCompleted = new AtomicLong(0);
     private long startTimeMillis = 0L;
-    // EWMA for chunks/sec (applied)
+    // EWMA for chunks/sec (completed)
     private double chunksPerSecEwma = 0.0;
     private long lastEwmaUpdate = System.currentTimeMillis();
+    private long lastEwmaCompleted = 0L;
     private final double cpsAlpha = 0.2; // EWMA alpha
 
     // checkpoint manager instance
@@ -53,6 +65,15 @@ public class GeneratorManager {
         if (currentJob != null) {
             throw new IllegalStateException("A job is already running");
         }
+        if (planner != null && planner.isAlive()) {
+            // A cancelled job's planner has not returned yet and still owns the job state
+            throw new IllegalStateException("The previous job is still shutting down");
+        }
+        if (closer != null && closer.isAlive()) {
+            throw new IllegalStateException("The previous job's output is still being finalized");
+        }
+        closerState = null;
+        closingSink = null;
 
         // sanitize and validate config
         java.util.List<String> warns = cfg.sanitize();
@@ -68,58 +89,138 @@ public class GeneratorManager {
 
         this.currentJob = cfg;
         this.cancelRequested = false;
+        this.planning = true;
 
         // Compute chunk targets
         int chunkRadius = (int) Math.ceil(cfg.radius / 16.0);
         long total = (2L * chunkRadius + 1L) * (2L * chunkRadius + 1L);
         chunksTotal.set(total);
         chunksCompleted.set(0);
+        chunksPerSecEwma = 0.0;
+        lastEwmaCompleted = 0L;
+        lastEwmaUpdate = System.currentTimeMillis();
+        ChunkDecompressor.resetStats();
+        BlockStatesDecoder.resetStats();
+        tickBudget = new TickBudget(cfg.tickBudgetMs, cfg.targetMspt);
 
         // Log job start
         ConsoleLogger.jobStart(jobPlayerId != null ? jobPlayerId : "console", cfg.worldId, cfg.radius, (int)total);
 
-        // Create queue and enqueue chunk tasks (per-chunk)
-        workQueue = new ChurnWorkQueue();
+        // Everything that touches the disk happens on the planner thread
+        planner = new Thread(() -> planJob(cfg, chunkRadius), "Churn-planner");
+        planner.setDaemon(true);
+        planner.start();
+        System.out.println("[Churn] Job planning: " + cfg + " totalChunks=" + total);
+    }
+
+    /**
+     * Planner thread: open checkpoints, restore a paused job's position, set up the
+     * world reader and output, then start the pipeline. The region cursor is lazy, so
+     * workers begin as soon as this is done and build their first region on demand.
+     */
+    private void planJob(JobConfig cfg, int chunkRadius) {
+        try {
+            if (!planJobUnchecked(cfg, chunkRadius)) abortPlanning(cfg);
+        } catch (Exception e) {
+            System.err.println("[Churn] job planning failed: " + e);
+            e.printStackTrace();
+            abortPlanning(cfg);
+        }
+    }
+
+    private boolean planJobUnchecked(JobConfig cfg, int chunkRadius) throws Exception {
         // initialize checkpoint manager
+        java.nio.file.Path cpDir = java.nio.file.Paths.get(cfg.checkpointPath == null ? "churn_checkpoints" : cfg.checkpointPath);
         try {
-            java.nio.file.Path cp = java.nio.file.Paths.get(cfg.checkpointPath == null ? "churn_checkpoints" : cfg.checkpointPath);
-            RegionCheckpointManager.init(cp);
+            RegionCheckpointManager.init(cpDir);
             checkpointManager = RegionCheckpointManager.getInstance();
+            checkpointManager.openJournal(cfg);
         } catch (Exception e) {
             System.err.println("[Churn] failed to initialize checkpoint manager: " + e + "; continuing without checkpoints");
             checkpointManager = null;
         }
 
-        // If we have a saved queue file from a previous pause, prefer loading it
-        java.nio.file.Path queueFile = java.nio.file.Paths.get(cfg.checkpointPath == null ? "churn_checkpoints" : cfg.checkpointPath).resolve("churn_last_queue.dat");
-        if (java.nio.file.Files.exists(queueFile)) {
+        // Initialize world navigator and chunk extractor
+        try {
+            java.nio.file.Path worldBaseDir = null;
+            // First try to use the detected world directory from executeStart
+            String propWorldDir = System.getProperty("churn.worldDir");
+            if (propWorldDir != null) {
+                worldBaseDir = java.nio.file.Paths.get(propWorldDir);
+            } else {
+                // Fallback: look in current directory / world
+                worldBaseDir = java.nio.file.Paths.get(System.getProperty("user.dir")).resolve("world");
+            }
+            
+            // Initialize progress logger first (before extractor that uses it)
+            logger = (cfg.logPath == null) ? new ProgressLogger(chunksTotal, chunksCompleted) : new ProgressLogger(chunksTotal, chunksCompleted, cfg.logPath, cfg.logMaxBytes, cfg.logRotateCount);
+            
+            navigator = new WorldNavigator(cfg.worldId, worldBaseDir);
+            extractor = new ChunkExtractor(navigator, logger, NbtProjection.forJob(cfg));
+            java.nio.file.Path outDir = java.nio.file.Paths.get(cfg.outputPath == null ? "churn_output" : cfg.outputPath);
+            outputFormatter = new OutputFormatter(outDir);
+            outputSink = cfg.applyToWorld ? null : openOutputSink(cfg, outDir);
+            commitSink = cfg.applyToWorld ? null : new CommitSink(outputSink, checkpointManager);
+            System.out.println("[Churn] World navigator and extractor initialized (world base: " + worldBaseDir + ")");
+        } catch (Exception e) {
+            System.err.println("[Churn] failed to initialize world navigator/extractor: " + e);
+            e.printStackTrace();
+            return false;
+        }
+
+        // Existing-chunks mode: read every region's location table and plan only present chunks
+        ExistingChunks present = null;
+        if (cfg.existingOnly) {
+            long scanStart = System.nanoTime();
+            present = ExistingChunks.scan(navigator.listRegionFiles());
+            System.out.println("[Churn] scanned " + present.regionCount() + " region(s) with chunks in "
+                + (System.nanoTime() - scanStart) / 1_000_000L + " ms"
+                + (present.skippedFiles() > 0 ? " (" + present.skippedFiles() + " unreadable file(s) skipped)" : ""));
+        }
+
+        // Regions are produced lazily by a cursor; a paused job resumes from its saved position
+        RegionCursor cursor = RegionCursor.square(chunkRadius, checkpointManager, present);
+        java.nio.file.Path cursorFile = cpDir.resolve(RegionCursor.FILE_NAME);
+        if (java.nio.file.Files.exists(cursorFile)) {
             try {
-                ChurnWorkQueue loaded = ChurnWorkQueue.loadFromFile(queueFile);
-                workQueue = loaded;
-                System.out.println("[Churn] loaded queued tasks from " + queueFile + " (size=" + workQueue.size() + ")");
-                // also restore applier queue if present
-                java.nio.file.Path applierFile = java.nio.file.Paths.get(cfg.checkpointPath == null ? "churn_checkpoints" : cfg.checkpointPath).resolve("churn_last_applier.dat");
-                if (java.nio.file.Files.exists(applierFile)) {
-                    try {
-                        int restored = applier.loadFromFile(applierFile);
-                        System.out.println("[Churn] restored applier queue (" + restored + " entries) from " + applierFile);
-                    } catch (Exception ex) {
-                        System.err.println("[Churn] failed to restore applier queue: " + ex);
-                    }
+                RegionCursor saved = RegionCursor.load(cursorFile, checkpointManager, present);
+                if (saved.sameSelection(cursor)) {
+                    cursor = saved;
+                    System.out.println("[Churn] resuming at region " + cursor.position() + "/" + cursor.regionCount() + " from " + cursorFile);
                 }
             } catch (Exception ex) {
-                System.err.println("[Churn] failed to load queue file: " + ex + "; falling back to full enqueue");
-                // fallback to default enqueue below
+                System.err.println("[Churn] failed to load cursor file: " + ex + "; starting from the first region");
             }
         }
+        workQueue = new ChurnWorkQueue(cursor);
+        // Region shards are finalized once all chunks planned for the region are through
+        final ChunkSink sink = outputSink;
+        if (sink != null) workQueue.setPlannedListener(t -> sink.expect(t.regionX, t.regionZ, t.remaining()));
+        if (present != null) chunksTotal.set(cursor.totalChunks());
+        // Chunks checkpointed by an earlier run count as completed, so resumed jobs can finish
+        chunksCompleted.set(cursor.countDone());
+        lastEwmaCompleted = chunksCompleted.get();
+
+        // A queue dump from older versions is covered by the cursor plus the bitmap
+        java.nio.file.Path queueFile = cpDir.resolve("churn_last_queue.dat");
+        try {
+            if (java.nio.file.Files.deleteIfExists(queueFile)) {
+                System.out.println("[Churn] dropped legacy queue file " + queueFile + "; pending chunks come from the checkpoints");
+            }
+        } catch (Exception ex) {
+            System.err.println("[Churn] failed to remove legacy queue file: " + ex);
+        }
 
-        if (workQueue.size() == 0) {
-            for (int dx = -chunkRadius; dx <= chunkRadius; dx++) {
-                for (int dz = -chunkRadius; dz <= chunkRadius; dz++) {
-                    // skip if checkpoint marks this chunk done
-                    if (checkpointManager != null && checkpointManager.isChunkDone(dx, dz)) continue;
-                    workQueue.enqueue(new ChurnTask(dx, dz));
-                }
+        // Restore the applier queue if present
+        java.nio.file.Path applierFile = cpDir.resolve("churn_last_applier.dat");
+        if (java.nio.file.Files.exists(applierFile)) {
+            try {
+                // Read-only jobs commit off-thread; extract those chunks again instead
+                int restored = cfg.applyToWorld ? applier.loadFromFile(applierFile) : requeueApplierFile(applierFile, workQueue);
+                java.nio.file.Files.deleteIfExists(applierFile);
+                System.out.println("[Churn] restored applier queue (" + restored + " entries) from " + applierFile);
+            } catch (Exception ex) {
+                System.err.println("[Churn] failed to restore applier queue: " + ex);
             }
         }
 
@@ -134,8 +235,7 @@ public class GeneratorManager {
                     String msg = "Found " + mismatches + " checkpoint(s) without matching region files in " + regionDir;
                     if (!cfg.force) {
                         System.err.println("[Churn] " + msg + ". Aborting job (use --force to override)." );
-                        currentJob = null;
-                        return;
+                        return false;
                     } else {
                         System.err.println("[Churn] " + msg + ". Proceeding due to --force.");
                     }
@@ -145,54 +245,123 @@ public class GeneratorManager {
             }
         }
 
-        // Initialize world navigator and chunk extractor
-        try {
-            java.nio.file.Path worldBaseDir = null;
-            // First try to use the detected world directory from executeStart
-            String propWorldDir = System.getProperty("churn.worldDir");
-            if (propWorldDir != null) {
-                worldBaseDir = java.nio.file.Paths.get(propWorldDir);
-            } else {
-                // Fallback: look in current directory / world
-                worldBaseDir = java.nio.file.Paths.get(System.getProperty("user.dir")).resolve("world");
+        // In-flight bytes are shared by the pipeline, the applier queue and the cache
+        long budgetBytes = cfg.memoryBudgetMb * 1024L * 1024L;
+        memoryBudget = new MemoryBudget(budgetBytes, cfg.heapShedThreshold);
+        ChunkCache.setMaxBytes(budgetBytes / 4);
+
+        synchronized (this) {
+            // Cancelled while planning: nothing was started yet
+            if (currentJob != cfg || cancelRequested) return false;
+
+            // Build the staged pipeline and start the read workers feeding it
+            pipeline = buildPipeline(cfg);
+            pipeline.start();
+            ExtractionPipeline.Stage readStage = pipeline.getStages().get(0);
+            concurrency = new ConcurrencyController(cfg.threads, cfg.targetMspt, cfg.minTps, cfg.maxCpuLoad, chunksCompleted);
+            for (int i = 0; i < cfg.threads; i++) {
+                pipeline.startSource(new Worker(workQueue, pipeline, readStage, this, extractor, concurrency, memoryBudget, i));
             }
-            
-            // Initialize progress logger first (before extractor that uses it)
-            logger = (cfg.logPath == null) ? new ProgressLogger(chunksTotal, chunksCompleted) : new ProgressLogger(chunksTotal, chunksCompleted, cfg.logPath, cfg.logMaxBytes, cfg.logRotateCount);
-            
-            navigator = new WorldNavigator(cfg.worldId, worldBaseDir);
-            java.util.List<String> worldIssues = navigator.validateWorld();
-            if (!worldIssues.isEmpty()) {
-                System.err.println("[Churn] World validation warnings:");
-                for (String issue : worldIssues) System.err.println("  - " + issue);
-            }
-            extractor = new ChunkExtractor(navigator, logger);
-            outputFormatter = new OutputFormatter(java.nio.file.Paths.get(cfg.outputPath == null ? "churn_output" : cfg.outputPath));
-            System.out.println("[Churn] World navigator and extractor initialized (world base: " + worldBaseDir + ")");
-        } catch (Exception e) {
-            System.err.println("[Churn] failed to initialize world navigator/extractor: " + e);
-            e.printStackTrace();
-            currentJob = null;
-            return;
-        }
 
-        // Create worker pool
-        workerPool = Executors.newFixedThreadPool(Math.max(1, cfg.threads));
+            // Start progress logger
+            logger.start();
 
-        // Start workers
-        for (int i = 0; i < cfg.threads; i++) {
-            workerPool.submit(new Worker(workQueue, applier, chunksCompleted, this, extractor));
+            // record start time
+            startTimeMillis = System.currentTimeMillis();
+            planning = false;
         }
+        System.out.println("[Churn] Job started: " + cfg + " totalChunks=" + chunksTotal.get());
 
-        // Start progress logger
-        logger.start();
+        // Listing every region file only produces warnings; do it while workers run
+        java.util.List<String> worldIssues = navigator.validateWorld();
+        if (!worldIssues.isEmpty()) {
+            System.err.println("[Churn] World validation warnings:");
+            for (String issue : worldIssues) System.err.println("  - " + issue);
+        }
+        return true;
+    }
 
-        // record start time
-        startTimeMillis = System.currentTimeMillis();
+    /**
+     * Drop a job whose planning failed or was cancelled, releasing what planning opened.
+     */
+    private synchronized void abortPlanning(JobConfig cfg) {
+        if (checkpointManager != null) checkpointManager.closeJournal();
+        closeMemoryBudget();
+        closeOutputSink(false);
+        if (currentJob == cfg) {
+            currentJob = null;
+            jobPlayer = null;
+            jobPlayerId = null;
+        }
+        planning = false;
+    }
 
-        System.out.println("[Churn] Job started: " + cfg + " totalChunks=" + total);
+    public boolean isPlanning() {
+        return planning;
     }
     
+    private ExtractionPipeline buildPipeline(JobConfig cfg) {
+        final ChunkExtractor ex = extractor;
+        ExtractionPipeline p = new ExtractionPipeline(chunksCompleted);
+        // A region stays active (and in the resume range) until its last chunk is through
+        p.setRetireListener(workQueue::retire);
+        p.addSource("read", cfg.threads);
+        // Passthrough jobs hand the compressed payload straight to the commit stage
+        if (!cfg.passthrough) {
+            p.addStage("inflate", false, cfg.cpuStageThreads(cfg.inflateThreads), cfg.stageQueueCapacity, ex::inflate);
+            p.addStage("parse", false, cfg.cpuStageThreads(cfg.parseThreads), cfg.stageQueueCapacity, ex::parse);
+            p.addStage("serialize", false, cfg.cpuStageThreads(cfg.serializeThreads), cfg.stageQueueCapacity, w -> {
+                if (w.failed) return; // skipped by the commit stage
+                w.serialized = w.data.serialize();
+                // From here on the chunk only holds its serialized bytes
+                if (w.budget != null) w.charged = w.budget.resize(w.charged, w.serialized.length);
+            });
+        }
+        final CommitSink sink = commitSink;
+        p.addStage("commit", true, cfg.commitThreads, cfg.stageQueueCapacity, w -> {
+            if (sink != null) {
+                try {
+                    sink.commit(w);
+                } finally {
+                    w.releasePayload();
+                    w.releaseBudget();
+                }
+            } else if (w.failed) {
+                // Not applied, not checkpointed: a resumed job retries it
+                w.releaseBudget();
+            } else {
+                // The reservation moves with the result and is released once applied
+                applier.enqueue(new ChurnBuildResult(w.chunkX, w.chunkZ, w.serialized, w.budget, w.charged));
+                w.charged = 0;
+            }
+            chunksCompleted.incrementAndGet();
+        });
+        return p;
+    }
+
+    /**
+     * Put the chunks of an applier dump (chunkX,chunkZ,data lines) back on the work queue.
+     */
+    private int requeueApplierFile(java.nio.file.Path file, ChurnWorkQueue queue) throws java.io.IOException {
+        int count = 0;
+        for (String line : java.nio.file.Files.readAllLines(file)) {
+            String[] parts = line.trim().split(",", 3);
+            if (parts.length < 2) continue;
+            try {
+                int x = Integer.parseInt(parts[0]);
+                int z = Integer.parseInt(parts[1]);
+                if (checkpointManager != null && checkpointManager.isChunkDone(x, z)) continue;
+                RegionTask t = new RegionTask(x >> 5, z >> 5);
+                t.add(RegionFile.index(x, z));
+                queue.enqueue(t);
+                count++;
+            } catch (NumberFormatException ex) {
+                // skip malformed
+            }
+        }
+        return count;
+    }
+
     /**
      * Set player context for progress display
      */
@@ -224,6 +393,7 @@ public class GeneratorManager {
 
     public String getStatus() {
         if (currentJob == null) return "idle";
+        if (planning) return "planning: world=" + currentJob.worldId + " radius=" + currentJob.radius;
         long total = chunksTotal.get();
         long done = chunksCompleted.get();
         double pct = total == 0 ? 0.0 : (done * 100.0 / total);
@@ -233,7 +403,7 @@ public class GeneratorManager {
     }
 
     public String getStatusJson() {
-        if (currentJob == null) return "{}";
+        if (currentJob == null) return closerStatusJson();
         long total = chunksTotal.get();
         long done = chunksCompleted.get();
         double pct = total == 0 ? 0.0 : (done * 100.0 / total);
@@ -242,14 +412,17 @@ public class GeneratorManager {
         long pending = applier.pending();
         int workers = currentJob.threads;
         java.util.Map<String, Object> m = new java.util.LinkedHashMap<>();
+        m.put("state", planning ? "planning" : "running");
         m.put("world", currentJob.worldId);
         m.put("radius", currentJob.radius);
         m.put("totalChunks", total);
         m.put("doneChunks", done);
         m.put("percent", pct);
         m.put("tps", tps);
+        m.put("mspt", TPSMonitor.getInstance().getMspt());
         m.put("paused", paused);
         m.put("applierPending", pending);
+        m.put("commitMode", currentJob.applyToWorld ? "applier" : currentJob.passthrough ? "passthrough" : "sink");
         m.put("workerThreads", workers);
         m.put("chunksPerSecond", getChunksPerSecond());
         double eta = -1.0;
@@ -257,6 +430,7 @@ public class GeneratorManager {
             eta = (total - done) / getChunksPerSecond();
         }
         m.put("etaSeconds", eta);
+        ExtractionPipeline p = pipeline;
         StringBuilder sb = new StringBuilder();
         sb.append('{');
         boolean first = true;
@@ -268,6 +442,22 @@ public class GeneratorManager {
             if (v instanceof Number || v instanceof Boolean) sb.append(v.toString());
             else sb.append('"').append(v.toString()).append('"');
         }
+        sb.append(",\"server\":").append(TPSMonitor.getInstance().statsJson());
+        if (p != null) sb.append(",\"stages\":").append(p.statusJson());
+        sb.append(",\"codecs\":").append(ChunkDecompressor.statsJson());
+        sb.append(",\"sections\":").append(BlockStatesDecoder.statsJson());
+        CommitSink cs = commitSink;
+        if (cs != null) sb.append(",\"commit\":").append(cs.statsJson());
+        ChunkSink os = outputSink;
+        if (os != null) sb.append(",\"output\":").append(os.statsJson());
+        MemoryBudget mb = memoryBudget;
+        if (mb != null) sb.append(",\"memory\":").append(mb.statsJson());
+        ConcurrencyController cc = concurrency;
+        if (cc != null) sb.append(",\"concurrency\":").append(cc.statsJson());
+        TickBudget tb = tickBudget;
+        if (tb != null) sb.append(",\"tick\":").append(tb.statsJson());
+        String journal = checkpointManager == null ? null : checkpointManager.journalStatsJson();
+        if (journal != null) sb.append(",\"checkpoints\":").append(journal);
         sb.append('}');
         return sb.toString();
     }
@@ -280,12 +470,11 @@ public class GeneratorManager {
         ConsoleLogger.jobCancelled(jobPlayerId != null ? jobPlayerId : "console", (int)completed);
         
         cancelRequested = true;
-        if (workerPool != null) {
-            workerPool.shutdownNow();
-        }
         if (logger != null) {
             logger.requestStop();
         }
+        // Stopping the stages and closing output and journal can take a while
+        closeInBackground("cancelling", "cancelled", false, null);
         System.out.println("[Churn] cancel requested");
         
         // Clear progress display
@@ -298,15 +487,116 @@ public class GeneratorManager {
         jobPlayerId = null;
     }
 
+    /**
+     * Status of the last job's teardown, or {@code {}} if there is none.
+     */
+    private String closerStatusJson() {
+        String state = closerState;
+        if (state == null) return "{}";
+        ChunkSink os = closingSink;
+        return "{\"state\":\"" + state + "\"" + (os == null ? "" : ",\"output\":" + os.statsJson()) + "}";
+    }
+
+    /**
+     * Tear down a job on the {@code Churn-closer} thread: wait for the pipeline to
+     * stop, close the output (sealing shards, building indexes), run {@code after},
+     * then close the checkpoint journal (fsync and compaction) and the memory
+     * budget. The output goes before the journal so every record it reports
+     * durable is checkpointed. The status shows {@code state} until the thread is
+     * done and {@code doneState} after; a new job cannot start before that. The
+     * caller holds the lock.
+     */
+    private void closeInBackground(String state, String doneState, boolean finished, Runnable after) {
+        final ExtractionPipeline p = pipeline;
+        final ChunkSink os = outputSink;
+        final RegionCheckpointManager cpm = checkpointManager;
+        final MemoryBudget mb = memoryBudget;
+        outputSink = null;
+        closingSink = os;
+        closerState = state;
+        closer = new Thread(() -> {
+            try {
+                if (p != null) p.shutdownNow();
+                if (os != null) {
+                    try {
+                        os.close(finished);
+                    } catch (Exception e) {
+                        System.err.println("[Churn] failed to close output: " + e);
+                    }
+                }
+                if (after != null) after.run();
+            } finally {
+                if (cpm != null) cpm.closeJournal();
+                if (mb != null) mb.close();
+                closerState = doneState;
+                System.out.println("[Churn] job " + doneState);
+            }
+        }, "Churn-closer");
+        closer.setDaemon(true);
+        closer.start();
+    }
+
+    /**
+     * Block until a job being torn down in the background is done, e.g. before the
+     * server stops.
+     */
+    public void awaitClose() {
+        Thread t;
+        synchronized (this) {
+            t = closer;
+        }
+        if (t == null) return;
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeMemoryBudget() {
+        MemoryBudget mb = memoryBudget;
+        if (mb != null) mb.close();
+    }
+
+    private static ChunkSink openOutputSink(JobConfig cfg, java.nio.file.Path outDir) throws java.io.IOException {
+        // Passthrough jobs copy raw payloads; the output format does not apply
+        if (cfg.passthrough) return new RegionCopyWriter(outDir);
+        switch (cfg.outputFormat) {
+            case "files": return new OutputFormatter(outDir);
+            case "pack": return new ShardedOutputWriter(outDir, ChunkPack.FORMAT);
+            case "arrow": return new ArrowOutputWriter(outDir);
+            case "sqlite": return new SqliteOutputWriter(outDir);
+            default: return new ShardedOutputWriter(outDir, ShardedOutputWriter.text("csv".equals(cfg.outputFormat), cfg.outputGzip));
+        }
+    }
+
+    /**
+     * Drain and close the job's output; {@code finished} finalizes partial shards.
+     */
+    private void closeOutputSink(boolean finished) {
+        ChunkSink os = outputSink;
+        if (os == null) return;
+        outputSink = null;
+        try {
+            os.close(finished);
+        } catch (Exception e) {
+            System.err.println("[Churn] failed to close output: " + e);
+        }
+    }
+
     public synchronized void pauseWorkers() {
         if (workersPaused) return;
         workersPaused = true;
+        ConcurrencyController c = concurrency;
+        if (c != null) c.setPaused(true);
         System.out.println("[Churn] workers paused");
     }
 
     public synchronized void resumeWorkers() {
         if (!workersPaused) return;
         workersPaused = false;
+        ConcurrencyController c = concurrency;
+        if (c != null) c.setPaused(false);
         System.out.println("[Churn] workers resumed");
     }
 
@@ -316,17 +606,39 @@ public class GeneratorManager {
 
     public synchronized void pauseCurrentJob() {
         if (currentJob == null) return;
-        cancelRequested = true;
-        if (workerPool != null) {
-            workerPool.shutdownNow();
+        if (planning) {
+            System.out.println("[Churn] job is still planning; cancel it instead of pausing");
+            return;
         }
+        final JobConfig cfg = currentJob;
+        final ChurnWorkQueue queue = workQueue;
+        cancelRequested = true;
         if (logger != null) {
             logger.requestStop();
         }
+        // The closer waits for every stage to stop first; chunks still inside go back
+        // to their region tasks, which stay active, so the saved position covers them
+        closeInBackground("pausing", "paused", false, () -> persistPausedJob(cfg, queue));
+        System.out.println("[Churn] pause requested");
 
+        // Clear progress display
+        if (jobPlayer != null && jobPlayer.isAlive()) {
+            ProgressDisplayManager.getInstance().clearProgress(jobPlayer);
+        }
+
+        currentJob = null;
+        jobPlayer = null;
+        jobPlayerId = null;
+    }
+
+    /**
+     * Save what a resumed job needs: the job config, the cursor position and the
+     * applier queue. Runs on the closer thread once the pipeline has stopped.
+     */
+    private void persistPausedJob(JobConfig cfg, ChurnWorkQueue queue) {
         // persist simple job state to a properties file
         try {
-            java.util.Properties p = currentJob.toProperties();
+            java.util.Properties p = cfg.toProperties();
             p.setProperty("chunksTotal", Long.toString(chunksTotal.get()));
             p.setProperty("chunksCompleted", Long.toString(chunksCompleted.get()));
             java.nio.file.Path out = java.nio.file.Paths.get("churn_last_job.meta");
@@ -338,33 +650,26 @@ public class GeneratorManager {
             // Log checkpoint
             ConsoleLogger.checkpointCreated("churn_last_job.meta", (int)chunksCompleted.get());
             
-            // persist remaining queue to a file in the checkpoint directory
+            // persist the cursor position to a file in the checkpoint directory
             try {
-                java.nio.file.Path cpDir = java.nio.file.Paths.get(currentJob.checkpointPath == null ? "churn_checkpoints" : currentJob.checkpointPath);
+                java.nio.file.Path cpDir = java.nio.file.Paths.get(cfg.checkpointPath == null ? "churn_checkpoints" : cfg.checkpointPath);
                 if (!java.nio.file.Files.exists(cpDir)) java.nio.file.Files.createDirectories(cpDir);
-                java.nio.file.Path qFile = cpDir.resolve("churn_last_queue.dat");
-                int count = workQueue.drainToFile(qFile);
-                System.out.println("[Churn] persisted remaining queue (" + count + " entries) to " + qFile);
+                java.nio.file.Path cFile = cpDir.resolve(RegionCursor.FILE_NAME);
+                int resumeAt = queue.resumePosition();
+                queue.cursor().save(cFile, resumeAt);
+                System.out.println("[Churn] persisted cursor (region " + resumeAt + "/" + queue.cursor().regionCount() + ") to " + cFile);
                 // persist pending applier queue as well
                 java.nio.file.Path aFile = cpDir.resolve("churn_last_applier.dat");
                 int acount = applier.drainToFile(aFile);
                 System.out.println("[Churn] persisted applier queue (" + acount + " entries) to " + aFile);
             } catch (Exception e) {
-                System.err.println("[Churn] failed to persist queue file: " + e);
-                ConsoleLogger.warn("Failed to persist queue file: %s", e.getMessage());
+                System.err.println("[Churn] failed to persist cursor file: " + e);
+                ConsoleLogger.warn("Failed to persist cursor file: %s", e.getMessage());
             }
         } catch (Exception e) {
             System.err.println("[Churn] failed to persist job state: " + e);
             ConsoleLogger.error("Failed to persist job state: %s", e);
         }
-        
-        // Clear progress display
-        if (jobPlayer != null && jobPlayer.isAlive()) {
-            ProgressDisplayManager.getInstance().clearProgress(jobPlayer);
-        }
-        
-        jobPlayer = null;
-        jobPlayerId = null;
     }
 
     public synchronized void resumeJob(String path) {
@@ -387,10 +692,16 @@ public class GeneratorManager {
         try {
             java.nio.file.Path dir = java.nio.file.Paths.get(path == null ? "churn_checkpoints" : path);
             if (!java.nio.file.Files.exists(dir)) return;
+            // The bitmap is mapped while a manager is open; drop it so the next job starts clean
+            RegionCheckpointManager cpm = RegionCheckpointManager.getInstance();
+            if (cpm != null && cpm.getDirectory().toAbsolutePath().normalize().equals(dir.toAbsolutePath().normalize())) {
+                RegionCheckpointManager.close();
+                checkpointManager = null;
+            }
             try (java.nio.file.DirectoryStream<java.nio.file.Path> ds = java.nio.file.Files.newDirectoryStream(dir)) {
                 for (java.nio.file.Path p : ds) {
                     String n = p.getFileName().toString();
-                    if (n.endsWith(".chk") || n.startsWith("churn_last_")) {
+                    if (n.endsWith(".chk") || n.equals(RegionCheckpointManager.FILE_NAME) || n.equals(CheckpointJournal.FILE_NAME) || n.startsWith("churn_last_")) {
                         java.nio.file.Files.deleteIfExists(p);
                     }
                 }
@@ -401,9 +712,33 @@ public class GeneratorManager {
         }
     }
 
+    /**
+     * Start-of-tick hook: runs Churn's main-thread work within the tick budget.
+     */
     public void tickApply() {
         JobConfig cfg = currentJob;
-        if (cfg == null) return;
+        if (cfg == null || planning) return;
+        TickBudget budget = tickBudget;
+        long start = System.nanoTime();
+        budget.startTick();
+        try {
+            runTick(cfg, budget, start);
+        } finally {
+            budget.recordChurn(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * End-of-tick hook: lets the tick budget adapt to how long the tick took.
+     */
+    public void tickEnd() {
+        TickBudget budget = tickBudget;
+        if (budget != null) budget.endTick(TPSMonitor.getInstance().getLastTickNanos());
+    }
+
+    private void runTick(JobConfig cfg, TickBudget budget, long start) {
+        ConcurrencyController c = concurrency;
+        if (c != null) c.update(start);
         double tps = TPSMonitor.getInstance().getTps();
         if (cfg.minTps > 0.0 && tps < cfg.minTps) {
             if (!isWorkersPaused()) {
@@ -420,16 +755,18 @@ public class GeneratorManager {
             }
         }
 
-        int scaledBatch = Math.max(1, (int) Math.round(cfg.batch * (tps / 20.0)));
-        int applied = applier.applyBatch(scaledBatch);
-        if (applied > 0) {
-            long now = System.currentTimeMillis();
-            long dt = now - lastEwmaUpdate;
-            if (dt > 0) {
-                double sample = (applied * 1000.0) / dt;
-                chunksPerSecEwma = cpsAlpha * sample + (1 - cpsAlpha) * chunksPerSecEwma;
-                lastEwmaUpdate = now;
-            }
+        // Read-only jobs are committed by the pipeline; only world edits need the tick
+        if (cfg.applyToWorld) {
+            applier.applyUntil(start + budget.budgetNanos());
+        }
+        long now = System.currentTimeMillis();
+        long dt = now - lastEwmaUpdate;
+        if (dt >= 250) {
+            long done = chunksCompleted.get();
+            double sample = ((done - lastEwmaCompleted) * 1000.0) / dt;
+            chunksPerSecEwma = cpsAlpha * sample + (1 - cpsAlpha) * chunksPerSecEwma;
+            lastEwmaCompleted = done;
+            lastEwmaUpdate = now;
         }
         
         // Update progress display and logging
@@ -452,7 +789,7 @@ public class GeneratorManager {
         }
         
         if (chunksCompleted.get() >= chunksTotal.get() && applier.pending() == 0) {
-            System.out.println("[Churn] job finished: applied all chunks");
+            System.out.println("[Churn] job finished: " + (cfg.applyToWorld ? "applied" : "committed") + " all chunks");
             
             // Log completion
             long elapsed = System.currentTimeMillis() - startTimeMillis;
@@ -466,13 +803,29 @@ public class GeneratorManager {
             }
             
             if (logger != null) logger.requestStop();
-            if (workerPool != null) workerPool.shutdownNow();
-            currentJob = null;
-            jobPlayer = null;
-            jobPlayerId = null;
+            finishJob(cfg);
         }
     }
 
+    /**
+     * Detach a completed job and finalize its output in the background; sealing
+     * shards or indexing a database can take long and must not hold up the tick.
+     */
+    private synchronized void finishJob(JobConfig cfg) {
+        if (currentJob != cfg) return;
+        closeInBackground("finalizing", "finished", true, () -> {
+            try {
+                java.nio.file.Path cpDir = java.nio.file.Paths.get(cfg.checkpointPath == null ? "churn_checkpoints" : cfg.checkpointPath);
+                java.nio.file.Files.deleteIfExists(cpDir.resolve(RegionCursor.FILE_NAME));
+            } catch (Exception e) {
+                System.err.println("[Churn] failed to remove cursor file: " + e);
+            }
+        });
+        currentJob = null;
+        jobPlayer = null;
+        jobPlayerId = null;
+    }
+
     public synchronized void startPostProcess(String path) {
         try {
             java.nio.file.Path outputDir = java.nio.file.Paths.get(path == null ? "churn_output" : path);
@@ -1,6 +1,8 @@
 package net.fabricmc.churn.generator;
 
 public class JobConfig {
+    public static final String[] OUTPUT_FORMATS = {"json", "csv", "pack", "arrow", "sqlite", "files"};
+
     public String worldId;
     public int radius = 512;
     public int threads = 2;
@@ -8,7 +10,7 @@ public class JobConfig {
     public boolean skipLighting = false;
     public boolean skipEntities = false;
     public boolean fastGenerate = false;
-    public int batch = 2;
+    public int batch = 2; // no longer sizes main-thread work, see tickBudgetMs
     public double minTps = 0.0;
     public double tpsHysteresis = 0.5;
     public String logPath;
@@ -16,6 +18,35 @@ public class JobConfig {
     public int logRotateCount = 3;
     public String checkpointPath;
     public boolean force = false;
+    // Pipeline stage sizing; 0 threads means "derive from available cores"
+    public int inflateThreads = 0;
+    public int parseThreads = 0;
+    public int serializeThreads = 0;
+    public int commitThreads = 1;
+    public int stageQueueCapacity = 256;
+    // Checkpoint journal: none | interval | batch, see CheckpointJournal.Durability
+    public String checkpointDurability = "interval";
+    public long checkpointSyncIntervalMs = 2000L;
+    public int checkpointSyncEntries = 4096;
+    public int checkpointCompactEntries = 262144;
+    // Route results through the tick-bound MainThreadApplier; off for read-only extraction
+    public boolean applyToWorld = false;
+    // Main-thread time per tick: upper bound in ms and the MSPT the budget adapts to
+    public double tickBudgetMs = 2.0;
+    public double targetMspt = 45.0;
+    // Read workers are not added while the process CPU load (0..1) is at or above this
+    public double maxCpuLoad = 0.9;
+    // Bytes of chunk data in flight (pipeline, applier queue; a quarter for the cache)
+    public int memoryBudgetMb = 256;
+    // Fraction of a heap pool's max that, still used after a GC, stops new reads
+    public double heapShedThreshold = 0.85;
+    // Plan only chunks present in the region files' location tables, not the whole square
+    public boolean existingOnly = false;
+    // Copy the chunks' compressed payloads into <output>/region as .mca files, without parsing them
+    public boolean passthrough = false;
+    // Read-only job output: json / csv / pack (per-region shards), arrow, sqlite, or files (one JSON file per chunk)
+    public String outputFormat = "json";
+    public boolean outputGzip = false;
 
     public java.util.Properties toProperties() {
         java.util.Properties p = new java.util.Properties();
@@ -34,6 +65,25 @@ public class JobConfig {
         p.setProperty("logRotateCount", Integer.toString(logRotateCount));
         if (checkpointPath != null) p.setProperty("checkpointPath", checkpointPath);
         p.setProperty("force", Boolean.toString(force));
+        p.setProperty("inflateThreads", Integer.toString(inflateThreads));
+        p.setProperty("parseThreads", Integer.toString(parseThreads));
+        p.setProperty("serializeThreads", Integer.toString(serializeThreads));
+        p.setProperty("commitThreads", Integer.toString(commitThreads));
+        p.setProperty("stageQueueCapacity", Integer.toString(stageQueueCapacity));
+        p.setProperty("checkpointDurability", checkpointDurability);
+        p.setProperty("checkpointSyncIntervalMs", Long.toString(checkpointSyncIntervalMs));
+        p.setProperty("checkpointSyncEntries", Integer.toString(checkpointSyncEntries));
+        p.setProperty("checkpointCompactEntries", Integer.toString(checkpointCompactEntries));
+        p.setProperty("applyToWorld", Boolean.toString(applyToWorld));
+        p.setProperty("tickBudgetMs", Double.toString(tickBudgetMs));
+        p.setProperty("targetMspt", Double.toString(targetMspt));
+        p.setProperty("maxCpuLoad", Double.toString(maxCpuLoad));
+        p.setProperty("memoryBudgetMb", Integer.toString(memoryBudgetMb));
+        p.setProperty("heapShedThreshold", Double.toString(heapShedThreshold));
+        p.setProperty("existingOnly", Boolean.toString(existingOnly));
+        p.setProperty("passthrough", Boolean.toString(passthrough));
+        p.setProperty("outputFormat", outputFormat);
+        p.setProperty("outputGzip", Boolean.toString(outputGzip));
         return p;
     }
 
@@ -54,9 +104,36 @@ public class JobConfig {
         cfg.logRotateCount = Integer.parseInt(p.getProperty("logRotateCount", "3"));
         cfg.checkpointPath = p.getProperty("checkpointPath");
         cfg.force = Boolean.parseBoolean(p.getProperty("force", "false"));
+        cfg.inflateThreads = Integer.parseInt(p.getProperty("inflateThreads", "0"));
+        cfg.parseThreads = Integer.parseInt(p.getProperty("parseThreads", "0"));
+        cfg.serializeThreads = Integer.parseInt(p.getProperty("serializeThreads", "0"));
+        cfg.commitThreads = Integer.parseInt(p.getProperty("commitThreads", "1"));
+        cfg.stageQueueCapacity = Integer.parseInt(p.getProperty("stageQueueCapacity", "256"));
+        cfg.checkpointDurability = p.getProperty("checkpointDurability", "interval");
+        cfg.checkpointSyncIntervalMs = Long.parseLong(p.getProperty("checkpointSyncIntervalMs", "2000"));
+        cfg.checkpointSyncEntries = Integer.parseInt(p.getProperty("checkpointSyncEntries", "4096"));
+        cfg.checkpointCompactEntries = Integer.parseInt(p.getProperty("checkpointCompactEntries", "262144"));
+        cfg.applyToWorld = Boolean.parseBoolean(p.getProperty("applyToWorld", "false"));
+        cfg.tickBudgetMs = Double.parseDouble(p.getProperty("tickBudgetMs", "2.0"));
+        cfg.targetMspt = Double.parseDouble(p.getProperty("targetMspt", "45.0"));
+        cfg.maxCpuLoad = Double.parseDouble(p.getProperty("maxCpuLoad", "0.9"));
+        cfg.memoryBudgetMb = Integer.parseInt(p.getProperty("memoryBudgetMb", "256"));
+        cfg.heapShedThreshold = Double.parseDouble(p.getProperty("heapShedThreshold", "0.85"));
+        cfg.existingOnly = Boolean.parseBoolean(p.getProperty("existingOnly", "false"));
+        cfg.passthrough = Boolean.parseBoolean(p.getProperty("passthrough", "false"));
+        cfg.outputFormat = p.getProperty("outputFormat", "json");
+        cfg.outputGzip = Boolean.parseBoolean(p.getProperty("outputGzip", "false"));
         return cfg;
     }
 
+    /**
+     * Threads for a CPU stage: the configured value, or an even share of the cores.
+     */
+    public int cpuStageThreads(int configured) {
+        if (configured > 0) return configured;
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 3);
+    }
+
     @Override
     public String toString() {
         return "JobConfig[world=" + worldId + ", radius=" + radius + ", threads=" + threads + "]";
@@ -99,6 +176,64 @@ public class JobConfig {
             warnings.add("logRotateCount must be >=1, defaulting to 3");
             logRotateCount = 3;
         }
+        if (inflateThreads < 0 || parseThreads < 0 || serializeThreads < 0) {
+            warnings.add("stage thread counts must be >=0, negative values reset to auto");
+            inflateThreads = Math.max(0, inflateThreads);
+            parseThreads = Math.max(0, parseThreads);
+            serializeThreads = Math.max(0, serializeThreads);
+        }
+        if (commitThreads <= 0) {
+            warnings.add("commitThreads must be >=1, defaulting to 1");
+            commitThreads = 1;
+        }
+        if (stageQueueCapacity <= 0) {
+            warnings.add("stageQueueCapacity must be >=1, defaulting to 256");
+            stageQueueCapacity = 256;
+        }
+        if (checkpointDurability == null || checkpointDurability.trim().isEmpty()) {
+            warnings.add("checkpointDurability was empty, defaulting to interval");
+            checkpointDurability = "interval";
+        } else {
+            checkpointDurability = checkpointDurability.trim().toLowerCase(java.util.Locale.ROOT);
+        }
+        if (checkpointSyncIntervalMs <= 0) {
+            warnings.add("checkpointSyncIntervalMs must be >0, defaulting to 2000");
+            checkpointSyncIntervalMs = 2000L;
+        }
+        if (checkpointSyncEntries <= 0) {
+            warnings.add("checkpointSyncEntries must be >=1, defaulting to 4096");
+            checkpointSyncEntries = 4096;
+        }
+        if (checkpointCompactEntries <= 0) {
+            warnings.add("checkpointCompactEntries must be >=1, defaulting to 262144");
+            checkpointCompactEntries = 262144;
+        }
+        if (tickBudgetMs <= 0.0) {
+            warnings.add("tickBudgetMs must be >0, defaulting to 2.0");
+            tickBudgetMs = 2.0;
+        }
+        if (targetMspt <= 0.0) {
+            warnings.add("targetMspt must be >0, defaulting to 45.0");
+            targetMspt = 45.0;
+        }
+        if (maxCpuLoad <= 0.0 || maxCpuLoad > 1.0) {
+            warnings.add("maxCpuLoad must be in (0,1], defaulting to 0.9");
+            maxCpuLoad = 0.9;
+        }
+        if (memoryBudgetMb <= 0) {
+            warnings.add("memoryBudgetMb must be >=1, defaulting to 256");
+            memoryBudgetMb = 256;
+        }
+        if (heapShedThreshold <= 0.0 || heapShedThreshold >= 1.0) {
+            warnings.add("heapShedThreshold must be in (0,1), defaulting to 0.85");
+            heapShedThreshold = 0.85;
+        }
+        if (outputFormat == null || outputFormat.trim().isEmpty()) {
+            warnings.add("outputFormat was empty, defaulting to json");
+            outputFormat = "json";
+        } else {
+            outputFormat = outputFormat.trim().toLowerCase(java.util.Locale.ROOT);
+        }
         if (outputPath != null) {
             try {
                 java.nio.file.Path p = java.nio.file.Paths.get(outputPath).toAbsolutePath().normalize();
@@ -139,6 +274,26 @@ public class JobConfig {
         if (tpsHysteresis < 0.0) errs.add("tpsHysteresis must be >= 0");
         if (logMaxBytes <= 0) errs.add("logMaxBytes must be > 0");
         if (logRotateCount <= 0) errs.add("logRotateCount must be >= 1");
+        if (inflateThreads < 0 || parseThreads < 0 || serializeThreads < 0) errs.add("stage thread counts must be >= 0");
+        if (commitThreads <= 0) errs.add("commitThreads must be >= 1");
+        if (stageQueueCapacity <= 0) errs.add("stageQueueCapacity must be >= 1");
+        try {
+            CheckpointJournal.Durability.parse(checkpointDurability == null ? "" : checkpointDurability);
+        } catch (IllegalArgumentException e) {
+            errs.add("checkpointDurability must be one of none, interval, batch");
+        }
+        if (checkpointSyncIntervalMs <= 0) errs.add("checkpointSyncIntervalMs must be > 0");
+        if (checkpointSyncEntries <= 0) errs.add("checkpointSyncEntries must be >= 1");
+        if (checkpointCompactEntries <= 0) errs.add("checkpointCompactEntries must be >= 1");
+        if (tickBudgetMs <= 0.0 || tickBudgetMs > 50.0) errs.add("tickBudgetMs must be in (0,50]");
+        if (targetMspt <= 0.0) errs.add("targetMspt must be > 0");
+        if (maxCpuLoad <= 0.0 || maxCpuLoad > 1.0) errs.add("maxCpuLoad must be in (0,1]");
+        if (memoryBudgetMb <= 0) errs.add("memoryBudgetMb must be >= 1");
+        if (heapShedThreshold <= 0.0 || heapShedThreshold >= 1.0) errs.add("heapShedThreshold must be in (0,1)");
+        if (passthrough && applyToWorld) errs.add("passthrough cannot be combined with applyToWorld");
+        if (!java.util.Arrays.asList(OUTPUT_FORMATS).contains(outputFormat)) {
+            errs.add("outputFormat must be one of " + String.join(", ", OUTPUT_FORMATS));
+        }
         return errs;
     }
 }
@@ -0,0 +1,223 @@
+package net.fabricmc.churn.generator;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder for the LZ4 block stream written by lz4-java's LZ4BlockOutputStream,
+ * which vanilla uses for chunk compression type 4.
+ *
+ * Stream layout: repeated blocks of "LZ4Block" magic, a token byte (method in
+ * the high nibble: 0x10 raw, 0x20 LZ4), compressed length, decompressed length and
+ * checksum (all little-endian ints), followed by the block body. A raw block with
+ * zero lengths ends the stream. Output is written directly into a ChunkBuffer; the
+ * decoder keeps no state and allocates nothing. Block checksums are not verified.
+ */
+public final class Lz4BlockDecoder {
+    private static final byte[] MAGIC = {'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k'};
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + 4 + 4;
+    private static final int METHOD_RAW = 0x10;
+    private static final int METHOD_LZ4 = 0x20;
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_BLOCK_SIZE = 1 << 25; // lz4-java's upper bound
+
+    private Lz4BlockDecoder() {
+    }
+
+    /**
+     * Decode the whole stream in {@code in} (from its position to its limit),
+     * appending to {@code out}. The buffer position is moved to the end of the stream.
+     */
+    public static void decode(ByteBuffer in, ChunkBuffer out) throws IOException {
+        int pos = in.position();
+        int limit = in.limit();
+        while (pos < limit) {
+            if (limit - pos < HEADER_LENGTH) throw new IOException("truncated LZ4 block header");
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (in.get(pos + i) != MAGIC[i]) throw new IOException("bad LZ4 block magic");
+            }
+            int token = in.get(pos + 8) & 0xFF;
+            int compressedLength = intLE(in, pos + 9);
+            int decompressedLength = intLE(in, pos + 13);
+            // The XXHash32 checksum at pos + 17 is skipped on purpose: hashing would be a
+            // second pass over every decoded byte, and the block bounds checks plus the
+            // strict NBT parse already reject corrupt output
+            pos += HEADER_LENGTH;
+            int method = token & 0xF0;
+            if (compressedLength < 0 || decompressedLength < 0 || compressedLength > limit - pos
+                || decompressedLength > MAX_BLOCK_SIZE) {
+                // Checked before growing the output, so a corrupt header cannot ask for 2 GiB
+                throw new IOException("corrupt LZ4 block lengths");
+            }
+            if (decompressedLength == 0) {
+                if (method != METHOD_RAW || compressedLength != 0) throw new IOException("corrupt LZ4 end block");
+                // end of this stream; lz4-java allows another stream to follow
+                continue;
+            }
+            out.ensureSpare(decompressedLength);
+            if (method == METHOD_RAW) {
+                if (compressedLength != decompressedLength) throw new IOException("corrupt raw LZ4 block");
+                in.get(pos, out.array, out.length, compressedLength);
+            } else if (method == METHOD_LZ4) {
+                int written = decodeBlock(in, pos, pos + compressedLength, out.array, out.length, decompressedLength);
+                if (written != decompressedLength) throw new IOException("LZ4 block decoded to " + written + " bytes, expected " + decompressedLength);
+            } else {
+                throw new IOException("unknown LZ4 block method: " + method);
+            }
+            out.length += decompressedLength;
+            pos += compressedLength;
+        }
+        in.position(pos);
+    }
+
+    /**
+     * Wrap a block stream so it is decoded one block at a time. Memory use is bounded
+     * by the block size (64 KiB for vanilla), whatever the total chunk size.
+     */
+    public static InputStream stream(InputStream in) {
+        return new BlockInputStream(in);
+    }
+
+    private static final class BlockInputStream extends InputStream {
+        private final DataInputStream in;
+        private final byte[] header = new byte[HEADER_LENGTH];
+        private byte[] compressed = new byte[0];
+        private ByteBuffer compressedView = ByteBuffer.wrap(compressed);
+        private byte[] block = new byte[0];
+        private int blockPos = 0;
+        private int blockLen = 0;
+        private boolean eof = false;
+
+        BlockInputStream(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return block[blockPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, blockLen - blockPos);
+            System.arraycopy(block, blockPos, b, off, n);
+            blockPos += n;
+            return n;
+        }
+
+        /**
+         * Make sure at least one decoded byte is available; false at end of stream.
+         */
+        private boolean fill() throws IOException {
+            while (blockPos == blockLen) {
+                if (eof) return false;
+                int first = in.read();
+                if (first < 0) {
+                    eof = true;
+                    return false;
+                }
+                header[0] = (byte) first;
+                in.readFully(header, 1, HEADER_LENGTH - 1);
+                ByteBuffer h = ByteBuffer.wrap(header);
+                for (int i = 0; i < MAGIC.length; i++) {
+                    if (header[i] != MAGIC[i]) throw new IOException("bad LZ4 block magic");
+                }
+                int method = header[8] & 0xF0;
+                int compressedLength = intLE(h, 9);
+                int decompressedLength = intLE(h, 13);
+                if (compressedLength < 0 || decompressedLength < 0 || decompressedLength > MAX_BLOCK_SIZE || compressedLength > MAX_BLOCK_SIZE) {
+                    throw new IOException("corrupt LZ4 block lengths");
+                }
+                if (decompressedLength == 0) continue; // end marker; another stream may follow
+                if (block.length < decompressedLength) block = new byte[decompressedLength];
+                if (method == METHOD_RAW) {
+                    if (compressedLength != decompressedLength) throw new IOException("corrupt raw LZ4 block");
+                    in.readFully(block, 0, compressedLength);
+                } else if (method == METHOD_LZ4) {
+                    if (compressed.length < compressedLength) {
+                        compressed = new byte[compressedLength];
+                        compressedView = ByteBuffer.wrap(compressed);
+                    }
+                    in.readFully(compressed, 0, compressedLength);
+                    int written = decodeBlock(compressedView, 0, compressedLength, block, 0, decompressedLength);
+                    if (written != decompressedLength) throw new IOException("LZ4 block decoded to " + written + " bytes, expected " + decompressedLength);
+                } else {
+                    throw new IOException("unknown LZ4 block method: " + method);
+                }
+                blockPos = 0;
+                blockLen = decompressedLength;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Decode one raw LZ4 block from in[src, srcEnd) into dst[dstOff, dstOff + dstLen).
+     * Returns the number of bytes written.
+     */
+    static int decodeBlock(ByteBuffer in, int src, int srcEnd, byte[] dst, int dstOff, int dstLen) throws IOException {
+        int d = dstOff;
+        int dstEnd = dstOff + dstLen;
+        while (src < srcEnd) {
+            int token = in.get(src++) & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (src >= srcEnd) throw new IOException("truncated LZ4 literal length");
+                    b = in.get(src++) & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > srcEnd - src || literals > dstEnd - d) throw new IOException("LZ4 literal run out of bounds");
+            in.get(src, dst, d, literals);
+            src += literals;
+            d += literals;
+
+            // The last sequence carries literals only
+            if (src >= srcEnd) break;
+
+            if (srcEnd - src < 2) throw new IOException("truncated LZ4 match offset");
+            int offset = (in.get(src) & 0xFF) | ((in.get(src + 1) & 0xFF) << 8);
+            src += 2;
+            if (offset == 0 || offset > d - dstOff) throw new IOException("invalid LZ4 match offset");
+
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (src >= srcEnd) throw new IOException("truncated LZ4 match length");
+                    b = in.get(src++) & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > dstEnd - d) throw new IOException("LZ4 match out of bounds");
+
+            int from = d - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(dst, from, dst, d, matchLength);
+                d += matchLength;
+            } else {
+                // Overlapping match repeats the last `offset` bytes
+                for (int i = 0; i < matchLength; i++) dst[d++] = dst[from + i];
+            }
+        }
+        return d - dstOff;
+    }
+
+    private static int intLE(ByteBuffer in, int at) {
+        return (in.get(at) & 0xFF) | ((in.get(at + 1) & 0xFF) << 8) | ((in.get(at + 2) & 0xFF) << 16) | ((in.get(at + 3) & 0xFF) << 24);
+    }
+}
@@ -11,7 +11,9 @@ import java.util.Base64;
 /**
  * Main-thread applier queue. In a real mod this would be processed on the
  * server main thread (scheduled via tick events) and would apply the generated
- * chunk data into the ServerWorld or write to region files.
+ * chunk data into the ServerWorld or write to region files. Only jobs with
+ * {@link JobConfig#applyToWorld} use it; read-only extraction commits through
+ * {@link CommitSink}.
  */
 public class MainThreadApplier {
     private static final MainThreadApplier INSTANCE = new MainThreadApplier();
@@ -39,31 +41,61 @@ public class MainThreadApplier {
         while (applied < max) {
             ChurnBuildResult r = queue.poll();
             if (r == null) break;
-            // Skip if checkpoint says chunk is already done (avoid duplicate apply)
-            try {
-                if (RegionCheckpointManager.getInstance() != null && RegionCheckpointManager.getInstance().isChunkDone(r.chunkX, r.chunkZ)) {
-                    // already applied previously
-                    continue;
-                }
-            } catch (Exception e) {
-                // if checkpoint manager fails, fall through and attempt apply
-            }
+            if (apply(r)) applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Apply results until {@code deadlineNanos} (a {@link System#nanoTime} value)
+     * has passed. The clock is checked after every result, so at least one is
+     * applied whenever the queue is not empty.
+     */
+    public int applyUntil(long deadlineNanos) {
+        int applied = 0;
+        ChurnBuildResult r;
+        while ((r = queue.poll()) != null) {
+            if (apply(r)) applied++;
+            if (System.nanoTime() - deadlineNanos >= 0) break;
+        }
+        return applied;
+    }
+
+    /**
+     * Apply one result; false if it had already been applied.
+     */
+    private boolean apply(ChurnBuildResult r) {
+        try {
+            return applyOne(r);
+        } finally {
+            r.releaseBudget();
+        }
+    }
 
-            // In real code: find or create chunk in ServerWorld and set sections/biomes
-            // Detailed per-chunk apply logging is optional to avoid console flooding
-            if (net.fabricmc.churn.ui.ProgressConfig.getInstance().shouldLogChunkDetails()) {
-                System.out.println("[Churn][Applier] Applying chunk " + r.chunkX + "," + r.chunkZ + " bytes=" + (r.data == null ? 0 : r.data.length));
+    private boolean applyOne(ChurnBuildResult r) {
+        // Skip if checkpoint says chunk is already done (avoid duplicate apply)
+        try {
+            if (RegionCheckpointManager.getInstance() != null && RegionCheckpointManager.getInstance().isChunkDone(r.chunkX, r.chunkZ)) {
+                // already applied previously
+                return false;
             }
-            try {
-                if (RegionCheckpointManager.getInstance() != null) {
-                    RegionCheckpointManager.getInstance().markChunkDone(r.chunkX, r.chunkZ);
-                }
-            } catch (Exception e) {
-                System.err.println("[Churn] failed to mark checkpoint for chunk " + r + ": " + e);
+        } catch (Exception e) {
+            // if checkpoint manager fails, fall through and attempt apply
+        }
+
+        // In real code: find or create chunk in ServerWorld and set sections/biomes
+        // Detailed per-chunk apply logging is optional to avoid console flooding
+        if (net.fabricmc.churn.ui.ProgressConfig.getInstance().shouldLogChunkDetails()) {
+            System.out.println("[Churn][Applier] Applying chunk " + r.chunkX + "," + r.chunkZ + " bytes=" + (r.data == null ? 0 : r.data.length));
+        }
+        try {
+            if (RegionCheckpointManager.getInstance() != null) {
+                RegionCheckpointManager.getInstance().markChunkDone(r.chunkX, r.chunkZ);
             }
-            applied++;
+        } catch (Exception e) {
+            System.err.println("[Churn] failed to mark checkpoint for chunk " + r + ": " + e);
         }
-        return applied;
+        return true;
     }
 
     /**
@@ -76,6 +108,7 @@ public class MainThreadApplier {
         while ((r = queue.poll()) != null) {
             String b64 = r.data == null ? "" : Base64.getEncoder().encodeToString(r.data);
             lines.add(r.chunkX + "," + r.chunkZ + "," + b64);
+            r.releaseBudget();
         }
         if (!lines.isEmpty()) {
             try (BufferedWriter w = Files.newBufferedWriter(out)) {
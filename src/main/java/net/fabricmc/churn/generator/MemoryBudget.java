@@ -0,0 +1,183 @@
+package net.fabricmc.churn.generator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Global in-flight byte budget for a job.
+ *
+ * A read worker {@link #reserve reserves} an estimate for each chunk before handing
+ * it to the pipeline, blocking while the budget is used up. The charge travels with
+ * the chunk ({@link ChunkWork#charged}, then {@link ChurnBuildResult#charged}). It is
+ * trimmed to the serialized size once that is known, and released when the chunk is
+ * committed, applied or dropped. A stalled consumer (e.g. the applier while TPS is
+ * low) therefore stops the readers instead of filling the heap.
+ *
+ * Independently of the budget, a collection-usage threshold is set on the heap
+ * pools ({@code heapShedThreshold} of their maximum). When the JVM reports that a
+ * pool is still above it after a GC, new reservations are refused until usage falls
+ * back under the threshold.
+ */
+public class MemoryBudget {
+    /** Expected decompressed size relative to the compressed payload. */
+    public static final int INFLATE_RATIO = 4;
+    private static final long MIN_RESERVATION = 16 * 1024L;
+
+    private final long budget;
+    private final double shedThreshold;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private long used; // guarded by lock
+
+    // Pools we set a threshold on, with the threshold they had before
+    private final Map<MemoryPoolMXBean, Long> pools = new LinkedHashMap<>();
+    private final NotificationListener listener = this::onNotification;
+    private volatile boolean shedding;
+
+    // Reported in the status
+    private volatile long peak;
+    private volatile long waits;
+    private volatile long shedEvents;
+
+    public MemoryBudget(long budgetBytes, double shedThreshold) {
+        this.budget = Math.max(MIN_RESERVATION, budgetBytes);
+        this.shedThreshold = shedThreshold;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) continue;
+            long max = pool.getUsage().getMax();
+            if (max <= 0) continue;
+            long previous = pool.getCollectionUsageThreshold();
+            pool.setCollectionUsageThreshold((long) (max * shedThreshold));
+            pools.put(pool, previous);
+        }
+        if (!pools.isEmpty()) {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+        }
+    }
+
+    /**
+     * Upper bound reserved for one chunk read from a payload of the given size.
+     */
+    public long estimate(long payloadBytes) {
+        return Math.min(budget / 4, Math.max(MIN_RESERVATION, payloadBytes * INFLATE_RATIO));
+    }
+
+    /**
+     * Reserve bytes, blocking while the budget is exhausted or the heap is over its
+     * threshold. A reservation is always granted when nothing else is in flight, so a
+     * job never stalls on a single large chunk.
+     */
+    public void reserve(long bytes) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            boolean waited = false;
+            while (used > 0 && (used + bytes > budget || shedding)) {
+                waited = true;
+                // Timed: the heap threshold is left by polling, not by a notification
+                released.await(100, java.util.concurrent.TimeUnit.MILLISECONDS);
+                if (shedding) checkRecovered();
+            }
+            if (waited) waits++;
+            used += bytes;
+            if (used > peak) peak = used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Change an existing reservation to {@code actual} bytes without blocking; growth
+     * may overdraw the budget, which then holds back the next reservations.
+     */
+    public long resize(long reserved, long actual) {
+        if (actual == reserved) return actual;
+        lock.lock();
+        try {
+            used += actual - reserved;
+            if (used > peak) peak = used;
+            if (actual < reserved) released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return actual;
+    }
+
+    public void release(long bytes) {
+        if (bytes <= 0) return;
+        lock.lock();
+        try {
+            used = Math.max(0, used - bytes);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onNotification(Notification n, Object handback) {
+        if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType())) return;
+        if (!shedding) {
+            shedding = true;
+            shedEvents++;
+            System.err.println("[Churn] heap above " + Math.round(shedThreshold * 100) + "% after GC; holding back new chunks");
+        }
+    }
+
+    private void checkRecovered() {
+        for (MemoryPoolMXBean pool : pools.keySet()) {
+            java.lang.management.MemoryUsage u = pool.getCollectionUsage();
+            if (u != null && u.getUsed() >= pool.getCollectionUsageThreshold()) return;
+        }
+        shedding = false;
+        System.out.println("[Churn] heap back under threshold; resuming");
+    }
+
+    public boolean isShedding() {
+        return shedding;
+    }
+
+    /**
+     * Unregister the heap listener, give each pool back the collection threshold it
+     * had before, and wake any blocked reservations.
+     */
+    public void close() {
+        if (!pools.isEmpty()) {
+            try {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+            } catch (Exception e) {
+                // already removed
+            }
+            for (Map.Entry<MemoryPoolMXBean, Long> e : pools.entrySet()) e.getKey().setCollectionUsageThreshold(e.getValue());
+        }
+        shedding = false;
+        lock.lock();
+        try {
+            used = 0;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String statsJson() {
+        long u;
+        lock.lock();
+        try {
+            u = used;
+        } finally {
+            lock.unlock();
+        }
+        return String.format(Locale.ROOT,
+            "{\"budgetMb\":%.1f,\"inFlightMb\":%.1f,\"peakMb\":%.1f,\"waits\":%d,\"shedding\":%b,\"shedEvents\":%d,\"cacheMb\":%.1f}",
+            budget / 1048576.0, u / 1048576.0, peak / 1048576.0, waits, shedding, shedEvents, ChunkCache.bytes() / 1048576.0);
+    }
+}
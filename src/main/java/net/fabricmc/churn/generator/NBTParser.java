@@ -120,80 +120,113 @@ public class NBTParser {
     }
 
     /**
-     * Extract chunk information from parsed NBT root.
+     * Extract chunk information from a compact tree read by
+     * {@link NbtReader#readCompact}. Must be called before the buffer the tree was
+     * read from is recycled; entity NBT is copied out into plain maps.
      */
-    public static ChunkData extractChunkData(Map<String, Object> nbtRoot, int chunkX, int chunkZ) {
+    public static ChunkData extractChunkData(NbtCompound nbtRoot, int chunkX, int chunkZ) {
         ChunkData cd = new ChunkData();
         cd.chunkX = chunkX;
         cd.chunkZ = chunkZ;
-        cd.timestamp = System.currentTimeMillis();
+        cd.timestamp = System.currentTimeMillis(); // ChunkExtractor.parse stamps the region time
         cd.metadata = new HashMap<>();
-        
+
         try {
-            // Extract from the Data compound tag
-            Map<String, Object> data = (Map<String, Object>) nbtRoot.get("Data");
+            NbtCompound data = nbtRoot.getCompound("Data");
             if (data != null) {
-                // Try to get Y bounds
-                Integer yMin = (Integer) data.get("yMin");
-                Integer yMax = (Integer) data.get("yMax");
-                if (yMin != null) cd.minY = yMin;
-                else cd.minY = -64; // Default for 1.18+
-                if (yMax != null) cd.maxY = yMax;
-                else cd.maxY = 320; // Default for 1.18+
+                cd.minY = data.getInt("yMin", -64); // Default for 1.18+
+                cd.maxY = data.getInt("yMax", 320);
             }
 
-            // Extract sections (store some metadata)
-            List<Object> sections = (List<Object>) nbtRoot.get("Sections");
+            NbtList sections = nbtRoot.getList("sections");
+            NbtList legacySections = nbtRoot.getList("Sections");
             if (sections != null) {
+                // 1.18+: decode block_states for exact per-state counts
                 cd.metadata.put("section_count", String.valueOf(sections.size()));
-                long totalBlocks = 0;
-                for (Object sec : sections) {
-                    if (sec instanceof Map) {
-                        Map<String, Object> section = (Map<String, Object>) sec;
-                        // Count blocks in palette if available
-                        List<Object> palette = (List<Object>) section.get("Palette");
-                        if (palette != null) {
-                            totalBlocks += palette.size();
-                        }
+                if (nbtRoot.contains("yPos")) {
+                    cd.minY = nbtRoot.getInt("yPos", -4) * 16;
+                    cd.maxY = cd.minY + sections.size() * 16;
+                }
+                long nonAir = 0;
+                int failed = 0;
+                int uniform = 0;
+                int uniformDecoded = 0;
+                int[] uniformIds = new int[sections.size()];
+                for (int i = 0; i < sections.size(); i++) {
+                    NbtCompound section = sections.getCompound(i);
+                    if (section == null) continue;
+                    int uniformId = section.getInt(UniformSections.STATE_TAG, -1);
+                    if (uniformId >= 0) {
+                        // Recorded straight from the raw bytes; folded in below
+                        uniformIds[uniform++] = uniformId;
+                        continue;
+                    }
+                    NbtCompound blockStates = section.getCompound("block_states");
+                    if (blockStates == null) continue;
+                    NbtList palette = blockStates.getList("palette");
+                    if (palette != null && palette.size() == 1) uniformDecoded++; // declined by the fast path, e.g. its state table is full
+                    try {
+                        nonAir += BlockStatesDecoder.decodeSection(blockStates, cd);
+                    } catch (IOException e) {
+                        failed++;
+                        cd.metadata.put("section_error", e.getMessage());
                     }
                 }
+                // One palette entry per distinct uniform state, however many sections share it
+                java.util.Arrays.sort(uniformIds, 0, uniform);
+                for (int i = 0; i < uniform; ) {
+                    int id = uniformIds[i];
+                    int run = 0;
+                    while (i < uniform && uniformIds[i] == id) { i++; run++; }
+                    cd.blockPalette.merge(UniformSections.stateKey(id), run * BlockStatesDecoder.SECTION_BLOCKS, Integer::sum);
+                    if (!UniformSections.isAir(id)) nonAir += (long) run * BlockStatesDecoder.SECTION_BLOCKS;
+                }
+                if (sections.size() > 0 && uniform + uniformDecoded == sections.size()) {
+                    // Ocean, void and similar chunks: nothing needed unpacking
+                    BlockStatesDecoder.UNIFORM_CHUNKS.increment();
+                    cd.metadata.put("uniform", "true");
+                }
+                if (failed > 0) cd.metadata.put("sections_failed", String.valueOf(failed));
+                cd.blockCount = (int) Math.min(nonAir, Integer.MAX_VALUE);
+            } else if (legacySections != null) {
+                cd.metadata.put("section_count", String.valueOf(legacySections.size()));
+                long totalBlocks = 0;
+                for (int i = 0; i < legacySections.size(); i++) {
+                    NbtCompound section = legacySections.getCompound(i);
+                    if (section == null) continue;
+                    NbtList palette = section.getList("Palette");
+                    if (palette != null) totalBlocks += palette.size();
+                }
                 cd.blockCount = (int) Math.min(totalBlocks, Integer.MAX_VALUE);
             } else {
                 cd.blockCount = (16 * 16 * (cd.maxY - cd.minY)) / 2;
             }
 
-            // Extract entities
-            List<Object> entities = (List<Object>) nbtRoot.get("Entities");
+            NbtList entities = nbtRoot.getList("Entities");
             if (entities != null) {
-                for (Object ent : entities) {
-                    if (ent instanceof Map) {
-                        Map<String, Object> entity = (Map<String, Object>) ent;
-                        ChunkData.EntityData ed = new ChunkData.EntityData();
-                        
-                        Object type = entity.get("id");
-                        if (type != null) ed.type = type.toString();
-                        
-                        List<Object> pos = (List<Object>) entity.get("Pos");
-                        if (pos != null && pos.size() >= 3) {
-                            ed.x = ((Number) pos.get(0)).doubleValue();
-                            ed.y = ((Number) pos.get(1)).doubleValue();
-                            ed.z = ((Number) pos.get(2)).doubleValue();
-                        }
-                        
-                        ed.nbt = entity; // Store the entire entity NBT as map
-                        cd.entities.add(ed);
+                for (int i = 0; i < entities.size(); i++) {
+                    NbtCompound entity = entities.getCompound(i);
+                    if (entity == null) continue;
+                    ChunkData.EntityData ed = new ChunkData.EntityData();
+                    String type = entity.getString("id");
+                    if (type != null) ed.type = type;
+                    NbtList pos = entity.getList("Pos");
+                    if (pos != null && pos.size() >= 3) {
+                        ed.x = pos.getDouble(0);
+                        ed.y = pos.getDouble(1);
+                        ed.z = pos.getDouble(2);
                     }
+                    ed.nbt = entity.toMap();
+                    cd.entities.add(ed);
                 }
             }
 
-            // Add coordinate metadata
             cd.metadata.put("region_x", String.valueOf(chunkX / 32));
             cd.metadata.put("region_z", String.valueOf(chunkZ / 32));
             cd.metadata.put("local_x", String.valueOf(Math.floorMod(chunkX, 32)));
             cd.metadata.put("local_z", String.valueOf(Math.floorMod(chunkZ, 32)));
 
         } catch (Exception e) {
-            // If extraction fails, log but continue with partial data
             cd.metadata.put("extraction_error", e.getMessage());
         }
 
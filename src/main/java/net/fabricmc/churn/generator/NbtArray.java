@@ -0,0 +1,76 @@
+package net.fabricmc.churn.generator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Byte, int or long array tag viewed in place. When read from a buffer the view
+ * is a slice of the decompressed chunk, so it is only valid until that buffer is
+ * recycled (the end of the parse stage); use {@code to*Array()} to keep a copy.
+ */
+public final class NbtArray {
+    private final byte type;
+    private final ByteBuffer data; // big-endian, position 0
+    private final int length;
+
+    NbtArray(byte type, ByteBuffer data, int length) {
+        this.type = type;
+        this.data = data;
+        this.length = length;
+    }
+
+    /**
+     * Tag type: {@link NbtReader#TAG_BYTE_ARRAY}, {@link NbtReader#TAG_INT_ARRAY} or
+     * {@link NbtReader#TAG_LONG_ARRAY}.
+     */
+    public byte type() {
+        return type;
+    }
+
+    /**
+     * Number of elements.
+     */
+    public int length() {
+        return length;
+    }
+
+    public byte getByte(int i) {
+        return data.get(i);
+    }
+
+    public int getInt(int i) {
+        return data.getInt(i << 2);
+    }
+
+    public long getLong(int i) {
+        return data.getLong(i << 3);
+    }
+
+    public byte[] toByteArray() {
+        byte[] out = new byte[length];
+        data.get(0, out);
+        return out;
+    }
+
+    public int[] toIntArray() {
+        int[] out = new int[length];
+        data.duplicate().asIntBuffer().get(out);
+        return out;
+    }
+
+    public long[] toLongArray() {
+        long[] out = new long[length];
+        data.duplicate().asLongBuffer().get(out);
+        return out;
+    }
+
+    /**
+     * Copy into the array type {@link NBTParser} would have produced.
+     */
+    public Object toArray() {
+        switch (type) {
+            case NbtReader.TAG_BYTE_ARRAY: return toByteArray();
+            case NbtReader.TAG_INT_ARRAY: return toIntArray();
+            default: return toLongArray();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package net.fabricmc.churn.generator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact compound tag. Entries are kept in parallel arrays: interned names, tag
+ * types, primitive values packed as raw bits in a {@code long[]}, and references for
+ * strings, arrays, lists and compounds. Numeric tags are never boxed, and there is
+ * no per-entry HashMap node; a parsed chunk retains a fraction of the heap of the
+ * {@code Map<String, Object>} tree {@link NBTParser} builds.
+ *
+ * Lookups scan the (short) name array, comparing interned names by identity first.
+ */
+public final class NbtCompound {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] names;
+    private byte[] types;
+    private long[] prims;
+    private Object[] refs;
+    private int size;
+
+    public NbtCompound() {
+        this(INITIAL_CAPACITY);
+    }
+
+    NbtCompound(int capacity) {
+        names = new String[capacity];
+        types = new byte[capacity];
+        prims = new long[capacity];
+        refs = new Object[capacity];
+    }
+
+    /**
+     * Store a numeric tag; floats and doubles are passed as their raw bits.
+     */
+    void putPrimitive(String name, byte type, long bits) {
+        int i = slot(name);
+        types[i] = type;
+        prims[i] = bits;
+        refs[i] = null;
+    }
+
+    /**
+     * Store a string, array, list or compound tag.
+     */
+    void putRef(String name, byte type, Object value) {
+        int i = slot(name);
+        types[i] = type;
+        prims[i] = 0;
+        refs[i] = value;
+    }
+
+    private int slot(String name) {
+        int i = indexOf(name);
+        if (i >= 0) return i;
+        if (size == names.length) {
+            int cap = Math.max(INITIAL_CAPACITY, size * 2);
+            names = Arrays.copyOf(names, cap);
+            types = Arrays.copyOf(types, cap);
+            prims = Arrays.copyOf(prims, cap);
+            refs = Arrays.copyOf(refs, cap);
+        }
+        names[size] = name;
+        return size++;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i] == name) return i;
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * Tag type of the entry, or {@link NbtReader#TAG_END} if absent.
+     */
+    public byte getType(String name) {
+        int i = indexOf(name);
+        return i < 0 ? NbtReader.TAG_END : types[i];
+    }
+
+    public Set<String> keySet() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) keys.add(names[i]);
+        return keys;
+    }
+
+    /**
+     * Any numeric tag as an int, or {@code def} if absent or not numeric.
+     */
+    public int getInt(String name, int def) {
+        return (int) getLong(name, def);
+    }
+
+    public long getLong(String name, long def) {
+        int i = indexOf(name);
+        if (i < 0) return def;
+        switch (types[i]) {
+            case NbtReader.TAG_BYTE:
+            case NbtReader.TAG_SHORT:
+            case NbtReader.TAG_INT:
+            case NbtReader.TAG_LONG: return prims[i];
+            case NbtReader.TAG_FLOAT: return (long) Float.intBitsToFloat((int) prims[i]);
+            case NbtReader.TAG_DOUBLE: return (long) Double.longBitsToDouble(prims[i]);
+            default: return def;
+        }
+    }
+
+    public double getDouble(String name, double def) {
+        int i = indexOf(name);
+        if (i < 0) return def;
+        switch (types[i]) {
+            case NbtReader.TAG_FLOAT: return Float.intBitsToFloat((int) prims[i]);
+            case NbtReader.TAG_DOUBLE: return Double.longBitsToDouble(prims[i]);
+            case NbtReader.TAG_BYTE:
+            case NbtReader.TAG_SHORT:
+            case NbtReader.TAG_INT:
+            case NbtReader.TAG_LONG: return prims[i];
+            default: return def;
+        }
+    }
+
+    public String getString(String name) {
+        return (String) ref(name, NbtReader.TAG_STRING);
+    }
+
+    public NbtCompound getCompound(String name) {
+        return (NbtCompound) ref(name, NbtReader.TAG_COMPOUND);
+    }
+
+    public NbtList getList(String name) {
+        return (NbtList) ref(name, NbtReader.TAG_LIST);
+    }
+
+    /**
+     * Byte, int or long array view; see {@link NbtArray} for its lifetime.
+     */
+    public NbtArray getArray(String name) {
+        int i = indexOf(name);
+        return i >= 0 && refs[i] instanceof NbtArray ? (NbtArray) refs[i] : null;
+    }
+
+    private Object ref(String name, byte type) {
+        int i = indexOf(name);
+        return i >= 0 && types[i] == type ? refs[i] : null;
+    }
+
+    /**
+     * Value boxed the way {@link NBTParser} returns it, or null if absent.
+     */
+    public Object get(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : value(i);
+    }
+
+    private Object value(int i) {
+        long bits = prims[i];
+        switch (types[i]) {
+            case NbtReader.TAG_BYTE: return (byte) bits;
+            case NbtReader.TAG_SHORT: return (short) bits;
+            case NbtReader.TAG_INT: return (int) bits;
+            case NbtReader.TAG_LONG: return bits;
+            case NbtReader.TAG_FLOAT: return Float.intBitsToFloat((int) bits);
+            case NbtReader.TAG_DOUBLE: return Double.longBitsToDouble(bits);
+            default: return toPlain(refs[i]);
+        }
+    }
+
+    /**
+     * Deep copy into the map layout {@link NBTParser#parseRoot()} produces. Array
+     * views are copied, so the result outlives the source buffer.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> out = new HashMap<>();
+        for (int i = 0; i < size; i++) out.put(names[i], value(i));
+        return out;
+    }
+
+    static Object toPlain(Object v) {
+        if (v instanceof NbtCompound) return ((NbtCompound) v).toMap();
+        if (v instanceof NbtList) return ((NbtList) v).toList();
+        if (v instanceof NbtArray) return ((NbtArray) v).toArray();
+        return v;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,98 @@
+package net.fabricmc.churn.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List tag backed by a primitive array for numeric element types ({@code byte[]},
+ * {@code short[]}, {@code int[]}, {@code long[]}, {@code float[]}, {@code double[]})
+ * and an {@code Object[]} of nodes otherwise, so e.g. entity positions are stored
+ * as three doubles rather than three boxed objects in an ArrayList.
+ */
+public final class NbtList {
+    private final byte elementType;
+    private final int size;
+    private final Object values;
+
+    NbtList(byte elementType, int size, Object values) {
+        this.elementType = elementType;
+        this.size = size;
+        this.values = values;
+    }
+
+    public byte elementType() {
+        return elementType;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getInt(int i) {
+        return (int) getLong(i);
+    }
+
+    /**
+     * Integral element as a long; floating-point elements are truncated.
+     */
+    public long getLong(int i) {
+        switch (elementType) {
+            case NbtReader.TAG_BYTE: return ((byte[]) values)[i];
+            case NbtReader.TAG_SHORT: return ((short[]) values)[i];
+            case NbtReader.TAG_INT: return ((int[]) values)[i];
+            case NbtReader.TAG_LONG: return ((long[]) values)[i];
+            case NbtReader.TAG_FLOAT: return (long) ((float[]) values)[i];
+            case NbtReader.TAG_DOUBLE: return (long) ((double[]) values)[i];
+            default: throw new IllegalStateException("not a numeric list: type " + elementType);
+        }
+    }
+
+    public double getDouble(int i) {
+        switch (elementType) {
+            case NbtReader.TAG_FLOAT: return ((float[]) values)[i];
+            case NbtReader.TAG_DOUBLE: return ((double[]) values)[i];
+            default: return getLong(i);
+        }
+    }
+
+    public NbtCompound getCompound(int i) {
+        return elementType == NbtReader.TAG_COMPOUND ? (NbtCompound) ((Object[]) values)[i] : null;
+    }
+
+    public NbtList getList(int i) {
+        return elementType == NbtReader.TAG_LIST ? (NbtList) ((Object[]) values)[i] : null;
+    }
+
+    public String getString(int i) {
+        return elementType == NbtReader.TAG_STRING ? (String) ((Object[]) values)[i] : null;
+    }
+
+    public NbtArray getArray(int i) {
+        Object v = values instanceof Object[] ? ((Object[]) values)[i] : null;
+        return v instanceof NbtArray ? (NbtArray) v : null;
+    }
+
+    /**
+     * Element boxed the way {@link NBTParser} returns it.
+     */
+    public Object get(int i) {
+        switch (elementType) {
+            case NbtReader.TAG_BYTE: return ((byte[]) values)[i];
+            case NbtReader.TAG_SHORT: return ((short[]) values)[i];
+            case NbtReader.TAG_INT: return ((int[]) values)[i];
+            case NbtReader.TAG_LONG: return ((long[]) values)[i];
+            case NbtReader.TAG_FLOAT: return ((float[]) values)[i];
+            case NbtReader.TAG_DOUBLE: return ((double[]) values)[i];
+            default: return NbtCompound.toPlain(((Object[]) values)[i]);
+        }
+    }
+
+    /**
+     * Deep copy into the list layout {@link NBTParser} produces.
+     */
+    public List<Object> toList() {
+        List<Object> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) out.add(get(i));
+        return out;
+    }
+}
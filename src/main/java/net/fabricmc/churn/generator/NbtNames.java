@@ -0,0 +1,62 @@
+package net.fabricmc.churn.generator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Global intern table for NBT tag names. Chunk NBT uses a few hundred distinct
+ * names at most, so after warm-up every name resolves to a shared {@link String}
+ * straight from its UTF-8 bytes, without decoding or allocating. Names are also
+ * {@link String#intern()}ed, so lookups with string literals hit on identity.
+ */
+final class NbtNames {
+    private static final int CAPACITY = 4096; // power of two
+    private static final int MAX_PROBE = 16;
+
+    private static final class Entry {
+        final byte[] utf8;
+        final String name;
+        final int hash;
+
+        Entry(byte[] utf8, int hash) {
+            this.utf8 = utf8;
+            this.name = new String(utf8, StandardCharsets.UTF_8).intern();
+            this.hash = hash;
+        }
+    }
+
+    private static final AtomicReferenceArray<Entry> TABLE = new AtomicReferenceArray<>(CAPACITY);
+
+    private NbtNames() {
+    }
+
+    static String intern(ByteBuffer buf, int offset, int length) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < length; i++) h = (h ^ (buf.get(offset + i) & 0xFF)) * 0x01000193;
+        for (int p = 0; p < MAX_PROBE; p++) {
+            int slot = (h + p) & (CAPACITY - 1);
+            Entry e = TABLE.get(slot);
+            if (e == null) {
+                byte[] copy = new byte[length];
+                buf.get(offset, copy, 0, length);
+                Entry added = new Entry(copy, h);
+                if (TABLE.compareAndSet(slot, null, added)) return added.name;
+                e = TABLE.get(slot);
+            }
+            if (e.hash == h && matches(e.utf8, buf, offset, length)) return e.name;
+        }
+        // Table crowded (unusual, e.g. data-driven names); fall back to a plain string
+        byte[] copy = new byte[length];
+        buf.get(offset, copy, 0, length);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    private static boolean matches(byte[] utf8, ByteBuffer buf, int offset, int length) {
+        if (utf8.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (utf8[i] != buf.get(offset + i)) return false;
+        }
+        return true;
+    }
+}
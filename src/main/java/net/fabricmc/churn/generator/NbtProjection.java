@@ -0,0 +1,157 @@
+package net.fabricmc.churn.generator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled set of NBT paths to keep when reading a chunk, e.g.
+ * {@code "sections[].block_states, Status, xPos, zPos"}.
+ *
+ * Paths are dot-separated tag names; a {@code []} suffix descends into the
+ * compound elements of a list. A path that ends at a tag keeps that tag's whole
+ * subtree. Everything not covered by a path is skipped by {@link NbtReader}
+ * without being decoded.
+ */
+public class NbtProjection {
+    /** Paths read by {@link NBTParser#extractChunkData} regardless of job options. */
+    public static final String BASE_PATHS =
+        "DataVersion, Status, xPos, yPos, zPos, LastUpdate, InhabitedTime, Data, Sections[].Palette, sections[].Y, sections[].block_states";
+    public static final String ENTITY_PATHS = "Entities, block_entities";
+    public static final String LIGHTING_PATHS = "isLightOn, sections[].BlockLight, sections[].SkyLight";
+
+    /** Keeps every tag. */
+    public static final NbtProjection ALL = compile("");
+
+    public static final NbtProjection DEFAULT = withChunkHandlers(compile(BASE_PATHS + ", " + ENTITY_PATHS + ", " + LIGHTING_PATHS));
+
+    /**
+     * One level of the projection tree.
+     */
+    public static final class Node {
+        public final String name;
+        final byte[] utf8;
+        Node[] children = new Node[0];
+        Node elements; // projection applied to each compound of a list, if "[]" was used
+        NbtReader.ValueHandler handler; // optional raw-bytes fast path for this tag
+
+        private static final Node KEEP = new Node(null); // handler-free leaf, see below()
+
+        Node(String name) {
+            this.name = name;
+            this.utf8 = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * True if the whole value below this node is kept.
+         */
+        public boolean isLeaf() {
+            return children.length == 0 && elements == null;
+        }
+
+        /**
+         * Child matching the tag name the reader is positioned on, or null to skip it.
+         */
+        public Node match(NbtReader reader) {
+            for (Node c : children) {
+                if (reader.nameEquals(c.utf8)) return c;
+            }
+            return null;
+        }
+
+        public Node elements() {
+            return elements;
+        }
+
+        /**
+         * Node to project this tag's value with: itself, or a plain leaf if this is a
+         * leaf with a handler, so the handler only sees the tag it was attached to.
+         */
+        Node below() {
+            return handler != null && isLeaf() ? KEEP : this;
+        }
+
+        private Node child(String n) {
+            for (Node c : children) {
+                if (c.name.equals(n)) return c;
+            }
+            Node c = new Node(n);
+            Node[] grown = java.util.Arrays.copyOf(children, children.length + 1);
+            grown[children.length] = c;
+            children = grown;
+            return c;
+        }
+    }
+
+    private final Node root = new Node(null);
+    private final List<String> paths = new ArrayList<>();
+
+    private NbtProjection() {
+    }
+
+    /**
+     * Compile a comma-separated list of paths.
+     */
+    public static NbtProjection compile(String spec) {
+        NbtProjection p = new NbtProjection();
+        for (String raw : spec.split(",")) {
+            String path = raw.trim();
+            if (path.isEmpty()) continue;
+            p.paths.add(path);
+            Node n = p.root;
+            for (String seg : path.split("\\.")) {
+                boolean list = seg.endsWith("[]");
+                if (list) seg = seg.substring(0, seg.length() - 2);
+                n = n.child(seg);
+                if (list) {
+                    if (n.elements == null) n.elements = new Node(null);
+                    n = n.elements;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Projection for a job: entity and lighting tags are only read when the job
+     * does not skip them.
+     */
+    public static NbtProjection forJob(JobConfig cfg) {
+        StringBuilder spec = new StringBuilder(BASE_PATHS);
+        if (!cfg.skipEntities) spec.append(", ").append(ENTITY_PATHS);
+        if (!cfg.skipLighting) spec.append(", ").append(LIGHTING_PATHS);
+        return withChunkHandlers(compile(spec.toString()));
+    }
+
+    /**
+     * Attach a handler to an already compiled path (same syntax as {@link #compile}).
+     */
+    public NbtProjection attach(String path, NbtReader.ValueHandler handler) {
+        Node n = root;
+        for (String seg : path.trim().split("\\.")) {
+            boolean list = seg.endsWith("[]");
+            if (list) seg = seg.substring(0, seg.length() - 2);
+            Node next = null;
+            for (Node c : n.children) {
+                if (c.name.equals(seg)) next = c;
+            }
+            if (next == null || (list && next.elements == null)) throw new IllegalArgumentException("path not in projection: " + path);
+            n = list ? next.elements : next;
+        }
+        n.handler = handler;
+        return this;
+    }
+
+    private static NbtProjection withChunkHandlers(NbtProjection p) {
+        return p.attach("sections[].block_states", UniformSections.HANDLER);
+    }
+
+    public Node root() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return "NbtProjection" + paths;
+    }
+}
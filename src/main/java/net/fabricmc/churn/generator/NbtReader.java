@@ -0,0 +1,507 @@
+package net.fabricmc.churn.generator;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull-style NBT reader over a {@link ByteBuffer} or an {@link InputStream}.
+ *
+ * Unlike {@link NBTParser}, which materialises the whole tree, this reader walks
+ * the tags in order and lets the caller decide per tag whether to decode or skip
+ * it. Tag names are compared as raw UTF-8 bytes against an {@link NbtProjection},
+ * and skipped values are stepped over by their encoded length, so tags nobody
+ * asked for (heightmaps, lighting, structure references, ...) cost neither
+ * decoding nor allocation.
+ */
+public class NbtReader {
+    public static final byte TAG_END = 0;
+    public static final byte TAG_BYTE = 1;
+    public static final byte TAG_SHORT = 2;
+    public static final byte TAG_INT = 3;
+    public static final byte TAG_LONG = 4;
+    public static final byte TAG_FLOAT = 5;
+    public static final byte TAG_DOUBLE = 6;
+    public static final byte TAG_BYTE_ARRAY = 7;
+    public static final byte TAG_STRING = 8;
+    public static final byte TAG_LIST = 9;
+    public static final byte TAG_COMPOUND = 10;
+    public static final byte TAG_INT_ARRAY = 11;
+    public static final byte TAG_LONG_ARRAY = 12;
+
+    /**
+     * Hook attached to a projection node that may consume a value straight from the
+     * encoded bytes instead of having it decoded into the tree.
+     */
+    public interface ValueHandler {
+        /**
+         * Called with the reader positioned on the value of tag {@code name}. Return
+         * true after consuming the value (recording whatever is needed in
+         * {@code parent}), or false with the position untouched to decode it normally.
+         */
+        boolean handle(NbtReader reader, byte type, String name, NbtCompound parent) throws IOException;
+    }
+
+    private static final int MAX_DEPTH = 512;
+    private static final int SKIP_BUFFER = 8192;
+    // Stream mode cannot check lengths against what is left, so cap them instead
+    private static final int MAX_STREAM_VALUE = 16 << 20;
+
+    // Exactly one of these is set
+    private final ByteBuffer buf;
+    private final DataInputStream in;
+
+    // Name of the tag the reader is positioned on
+    private int nameOffset;   // buffer mode: absolute position of the name bytes
+    private int nameLength;
+    private byte[] nameBytes; // stream mode: reused copy of the name bytes
+    private ByteBuffer nameView; // stream mode: wrapper over nameBytes for interning
+    private byte[] skipBuffer;
+    private byte[] captured; // stream mode: scratch for capture()
+    private int capturedLength;
+    private int depth;
+
+    public NbtReader(ByteBuffer buf) {
+        this.buf = buf;
+        this.in = null;
+    }
+
+    public NbtReader(InputStream in) {
+        this.buf = null;
+        this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+        this.nameBytes = new byte[64];
+        this.nameView = ByteBuffer.wrap(nameBytes);
+    }
+
+    /**
+     * Advance to the next tag of the current compound and return its type.
+     * For anything but {@link #TAG_END} the tag name is then available through
+     * {@link #nameEquals(byte[])} and {@link #name()}, and its value must be read
+     * or skipped next.
+     */
+    public byte nextTag() throws IOException {
+        byte type = readByte();
+        if (type == TAG_END) {
+            nameLength = 0;
+            return type;
+        }
+        int len = readUnsignedShort();
+        nameLength = len;
+        if (buf != null) {
+            nameOffset = buf.position();
+            buf.position(nameOffset + len);
+        } else {
+            if (nameBytes.length < len) {
+                nameBytes = new byte[Math.max(len, nameBytes.length * 2)];
+                nameView = ByteBuffer.wrap(nameBytes);
+            }
+            in.readFully(nameBytes, 0, len);
+        }
+        return type;
+    }
+
+    /**
+     * Compare the current tag name with UTF-8 bytes, without decoding it.
+     */
+    public boolean nameEquals(byte[] utf8) {
+        if (utf8.length != nameLength) return false;
+        if (buf != null) {
+            for (int i = 0; i < nameLength; i++) {
+                if (buf.get(nameOffset + i) != utf8[i]) return false;
+            }
+            return true;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (nameBytes[i] != utf8[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Current tag name as a string (allocates).
+     */
+    public String name() {
+        if (buf != null) {
+            byte[] b = new byte[nameLength];
+            buf.get(nameOffset, b, 0, nameLength);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+        return new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Current tag name from the shared intern table; allocation-free once the name
+     * has been seen.
+     */
+    public String internedName() {
+        return buf != null ? NbtNames.intern(buf, nameOffset, nameLength) : NbtNames.intern(nameView, 0, nameLength);
+    }
+
+    // --- compact tree ---
+
+    /**
+     * Parse a chunk root into a compact {@link NbtCompound}, keeping only the tags
+     * selected by {@code projection}. Array tags are views into {@code buf}.
+     */
+    public static NbtCompound readCompact(ByteBuffer buf, NbtProjection projection) throws IOException {
+        return new NbtReader(buf).readCompactRoot(projection);
+    }
+
+    public static NbtCompound readCompact(InputStream in, NbtProjection projection) throws IOException {
+        return new NbtReader(in).readCompactRoot(projection);
+    }
+
+    public NbtCompound readCompactRoot(NbtProjection projection) throws IOException {
+        try {
+            byte type = readByte();
+            if (type != TAG_COMPOUND) throw new IOException("Expected compound root, got tag type: " + type);
+            skipBytes(readUnsignedShort()); // root name
+            return readCompactCompound(projection.root());
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new EOFException("truncated NBT data");
+        }
+    }
+
+    NbtCompound readCompactCompound(NbtProjection.Node node) throws IOException {
+        enter();
+        NbtCompound result = new NbtCompound();
+        byte type;
+        while ((type = nextTag()) != TAG_END) {
+            NbtProjection.Node child = node.isLeaf() ? node : node.match(this);
+            if (child == null) {
+                skip(type);
+                continue;
+            }
+            String name = internedName();
+            if (child.handler != null && child.handler.handle(this, type, name, result)) continue;
+            switch (type) {
+                case TAG_BYTE: result.putPrimitive(name, type, readByte()); break;
+                case TAG_SHORT: result.putPrimitive(name, type, readShort()); break;
+                case TAG_INT:
+                case TAG_FLOAT: result.putPrimitive(name, type, readInt()); break;
+                case TAG_LONG:
+                case TAG_DOUBLE: result.putPrimitive(name, type, readLong()); break;
+                default: result.putRef(name, type, readCompactRef(type, child.below()));
+            }
+        }
+        depth--;
+        return result;
+    }
+
+    private Object readCompactRef(byte type, NbtProjection.Node node) throws IOException {
+        switch (type) {
+            case TAG_BYTE_ARRAY:
+            case TAG_INT_ARRAY:
+            case TAG_LONG_ARRAY: return readArrayView(type);
+            case TAG_STRING: return readString();
+            case TAG_LIST: return readCompactList(node);
+            case TAG_COMPOUND: return readCompactCompound(node);
+            default: throw new IOException("Unknown tag type: " + type);
+        }
+    }
+
+    private NbtList readCompactList(NbtProjection.Node node) throws IOException {
+        byte elementType = readByte();
+        int length = readLength();
+        NbtProjection.Node elements = node.isLeaf() ? node : node.elements();
+        if (elements == null) {
+            for (int i = 0; i < length; i++) skip(elementType);
+            return new NbtList(TAG_END, 0, new Object[0]);
+        }
+        int fixed = fixedSize(elementType);
+        if (fixed > 0) checkAvailable((long) fixed * length);
+        switch (elementType) {
+            case TAG_END: return new NbtList(TAG_END, 0, new Object[0]);
+            case TAG_BYTE: {
+                byte[] v = new byte[length];
+                readFully(v, 0, length);
+                return new NbtList(elementType, length, v);
+            }
+            case TAG_SHORT: {
+                short[] v = new short[length];
+                for (int i = 0; i < length; i++) v[i] = readShort();
+                return new NbtList(elementType, length, v);
+            }
+            case TAG_INT: {
+                int[] v = new int[length];
+                for (int i = 0; i < length; i++) v[i] = readInt();
+                return new NbtList(elementType, length, v);
+            }
+            case TAG_LONG: {
+                long[] v = new long[length];
+                for (int i = 0; i < length; i++) v[i] = readLong();
+                return new NbtList(elementType, length, v);
+            }
+            case TAG_FLOAT: {
+                float[] v = new float[length];
+                for (int i = 0; i < length; i++) v[i] = Float.intBitsToFloat(readInt());
+                return new NbtList(elementType, length, v);
+            }
+            case TAG_DOUBLE: {
+                double[] v = new double[length];
+                for (int i = 0; i < length; i++) v[i] = Double.longBitsToDouble(readLong());
+                return new NbtList(elementType, length, v);
+            }
+            default: {
+                enter();
+                Object[] v = new Object[Math.min(length, 1 << 16)];
+                for (int i = 0; i < length; i++) {
+                    if (i == v.length) v = java.util.Arrays.copyOf(v, Math.min(length, v.length * 2));
+                    v[i] = readCompactRef(elementType, elements);
+                }
+                depth--;
+                return new NbtList(elementType, length, v);
+            }
+        }
+    }
+
+    /**
+     * Array tag as a view: a slice of the source buffer. A stream has nothing to
+     * slice, so there the bytes are read once straight into the view's own array.
+     */
+    private NbtArray readArrayView(byte type) throws IOException {
+        int length = readLength();
+        int width = type == TAG_BYTE_ARRAY ? 1 : type == TAG_INT_ARRAY ? 4 : 8;
+        long bytes = (long) length * width;
+        if (bytes > Integer.MAX_VALUE - 8) throw new IOException("NBT array too large: " + length);
+        checkAvailable(bytes);
+        ByteBuffer data;
+        if (buf != null) {
+            data = buf.slice(buf.position(), (int) bytes);
+            buf.position(buf.position() + (int) bytes);
+        } else {
+            byte[] copy = new byte[(int) bytes];
+            in.readFully(copy);
+            data = ByteBuffer.wrap(copy);
+        }
+        return new NbtArray(type, data, length);
+    }
+
+    /**
+     * Step over a value of the given type without decoding it.
+     */
+    public void skip(byte type) throws IOException {
+        switch (type) {
+            case TAG_BYTE: skipBytes(1); break;
+            case TAG_SHORT: skipBytes(2); break;
+            case TAG_INT:
+            case TAG_FLOAT: skipBytes(4); break;
+            case TAG_LONG:
+            case TAG_DOUBLE: skipBytes(8); break;
+            case TAG_BYTE_ARRAY: skipBytes(readLength()); break;
+            case TAG_STRING: skipBytes(readUnsignedShort()); break;
+            case TAG_INT_ARRAY: skipBytes(readLength() * 4L); break;
+            case TAG_LONG_ARRAY: skipBytes(readLength() * 8L); break;
+            case TAG_LIST: {
+                byte elementType = readByte();
+                int length = readLength();
+                int fixed = fixedSize(elementType);
+                if (fixed >= 0) {
+                    skipBytes((long) fixed * length);
+                } else {
+                    enter();
+                    for (int i = 0; i < length; i++) skip(elementType);
+                    depth--;
+                }
+                break;
+            }
+            case TAG_COMPOUND: {
+                enter();
+                byte t;
+                while ((t = readByte()) != TAG_END) {
+                    skipBytes(readUnsignedShort());
+                    skip(t);
+                }
+                depth--;
+                break;
+            }
+            default: throw new IOException("Unknown tag type: " + type);
+        }
+    }
+
+    /**
+     * Stream mode: read the encoded value of the given type into a scratch buffer and
+     * return a big-endian view of it, valid until the next call. Lets a
+     * {@link ValueHandler} scan a value the way it would in buffer mode.
+     */
+    ByteBuffer capture(byte type) throws IOException {
+        if (captured == null) captured = new byte[SKIP_BUFFER];
+        capturedLength = 0;
+        copy(type);
+        return ByteBuffer.wrap(captured, 0, capturedLength);
+    }
+
+    private void copy(byte type) throws IOException {
+        switch (type) {
+            case TAG_BYTE: copyBytes(1); break;
+            case TAG_SHORT: copyBytes(2); break;
+            case TAG_INT:
+            case TAG_FLOAT: copyBytes(4); break;
+            case TAG_LONG:
+            case TAG_DOUBLE: copyBytes(8); break;
+            case TAG_BYTE_ARRAY: copyBytes(copyLength()); break;
+            case TAG_STRING: copyBytes(copyUnsignedShort()); break;
+            case TAG_INT_ARRAY: copyBytes(copyLength() * 4L); break;
+            case TAG_LONG_ARRAY: copyBytes(copyLength() * 8L); break;
+            case TAG_LIST: {
+                copyBytes(1);
+                byte elementType = captured[capturedLength - 1];
+                int length = copyLength();
+                int fixed = fixedSize(elementType);
+                if (fixed >= 0) {
+                    copyBytes((long) fixed * length);
+                } else {
+                    enter();
+                    for (int i = 0; i < length; i++) copy(elementType);
+                    depth--;
+                }
+                break;
+            }
+            case TAG_COMPOUND: {
+                enter();
+                while (true) {
+                    copyBytes(1);
+                    byte t = captured[capturedLength - 1];
+                    if (t == TAG_END) break;
+                    copyBytes(copyUnsignedShort());
+                    copy(t);
+                }
+                depth--;
+                break;
+            }
+            default: throw new IOException("Unknown tag type: " + type);
+        }
+    }
+
+    private int copyUnsignedShort() throws IOException {
+        copyBytes(2);
+        return (captured[capturedLength - 2] & 0xFF) << 8 | captured[capturedLength - 1] & 0xFF;
+    }
+
+    private int copyLength() throws IOException {
+        copyBytes(4);
+        int length = ByteBuffer.wrap(captured, capturedLength - 4, 4).getInt();
+        if (length < 0) throw new IOException("Negative NBT length: " + length);
+        return length;
+    }
+
+    private void copyBytes(long n) throws IOException {
+        long size = capturedLength + n;
+        if (size > MAX_STREAM_VALUE) throw new IOException("NBT value too large to capture: " + size + " bytes");
+        if (size > captured.length) {
+            captured = java.util.Arrays.copyOf(captured, (int) Math.min(MAX_STREAM_VALUE, Math.max(size, captured.length * 2L)));
+        }
+        in.readFully(captured, capturedLength, (int) n);
+        capturedLength = (int) size;
+    }
+
+    /**
+     * Encoded size of a value type with no length prefix, or -1 if variable.
+     */
+    private static int fixedSize(byte type) {
+        switch (type) {
+            case TAG_END: return 0; // empty lists are typed TAG_END
+            case TAG_BYTE: return 1;
+            case TAG_SHORT: return 2;
+            case TAG_INT:
+            case TAG_FLOAT: return 4;
+            case TAG_LONG:
+            case TAG_DOUBLE: return 8;
+            default: return -1;
+        }
+    }
+
+    private void enter() throws IOException {
+        if (++depth > MAX_DEPTH) throw new IOException("NBT nested too deeply");
+    }
+
+    /**
+     * True when reading from a buffer, i.e. {@link #position(int)} can rewind.
+     */
+    boolean isBuffered() {
+        return buf != null;
+    }
+
+    ByteBuffer buffer() {
+        return buf;
+    }
+
+    int position() {
+        return buf.position();
+    }
+
+    void position(int position) {
+        buf.position(position);
+    }
+
+    // --- primitives ---
+
+    public byte readByte() throws IOException {
+        return buf != null ? buf.get() : in.readByte();
+    }
+
+    public short readShort() throws IOException {
+        return buf != null ? buf.getShort() : in.readShort();
+    }
+
+    private int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    public int readInt() throws IOException {
+        return buf != null ? buf.getInt() : in.readInt();
+    }
+
+    public long readLong() throws IOException {
+        return buf != null ? buf.getLong() : in.readLong();
+    }
+
+    private int readLength() throws IOException {
+        int length = readInt();
+        if (length < 0) throw new IOException("Negative NBT length: " + length);
+        return length;
+    }
+
+    public String readString() throws IOException {
+        int length = readUnsignedShort();
+        byte[] data = new byte[length];
+        readFully(data, 0, length);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private void readFully(byte[] dst, int off, int len) throws IOException {
+        if (buf != null) buf.get(dst, off, len);
+        else in.readFully(dst, off, len);
+    }
+
+    /**
+     * Reject lengths that run past the end of the buffer, or in stream mode exceed
+     * {@link #MAX_STREAM_VALUE}, before allocating for them.
+     */
+    private void checkAvailable(long bytes) throws IOException {
+        if (buf != null) {
+            if (bytes > buf.remaining()) throw new EOFException("truncated NBT array");
+        } else if (bytes > MAX_STREAM_VALUE) {
+            throw new IOException("NBT array too large: " + bytes + " bytes");
+        }
+    }
+
+    private void skipBytes(long n) throws IOException {
+        if (buf != null) {
+            if (n > buf.remaining()) throw new EOFException("truncated NBT data");
+            buf.position(buf.position() + (int) n);
+            return;
+        }
+        // InputStream.skip allocates a scratch array per call; reuse our own
+        if (skipBuffer == null) skipBuffer = new byte[SKIP_BUFFER];
+        while (n > 0) {
+            int step = (int) Math.min(n, skipBuffer.length);
+            in.readFully(skipBuffer, 0, step);
+            n -= step;
+        }
+    }
+}
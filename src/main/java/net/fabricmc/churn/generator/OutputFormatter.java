@@ -6,8 +6,14 @@ import java.util.*;
 
 /**
  * Formats extracted chunk data to JSON or CSV output.
+ *
+ * As a {@link ChunkSink} it writes one {@code chunk_<x>_<z>.json} file per chunk
+ * (the {@code files} output format); {@link ShardedOutputWriter} streams the same
+ * records into per-region shards instead.
  */
-public class OutputFormatter {
+public class OutputFormatter implements ChunkSink {
+    public static final String CSV_HEADER = "chunkX,chunkZ,minY,maxY,blockCount,entityCount,timestamp";
+
     private final Path outputDir;
 
     public OutputFormatter(Path outputDir) throws IOException {
@@ -25,7 +31,7 @@ public class OutputFormatter {
             writeCombinedJSON(chunks);
         } else {
             for (ChunkData chunk : chunks) {
-                writeChunkJSON(chunk);
+                writeChunk(chunk);
             }
         }
     }
@@ -43,7 +49,11 @@ public class OutputFormatter {
         System.out.println("[Churn] wrote combined JSON to " + outFile);
     }
 
-    private void writeChunkJSON(ChunkData chunk) throws IOException {
+    /**
+     * Write a single chunk to its own {@code chunk_<x>_<z>.json} file. Safe to call
+     * concurrently for different chunks.
+     */
+    public void writeChunk(ChunkData chunk) throws IOException {
         String filename = "chunk_" + chunk.chunkX + "_" + chunk.chunkZ + ".json";
         Path outFile = outputDir.resolve(filename);
         try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(outFile))) {
@@ -51,6 +61,56 @@ public class OutputFormatter {
         }
     }
 
+    @Override
+    public void write(ChunkData chunk) throws IOException {
+        writeChunk(chunk);
+    }
+
+    /**
+     * One chunk as a single-line JSON object (an NDJSON record, without the newline).
+     */
+    public static String toJsonLine(ChunkData chunk) {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"x\":").append(chunk.chunkX)
+          .append(",\"z\":").append(chunk.chunkZ)
+          .append(",\"minY\":").append(chunk.minY)
+          .append(",\"maxY\":").append(chunk.maxY)
+          .append(",\"blocks\":").append(chunk.blockCount)
+          .append(",\"timestamp\":").append(chunk.timestamp)
+          .append(",\"entities\":").append(chunk.entities.size())
+          .append(",\"metadata\":{");
+        boolean first = true;
+        for (Map.Entry<String, String> e : chunk.metadata.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            appendJsonString(sb, e.getKey());
+            sb.append(':');
+            appendJsonString(sb, e.getValue());
+        }
+        return sb.append("}}").toString();
+    }
+
+    /**
+     * One chunk as a CSV row matching {@link #CSV_HEADER}, without the newline.
+     */
+    public static String toCsvLine(ChunkData chunk) {
+        return chunk.chunkX + "," + chunk.chunkZ + "," + chunk.minY + "," + chunk.maxY +
+                "," + chunk.blockCount + "," + chunk.entities.size() + "," + chunk.timestamp;
+    }
+
+    private static void appendJsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') sb.append('\\').append(c);
+                else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
     private String chunkToJSON(ChunkData chunk) {
         StringBuilder sb = new StringBuilder();
         sb.append("  {\n");
@@ -80,11 +140,10 @@ public class OutputFormatter {
         Path outFile = outputDir.resolve("chunks.csv");
         try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(outFile))) {
             // Header
-            w.println("chunkX,chunkZ,minY,maxY,blockCount,entityCount,timestamp");
+            w.println(CSV_HEADER);
             // Data
             for (ChunkData chunk : chunks) {
-                w.println(chunk.chunkX + "," + chunk.chunkZ + "," + chunk.minY + "," + chunk.maxY +
-                        "," + chunk.blockCount + "," + chunk.entities.size() + "," + chunk.timestamp);
+                w.println(toCsvLine(chunk));
             }
         }
         System.out.println("[Churn] wrote CSV to " + outFile);
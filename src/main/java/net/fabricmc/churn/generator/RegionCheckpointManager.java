@@ -2,16 +2,114 @@ package net.fabricmc.churn.generator;
 
 import java.nio.file.Path;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
+/**
+ * Done-chunk bitmap for all regions, kept in a single memory-mapped file that is
+ * updated in place.
+ *
+ * File layout ({@value #FILE_NAME}): a 64-byte header (magic, version, slot
+ * capacity, slots used) followed by fixed 144-byte slots, one per region touched:
+ * regionX, regionZ, done count, padding, then 16 longs holding one bit per chunk
+ * (bit = localX + localZ * 32, the same numbering as the legacy .chk files).
+ *
+ * Regions map to slots through a primitive open-addressing table, so
+ * {@link #isChunkDone} is a hash probe plus one long read from the mapping with no
+ * allocation or file access. Regions with no slot cost nothing, and fully done
+ * regions are answered from their done count without touching the bitmap. Bits are
+ * set with compare-and-set on the mapped words, so any thread may mark chunks.
+ * The OS writes dirty pages back; {@link #flush()} forces them to disk. While a job
+ * runs, newly set bits are also appended to a {@link CheckpointJournal}, which
+ * provides durability between flushes.
+ *
+ * Legacy per-region {@code rx_rz.chk} files (128-byte bitmaps) found when the
+ * mapped file is first created are imported into it.
+ */
 public class RegionCheckpointManager {
+    public static final String FILE_NAME = "checkpoints.bitmap";
+
+    private static final int MAGIC = 0x43484B42; // "CHKB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 144;
+    private static final int SLOT_BITMAP = 16; // offset of the 16 bitmap longs within a slot
+    private static final int CHUNKS_PER_REGION = 1024;
+    private static final int INITIAL_SLOTS = 256;
+    private static final int LEGACY_BYTES = 128;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
     private static RegionCheckpointManager INSTANCE;
     private final Path dir;
-    private final ConcurrentHashMap<String, byte[]> cache = new ConcurrentHashMap<>();
+    private final FileChannel channel;
+
+    /**
+     * Current mapping and its slot table. Replaced as a whole when either grows;
+     * readers use whichever snapshot they loaded.
+     */
+    private static final class Snapshot {
+        final MappedByteBuffer map;
+        final int capacity;  // slots the mapping holds
+        final long[] keys;   // region key per table entry
+        final int[] slots;   // slot index per table entry, -1 = empty
 
-    private RegionCheckpointManager(Path dir) {
+        Snapshot(MappedByteBuffer map, int capacity, long[] keys, int[] slots) {
+            this.map = map;
+            this.capacity = capacity;
+            this.keys = keys;
+            this.slots = slots;
+        }
+
+        int find(long key) {
+            int mask = slots.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                int s = slots[i];
+                if (s < 0) return -1;
+                if (keys[i] == key) return s;
+            }
+        }
+    }
+
+    private volatile Snapshot snap;
+    private int used; // guarded by this
+    private volatile CheckpointJournal journal;
+
+    private RegionCheckpointManager(Path dir) throws IOException {
         this.dir = dir;
+        Path file = dir.resolve(FILE_NAME);
+        boolean created = !Files.exists(file) || Files.size(file) < HEADER_BYTES;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (created) {
+            MappedByteBuffer map = map(INITIAL_SLOTS);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, INITIAL_SLOTS);
+            map.putInt(12, 0);
+            snap = new Snapshot(map, INITIAL_SLOTS, new long[16], emptySlots(16));
+            importLegacy();
+        } else {
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (head.getInt(0) != MAGIC || head.getInt(4) != VERSION) throw new IOException("not a checkpoint bitmap: " + file);
+            int capacity = head.getInt(8);
+            used = head.getInt(12);
+            if (capacity < used || used < 0) throw new IOException("corrupt checkpoint bitmap header: " + file);
+            MappedByteBuffer map = map(capacity);
+            int tableSize = tableSizeFor(used);
+            long[] keys = new long[tableSize];
+            int[] slots = emptySlots(tableSize);
+            for (int s = 0; s < used; s++) {
+                int base = slotBase(s);
+                insert(keys, slots, key(map.getInt(base), map.getInt(base + 4)), s);
+            }
+            snap = new Snapshot(map, capacity, keys, slots);
+        }
     }
 
     public static synchronized void init(Path dir) throws IOException {
@@ -23,36 +121,98 @@ public class RegionCheckpointManager {
 
     public static RegionCheckpointManager getInstance() { return INSTANCE; }
 
-    public boolean isChunkDone(int chunkX, int chunkZ) {
-        int rx = chunkX >> 5; int rz = chunkZ >> 5;
-        String name = rx + "_" + rz + ".chk";
+    /**
+     * Flush and drop the current instance (e.g. before its files are deleted), so
+     * the next {@link #init} starts from what is on disk.
+     */
+    public static synchronized void close() {
+        if (INSTANCE == null) return;
+        INSTANCE.closeJournal();
         try {
-            Path p = dir.resolve(name);
-            if (!Files.exists(p)) return false;
-            byte[] b = Files.readAllBytes(p);
-            int lx = chunkX & 31; int lz = chunkZ & 31;
-            int bit = lx + lz * 32;
-            int idx = bit / 8;
-            int off = bit % 8;
-            if (idx < 0 || idx >= b.length) return false;
-            return ((b[idx] >> off) & 1) != 0;
+            INSTANCE.flush();
+            INSTANCE.channel.close();
         } catch (IOException e) {
-            return false;
+            System.err.println("[Churn] failed to close checkpoint bitmap: " + e);
         }
+        INSTANCE = null;
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public boolean isChunkDone(int chunkX, int chunkZ) {
+        Snapshot s = snap;
+        int slot = s.find(key(chunkX >> 5, chunkZ >> 5));
+        if (slot < 0) return false;
+        int base = slotBase(slot);
+        if ((int) INTS.getVolatile(s.map, base + 8) >= CHUNKS_PER_REGION) return true;
+        int bit = (chunkX & 31) + (chunkZ & 31) * 32;
+        long word = (long) LONGS.getVolatile(s.map, base + SLOT_BITMAP + (bit >>> 6) * 8);
+        return (word & (1L << (bit & 63))) != 0;
     }
 
     public void markChunkDone(int chunkX, int chunkZ) throws IOException {
         int rx = chunkX >> 5; int rz = chunkZ >> 5;
-        String name = rx + "_" + rz + ".chk";
-        Path p = dir.resolve(name);
-        byte[] b = new byte[128];
-        if (Files.exists(p)) b = Files.readAllBytes(p);
-        int lx = chunkX & 31; int lz = chunkZ & 31;
-        int bit = lx + lz * 32;
-        int idx = bit / 8;
-        int off = bit % 8;
-        b[idx] = (byte)(b[idx] | (1 << off));
-        Files.write(p, b);
+        Snapshot s = snap;
+        int slot = s.find(key(rx, rz));
+        if (slot < 0) {
+            slot = addSlot(rx, rz);
+            s = snap;
+        }
+        int bit = (chunkX & 31) + (chunkZ & 31) * 32;
+        if (setBit(s.map, slotBase(slot), bit)) {
+            INTS.getAndAdd(s.map, slotBase(slot) + 8, 1);
+            CheckpointJournal j = journal;
+            if (j != null) j.append(chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Replay any journal left by a previous run, then start journaling with the
+     * job's durability settings.
+     */
+    public synchronized void openJournal(JobConfig cfg) throws IOException {
+        closeJournal();
+        Path file = dir.resolve(CheckpointJournal.FILE_NAME);
+        long replayed = CheckpointJournal.replay(file, this);
+        if (replayed > 0) System.out.println("[Churn] replayed " + replayed + " checkpoint journal entries");
+        journal = new CheckpointJournal(this, file, CheckpointJournal.Durability.parse(cfg.checkpointDurability),
+            cfg.checkpointSyncIntervalMs, cfg.checkpointSyncEntries, cfg.checkpointCompactEntries);
+    }
+
+    /**
+     * Write out pending journal entries and fold the journal into the bitmap.
+     */
+    public synchronized void closeJournal() {
+        CheckpointJournal j = journal;
+        if (j == null) return;
+        journal = null;
+        j.close();
+    }
+
+    /**
+     * Journal counters as JSON, or null when no journal is open.
+     */
+    public String journalStatsJson() {
+        CheckpointJournal j = journal;
+        return j == null ? null : j.statsJson();
+    }
+
+    /**
+     * Number of chunks marked done in a region.
+     */
+    public int doneInRegion(int regionX, int regionZ) {
+        Snapshot s = snap;
+        int slot = s.find(key(regionX, regionZ));
+        return slot < 0 ? 0 : (int) INTS.getVolatile(s.map, slotBase(slot) + 8);
+    }
+
+    /**
+     * Force dirty pages of the mapping to disk.
+     */
+    public void flush() {
+        snap.map.force();
     }
 
     public int validateAgainstRegionFiles(Path regionDir) {
@@ -65,4 +225,129 @@ public class RegionCheckpointManager {
             return -1;
         }
     }
+
+    private static boolean setBit(MappedByteBuffer map, int base, int bit) {
+        int at = base + SLOT_BITMAP + (bit >>> 6) * 8;
+        long mask = 1L << (bit & 63);
+        while (true) {
+            long old = (long) LONGS.getVolatile(map, at);
+            if ((old & mask) != 0) return false;
+            if (LONGS.compareAndSet(map, at, old, old | mask)) return true;
+        }
+    }
+
+    /**
+     * Allocate a slot for a region (or return the one another thread just added),
+     * growing the mapping and the table as needed.
+     */
+    private synchronized int addSlot(int rx, int rz) throws IOException {
+        Snapshot s = snap;
+        long key = key(rx, rz);
+        int existing = s.find(key);
+        if (existing >= 0) return existing;
+
+        MappedByteBuffer map = s.map;
+        int capacity = s.capacity;
+        if (used == capacity) {
+            capacity *= 2;
+            map = map(capacity);
+            map.putInt(8, capacity);
+        }
+        int slot = used++;
+        int base = slotBase(slot);
+        map.putInt(base, rx);
+        map.putInt(base + 4, rz);
+        map.putInt(base + 8, 0);
+        for (int i = 0; i < 16; i++) map.putLong(base + SLOT_BITMAP + i * 8, 0L);
+        map.putInt(12, used);
+
+        long[] keys = s.keys;
+        int[] slots = s.slots;
+        if (used * 2 > slots.length) {
+            // Rebuild at double size; the old arrays stay untouched for concurrent readers
+            int size = tableSizeFor(used);
+            keys = new long[size];
+            slots = emptySlots(size);
+            for (int i = 0; i < s.slots.length; i++) {
+                if (s.slots[i] >= 0) insert(keys, slots, s.keys[i], s.slots[i]);
+            }
+            insert(keys, slots, key, slot);
+        } else {
+            // Copy so a reader never sees a half-written entry
+            keys = keys.clone();
+            slots = slots.clone();
+            insert(keys, slots, key, slot);
+        }
+        snap = new Snapshot(map, capacity, keys, slots);
+        return slot;
+    }
+
+    /**
+     * Import legacy rx_rz.chk bitmaps into the freshly created mapping.
+     */
+    private void importLegacy() throws IOException {
+        int imported = 0;
+        try (java.nio.file.DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.chk")) {
+            for (Path p : ds) {
+                String n = p.getFileName().toString();
+                String[] parts = n.substring(0, n.length() - 4).split("_");
+                if (parts.length != 2) continue;
+                int rx, rz;
+                try {
+                    rx = Integer.parseInt(parts[0]);
+                    rz = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                byte[] b = Files.readAllBytes(p);
+                for (int bit = 0; bit < Math.min(b.length, LEGACY_BYTES) * 8; bit++) {
+                    if (((b[bit >>> 3] >> (bit & 7)) & 1) != 0) {
+                        markChunkDone((rx << 5) + (bit & 31), (rz << 5) + (bit >>> 5));
+                    }
+                }
+                imported++;
+            }
+        }
+        if (imported > 0) {
+            flush();
+            System.out.println("[Churn] imported " + imported + " legacy .chk checkpoint files into " + FILE_NAME);
+        }
+    }
+
+    private MappedByteBuffer map(int capacity) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * SLOT_BYTES);
+    }
+
+    private static int slotBase(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static long key(int rx, int rz) {
+        return ((long) rx << 32) | (rz & 0xFFFFFFFFL);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int entries) {
+        int size = 16;
+        while (size < entries * 2 + 2) size <<= 1;
+        return size;
+    }
+
+    private static int[] emptySlots(int size) {
+        int[] slots = new int[size];
+        java.util.Arrays.fill(slots, -1);
+        return slots;
+    }
+
+    private static void insert(long[] keys, int[] slots, long key, int slot) {
+        int mask = slots.length - 1;
+        int i = mix(key) & mask;
+        while (slots[i] >= 0) i = (i + 1) & mask;
+        keys[i] = key;
+        slots[i] = slot;
+    }
 }
@@ -0,0 +1,268 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Passthrough output: copies each chunk's compressed payload, exactly as the read
+ * stage found it, into {@code <output>/region/r.<x>.<z>.mca}. Nothing is inflated
+ * or parsed, so a job runs at the speed of the disks.
+ *
+ * A payload is appended sector-aligned at the end of the target file, and only
+ * then are the chunk's location and timestamp entries written, so the header never
+ * points at a partly written chunk. Oversized chunks keep the external flag in
+ * their compression byte and their {@code c.<x>.<z>.mcc} file is copied alongside.
+ *
+ * An existing target (from a paused or earlier job) is appended to: its end is
+ * taken from its location table, and a chunk copied again gets fresh sectors. A
+ * region's file is closed once every chunk the job {@link #expect expected} for it
+ * is through; at most {@value #MAX_OPEN} files are open at a time.
+ */
+public class RegionCopyWriter implements ChunkSink {
+    public static final String DIR_NAME = "region";
+    private static final int SECTOR = RegionFile.SECTOR_BYTES;
+    private static final int HEADER_BYTES = 2 * SECTOR;
+    private static final int MAX_SECTORS = 255;
+    private static final int EXTERNAL_FLAG = 0x80;
+    private static final int MAX_OPEN = 64;
+    private static final ByteBuffer ZEROS = ByteBuffer.allocate(SECTOR).asReadOnlyBuffer();
+
+    private final Path dir;
+    private final RegionCountdown pending = new RegionCountdown();
+    // Access order makes the first entry the least recently used; guarded by itself
+    private final LinkedHashMap<Long, Target> open = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Reported in the status
+    private volatile long chunks;
+    private volatile long bytes;
+    private volatile long external;
+    private volatile long regions;
+    private volatile long errors;
+
+    public RegionCopyWriter(Path outputDir) throws IOException {
+        this.dir = outputDir.resolve(DIR_NAME);
+        Files.createDirectories(dir);
+    }
+
+    @Override
+    public void expect(int regionX, int regionZ, int chunks) {
+        pending.expect(regionX, regionZ, chunks);
+    }
+
+    /**
+     * Parsed chunks carry no payload; passthrough jobs hand over the raw work item.
+     */
+    @Override
+    public void write(ChunkData chunk) throws IOException {
+        throw new IOException("passthrough output takes raw chunks only");
+    }
+
+    @Override
+    public void write(ChunkWork work) throws IOException {
+        long region = RegionCountdown.keyOfChunk(work.chunkX, work.chunkZ);
+        try {
+            if (work.payload != null) {
+                copy(region, work, work.payload.duplicate());
+            } else if (work.external != null) {
+                copyExternal(region, work);
+            }
+        } catch (IOException e) {
+            errors++;
+            throw e;
+        } finally {
+            countDown(region);
+        }
+    }
+
+    @Override
+    public void skip(int chunkX, int chunkZ) {
+        countDown(RegionCountdown.keyOfChunk(chunkX, chunkZ));
+    }
+
+    private void countDown(long region) {
+        if (!pending.countDown(region)) return;
+        Target t;
+        synchronized (open) {
+            t = open.remove(region);
+        }
+        if (t != null) close(t);
+    }
+
+    private void copy(long region, ChunkWork work, ByteBuffer payload) throws IOException {
+        int index = RegionFile.index(work.chunkX, work.chunkZ);
+        int length = payload.remaining() + 1;
+        int sectors = (4 + length + SECTOR - 1) / SECTOR;
+        if (sectors > MAX_SECTORS) throw new IOException("chunk " + work.chunkX + "," + work.chunkZ + " does not fit a region file");
+        ByteBuffer head = ByteBuffer.allocate(5);
+        head.putInt(length).put((byte) work.compression).flip();
+        ByteBuffer pad = ZEROS.duplicate();
+        pad.limit(sectors * SECTOR - 4 - length);
+        while (true) {
+            Target t = target(region);
+            if (t.append(index, new ByteBuffer[]{head, payload, pad}, sectors, work.timestamp)) break;
+            // Evicted between lookup and append: reopen it
+            head.rewind();
+            payload.rewind();
+            pad.rewind();
+        }
+        chunks++;
+        bytes += (long) sectors * SECTOR;
+    }
+
+    /**
+     * Copy the chunk's .mcc file, then store the one-byte stub that points to it.
+     */
+    private void copyExternal(long region, ChunkWork work) throws IOException {
+        Path name = work.external.getFileName();
+        Files.copy(work.external, dir.resolve(name.toString()), StandardCopyOption.REPLACE_EXISTING);
+        ByteBuffer head = ByteBuffer.allocate(5);
+        head.putInt(1).put((byte) (work.compression | EXTERNAL_FLAG)).flip();
+        int index = RegionFile.index(work.chunkX, work.chunkZ);
+        while (true) {
+            ByteBuffer pad = ZEROS.duplicate();
+            pad.limit(SECTOR - 5);
+            if (target(region).append(index, new ByteBuffer[]{head, pad}, 1, work.timestamp)) break;
+            head.rewind();
+        }
+        chunks++;
+        external++;
+        bytes += SECTOR + Files.size(work.external);
+    }
+
+    private Target target(long region) throws IOException {
+        Target evicted = null;
+        Target t;
+        synchronized (open) {
+            t = open.get(region);
+            if (t == null) {
+                if (open.size() >= MAX_OPEN) {
+                    Iterator<Map.Entry<Long, Target>> it = open.entrySet().iterator();
+                    evicted = it.next().getValue();
+                    it.remove();
+                }
+                t = new Target(dir.resolve("r." + (int) (region >> 32) + "." + (int) region + ".mca"));
+                open.put(region, t);
+            }
+        }
+        if (evicted != null) close(evicted);
+        return t;
+    }
+
+    private void close(Target t) {
+        try {
+            t.close();
+            regions++;
+        } catch (IOException e) {
+            if (errors++ < 10) System.err.println("[Churn] failed to close " + t.file.getFileName() + ": " + e);
+        }
+    }
+
+    /**
+     * Close every open region file. Targets are complete after each chunk, so there is
+     * nothing to finalize; a finished job also forces them to disk.
+     */
+    @Override
+    public void close(boolean finished) throws IOException {
+        Target[] all;
+        synchronized (open) {
+            all = open.values().toArray(new Target[0]);
+            open.clear();
+        }
+        IOException first = null;
+        for (Target t : all) {
+            try {
+                if (finished) t.force();
+                t.close();
+                regions++;
+            } catch (IOException e) {
+                if (first == null) first = e;
+            }
+        }
+        if (first != null) throw first;
+    }
+
+    @Override
+    public String statsJson() {
+        int openFiles;
+        synchronized (open) {
+            openFiles = open.size();
+        }
+        return String.format(Locale.ROOT,
+            "{\"format\":\"mca\",\"chunks\":%d,\"external\":%d,\"mb\":%.1f,\"openRegions\":%d,\"closedRegions\":%d,\"errors\":%d}",
+            chunks, external, bytes / 1048576.0, openFiles, regions, errors);
+    }
+
+    /** One target region file, opened lazily on the first append. */
+    private static final class Target {
+        final Path file;
+        private FileChannel ch;
+        private int end; // first free sector
+        private boolean closed;
+
+        Target(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Write a chunk's sectors at the end of the file, then point its header
+         * entries at them. False if this target was closed meanwhile.
+         */
+        synchronized boolean append(int index, ByteBuffer[] data, int sectors, int timestamp) throws IOException {
+            if (closed) return false;
+            if (ch == null) open();
+            ch.position((long) end * SECTOR);
+            long left = (long) sectors * SECTOR;
+            while (left > 0) left -= ch.write(data);
+            ByteBuffer entry = ByteBuffer.allocate(4);
+            entry.putInt(0, (end << 8) | sectors);
+            writeFully(entry, index * 4L);
+            entry.putInt(0, timestamp);
+            entry.rewind();
+            writeFully(entry, SECTOR + index * 4L);
+            end += sectors;
+            return true;
+        }
+
+        private void open() throws IOException {
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (ch.size() < HEADER_BYTES) {
+                ch.truncate(0);
+                writeFully(header, 0);
+                end = 2;
+                return;
+            }
+            while (header.hasRemaining()) {
+                if (ch.read(header, header.position()) < 0) break;
+            }
+            end = 2;
+            for (int i = 0; i < RegionFile.CHUNKS_PER_REGION; i++) {
+                int location = header.getInt(i * 4);
+                if (location != 0) end = Math.max(end, (location >>> 8) + (location & 0xFF));
+            }
+        }
+
+        private void writeFully(ByteBuffer b, long at) throws IOException {
+            while (b.hasRemaining()) at += ch.write(b, at);
+        }
+
+        synchronized void force() throws IOException {
+            if (ch != null) ch.force(false);
+        }
+
+        synchronized void close() throws IOException {
+            closed = true;
+            if (ch != null) ch.close();
+            ch = null;
+        }
+    }
+}
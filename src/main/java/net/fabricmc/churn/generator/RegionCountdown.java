@@ -0,0 +1,35 @@
+package net.fabricmc.churn.generator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-region count of chunks a job planned but has not yet written or skipped,
+ * used by output sinks to act when a region is complete.
+ */
+final class RegionCountdown {
+    private final ConcurrentHashMap<Long, AtomicInteger> pending = new ConcurrentHashMap<>();
+
+    static long key(int regionX, int regionZ) {
+        return ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+    }
+
+    static long keyOfChunk(int chunkX, int chunkZ) {
+        return key(chunkX >> 5, chunkZ >> 5);
+    }
+
+    void expect(int regionX, int regionZ, int chunks) {
+        pending.computeIfAbsent(key(regionX, regionZ), k -> new AtomicInteger()).addAndGet(chunks);
+    }
+
+    /**
+     * Count one chunk of a region; true when it was the last one planned. Regions
+     * that were never planned are never reported complete.
+     */
+    boolean countDown(long region) {
+        AtomicInteger left = pending.get(region);
+        if (left == null || left.decrementAndGet() != 0) return false;
+        pending.remove(region, left);
+        return true;
+    }
+}
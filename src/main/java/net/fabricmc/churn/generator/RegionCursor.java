@@ -0,0 +1,182 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Lazy source of {@link RegionTask}s for a rectangular chunk selection.
+ *
+ * Regions overlapping the selection are numbered row by row (region Z outer, X
+ * inner). {@link #next()} builds the task for the next region only when a worker
+ * asks for one, masking out chunks the checkpoint bitmap already has, so starting
+ * a job costs nothing however large the radius.
+ *
+ * The whole state is the selection bounds plus a region position, which
+ * {@link #save} writes as five integers. On resume, regions from the saved
+ * position on are rebuilt and the bitmap filters out what was already done.
+ *
+ * With {@link ExistingChunks} the cursor only yields chunks whose region file has
+ * them, skipping missing regions outright, and {@link #totalChunks()} is the exact
+ * number of present chunks in the selection.
+ */
+public class RegionCursor {
+    public static final String FILE_NAME = "churn_last_cursor.dat";
+
+    public final int minChunkX;
+    public final int minChunkZ;
+    public final int maxChunkX;
+    public final int maxChunkZ;
+    private final int minRegionX;
+    private final int minRegionZ;
+    private final int regionsX;
+    private final int regionsZ;
+    private final RegionCheckpointManager done; // may be null
+    private final ExistingChunks present; // null: every chunk of the selection
+    private int position; // guarded by this
+
+    public RegionCursor(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int position, RegionCheckpointManager done) {
+        this(minChunkX, minChunkZ, maxChunkX, maxChunkZ, position, done, null);
+    }
+
+    public RegionCursor(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int position,
+                        RegionCheckpointManager done, ExistingChunks present) {
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.maxChunkX = maxChunkX;
+        this.maxChunkZ = maxChunkZ;
+        this.minRegionX = minChunkX >> 5;
+        this.minRegionZ = minChunkZ >> 5;
+        this.regionsX = (maxChunkX >> 5) - minRegionX + 1;
+        this.regionsZ = (maxChunkZ >> 5) - minRegionZ + 1;
+        this.done = done;
+        this.present = present;
+        // Not regionCount(): a constructor must not call an overridable method
+        this.position = Math.max(0, Math.min(position, regionsX * regionsZ));
+    }
+
+    /**
+     * Cursor over the square of chunks within {@code chunkRadius} of the origin.
+     */
+    public static RegionCursor square(int chunkRadius, RegionCheckpointManager done) {
+        return square(chunkRadius, done, null);
+    }
+
+    public static RegionCursor square(int chunkRadius, RegionCheckpointManager done, ExistingChunks present) {
+        return new RegionCursor(-chunkRadius, -chunkRadius, chunkRadius, chunkRadius, 0, done, present);
+    }
+
+    public int regionCount() {
+        return regionsX * regionsZ;
+    }
+
+    public long totalChunks() {
+        if (present != null) return present.count(minChunkX, minChunkZ, maxChunkX, maxChunkZ);
+        return (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+    }
+
+    /**
+     * Position of the region containing the given region coordinate.
+     */
+    public int regionIndex(int regionX, int regionZ) {
+        return (regionZ - minRegionZ) * regionsX + (regionX - minRegionX);
+    }
+
+    public synchronized int position() {
+        return position;
+    }
+
+    /**
+     * Task for the next region with chunks left to do, or null when the selection is
+     * exhausted.
+     */
+    public synchronized RegionTask next() {
+        while (position < regionCount()) {
+            RegionTask t = build(position++);
+            if (t != null) return t;
+        }
+        return null;
+    }
+
+    private RegionTask build(int index) {
+        int rx = minRegionX + index % regionsX;
+        int rz = minRegionZ + index / regionsX;
+        if (present != null && !present.hasRegion(rx, rz)) return null;
+        if (done != null && done.doneInRegion(rx, rz) >= RegionFile.CHUNKS_PER_REGION) return null;
+        RegionTask task = new RegionTask(rx, rz);
+        int x0 = Math.max(minChunkX, rx << 5), x1 = Math.min(maxChunkX, (rx << 5) + 31);
+        int z0 = Math.max(minChunkZ, rz << 5), z1 = Math.min(maxChunkZ, (rz << 5) + 31);
+        for (int z = z0; z <= z1; z++) {
+            for (int x = x0; x <= x1; x++) {
+                if (present != null && !present.has(x, z)) continue;
+                if (done != null && done.isChunkDone(x, z)) continue;
+                task.add(RegionFile.index(x, z));
+            }
+        }
+        return task.remaining() > 0 ? task : null;
+    }
+
+    /**
+     * Chunks of the selection already marked done. Fully covered regions are
+     * answered from their done count; only partial edge regions (and, when limited
+     * to existing chunks, regions with any done chunk) are scanned.
+     */
+    public long countDone() {
+        if (done == null) return 0;
+        long n = 0;
+        for (int index = 0; index < regionCount(); index++) {
+            int rx = minRegionX + index % regionsX;
+            int rz = minRegionZ + index / regionsX;
+            int d = done.doneInRegion(rx, rz);
+            if (d == 0) continue;
+            int x0 = Math.max(minChunkX, rx << 5), x1 = Math.min(maxChunkX, (rx << 5) + 31);
+            int z0 = Math.max(minChunkZ, rz << 5), z1 = Math.min(maxChunkZ, (rz << 5) + 31);
+            if (present == null && x1 - x0 == 31 && z1 - z0 == 31) {
+                n += d;
+                continue;
+            }
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    if (done.isChunkDone(x, z) && (present == null || present.has(x, z))) n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    public boolean sameSelection(RegionCursor o) {
+        return o != null && minChunkX == o.minChunkX && minChunkZ == o.minChunkZ
+            && maxChunkX == o.maxChunkX && maxChunkZ == o.maxChunkZ;
+    }
+
+    /**
+     * Write the selection and a resume position as one line
+     * {@code minChunkX,minChunkZ,maxChunkX,maxChunkZ,position}.
+     */
+    public void save(Path out, int resumeAt) throws IOException {
+        String line = minChunkX + "," + minChunkZ + "," + maxChunkX + "," + maxChunkZ + "," + resumeAt + System.lineSeparator();
+        Files.write(out, line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static RegionCursor load(Path in, RegionCheckpointManager done) throws IOException {
+        return load(in, done, null);
+    }
+
+    public static RegionCursor load(Path in, RegionCheckpointManager done, ExistingChunks present) throws IOException {
+        String[] parts = new String(Files.readAllBytes(in), StandardCharsets.UTF_8).trim().split(",");
+        if (parts.length != 5) throw new IOException("malformed cursor file: " + in);
+        try {
+            return new RegionCursor(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), done, present);
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed cursor file: " + in, e);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RegionCursor{" + "chunks=" + minChunkX + "," + minChunkZ + ".." + maxChunkX + "," + maxChunkZ
+            + ", position=" + position + "/" + regionCount() + '}';
+    }
+}
@@ -0,0 +1,174 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only view of an Anvil region file (.mca).
+ *
+ * The file is mapped once and the 8 KiB header (1024 location entries followed by
+ * 1024 timestamps) is parsed a single time. Chunk payloads are handed out as
+ * read-only slices of the mapping, so no per-chunk syscalls or copies are made.
+ *
+ * Instances are shared: {@link #acquire(Path)} returns the open mapping for a path
+ * (opening it if needed) and each acquire must be paired with {@link #release()}.
+ * The mapping is dropped once the last holder releases it.
+ */
+public class RegionFile {
+    public static final int SECTOR_BYTES = 4096;
+    public static final int CHUNKS_PER_REGION = 1024;
+    private static final int HEADER_BYTES = 2 * SECTOR_BYTES;
+
+    private static final ConcurrentHashMap<Path, RegionFile> OPEN = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final int[] locations = new int[CHUNKS_PER_REGION];
+    private final int[] timestamps = new int[CHUNKS_PER_REGION];
+    private volatile MappedByteBuffer mapping;
+    private int refCount = 0;
+
+    private RegionFile(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("region file too small (" + size + " bytes): " + path.getFileName());
+            }
+            // The mapping stays valid after the channel is closed.
+            mapping = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer header = mapping.duplicate();
+        for (int i = 0; i < CHUNKS_PER_REGION; i++) locations[i] = header.getInt();
+        for (int i = 0; i < CHUNKS_PER_REGION; i++) timestamps[i] = header.getInt();
+    }
+
+    /**
+     * Open (or join) the shared mapping of a region file. Returns null if the file
+     * does not exist or is empty.
+     */
+    public static RegionFile acquire(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        while (true) {
+            RegionFile rf = OPEN.get(key);
+            if (rf == null) {
+                java.io.File f = key.toFile();
+                if (!f.exists() || f.length() == 0) return null;
+                RegionFile created = new RegionFile(key);
+                rf = OPEN.putIfAbsent(key, created);
+                if (rf == null) rf = created;
+            }
+            synchronized (rf) {
+                // A concurrent release may have closed this instance; retry with a fresh one.
+                if (rf.mapping != null) {
+                    rf.refCount++;
+                    return rf;
+                }
+            }
+            OPEN.remove(key, rf);
+        }
+    }
+
+    /**
+     * Take an additional reference on an already acquired region.
+     */
+    public synchronized void retain() {
+        if (refCount <= 0) throw new IllegalStateException("region file not acquired: " + path.getFileName());
+        refCount++;
+    }
+
+    /**
+     * Drop one reference; the mapping is released when the count reaches zero.
+     */
+    public void release() {
+        synchronized (this) {
+            if (refCount <= 0) return;
+            if (--refCount > 0) return;
+            mapping = null;
+        }
+        OPEN.remove(path, this);
+    }
+
+    public Path getPath() { return path; }
+
+    public static int index(int chunkX, int chunkZ) {
+        return (chunkX & 31) + (chunkZ & 31) * 32;
+    }
+
+    /**
+     * Sector offset of a chunk (in 4 KiB sectors from the file start), 0 if absent.
+     */
+    public int sectorOffset(int index) {
+        return locations[index] >>> 8;
+    }
+
+    /**
+     * Number of 4 KiB sectors allocated to a chunk, 0 if absent.
+     */
+    public int sectorCount(int index) {
+        return locations[index] & 0xFF;
+    }
+
+    public boolean hasChunk(int index) {
+        return locations[index] != 0;
+    }
+
+    /**
+     * Last-modified timestamp of a chunk in epoch seconds.
+     */
+    public int timestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Compression byte stored in front of the chunk payload, or -1 if the chunk is absent.
+     */
+    public int compressionType(int index) throws IOException {
+        ByteBuffer m = requireMapping();
+        int start = payloadStart(m, index);
+        return start < 0 ? -1 : m.get(start - 1) & 0xFF;
+    }
+
+    /**
+     * Read-only slice of the (still compressed) chunk payload, excluding the 4-byte
+     * length and the compression byte. Returns null if the chunk is absent.
+     */
+    public ByteBuffer chunkPayload(int index) throws IOException {
+        ByteBuffer m = requireMapping();
+        int start = payloadStart(m, index);
+        if (start < 0) return null;
+        int length = m.getInt(start - 5) - 1;
+        return m.slice(start, length).asReadOnlyBuffer();
+    }
+
+    private int payloadStart(ByteBuffer m, int index) throws IOException {
+        int sector = sectorOffset(index);
+        int sectors = sectorCount(index);
+        if (sector == 0 || sectors == 0) return -1;
+        long offset = (long) sector * SECTOR_BYTES;
+        if (sector < 2 || offset + 5 > m.capacity()) {
+            throw new IOException("chunk " + index + " points outside " + path.getFileName() + " (sector " + sector + ")");
+        }
+        int length = m.getInt((int) offset);
+        if (length <= 0) return -1;
+        if (length > sectors * SECTOR_BYTES - 4 || offset + 4 + length > m.capacity()) {
+            throw new IOException("truncated chunk data (index " + index + ", length " + length + ")");
+        }
+        return (int) offset + 5;
+    }
+
+    private ByteBuffer requireMapping() throws IOException {
+        ByteBuffer m = mapping;
+        if (m == null) throw new IOException("region file already released: " + path.getFileName());
+        return m;
+    }
+
+    @Override
+    public String toString() {
+        return "RegionFile{" + path.getFileName() + ", refs=" + refCount + '}';
+    }
+}
@@ -0,0 +1,179 @@
+package net.fabricmc.churn.generator;
+
+import java.util.Arrays;
+
+/**
+ * Unit of work covering one region file: a region coordinate plus a 1024-bit mask
+ * of the chunks still to extract in it.
+ *
+ * The owning worker drains the mask in sector order (see {@link #orderBySector})
+ * so reads walk the file front to back. An idle worker may take the tail half of a
+ * large task's remaining chunks with {@link #splitHalf()}.
+ */
+public class RegionTask {
+    /** Tasks with fewer remaining chunks than this are not worth splitting. */
+    public static final int MIN_SPLIT = 64;
+
+    public final int regionX;
+    public final int regionZ;
+    private final long[] mask = new long[RegionFile.CHUNKS_PER_REGION / 64];
+    private int remaining = 0;
+    // Claimed by next() but not yet committed, skipped or handed back
+    private int inFlight = 0;
+    // Chunk indices in read order; null until the owner has seen the region header
+    private int[] order;
+    private int cursor = 0;
+
+    public RegionTask(int regionX, int regionZ) {
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+    }
+
+    public synchronized void add(int index) {
+        long bit = 1L << (index & 63);
+        if ((mask[index >>> 6] & bit) == 0) {
+            mask[index >>> 6] |= bit;
+            remaining++;
+        }
+    }
+
+    /**
+     * Return a claimed chunk that was not processed, e.g. because the pipeline
+     * stopped while it was on its way.
+     */
+    public synchronized void requeue(int index) {
+        add(index);
+        if (inFlight > 0) inFlight--;
+    }
+
+    /**
+     * Count one claimed chunk as through the pipeline. Returns true if that settled
+     * the task.
+     */
+    public synchronized boolean complete() {
+        if (inFlight > 0) inFlight--;
+        return settled();
+    }
+
+    /**
+     * True once every chunk of the task has been claimed and has left the pipeline.
+     */
+    public synchronized boolean settled() {
+        return remaining == 0 && inFlight == 0;
+    }
+
+    public synchronized boolean contains(int index) {
+        return (mask[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+
+    public synchronized int remaining() {
+        return remaining;
+    }
+
+    /**
+     * Sort the remaining chunks by their sector offset in the region file. Chunks
+     * without a location entry sort first.
+     */
+    public synchronized void orderBySector(RegionFile region) {
+        long[] keyed = new long[remaining];
+        int n = 0;
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                long sector = region == null ? 0 : region.sectorOffset(index);
+                keyed[n++] = (sector << 10) | index;
+            }
+        }
+        Arrays.sort(keyed, 0, n);
+        int[] o = new int[n];
+        for (int i = 0; i < n; i++) o[i] = (int) (keyed[i] & 1023);
+        order = o;
+        cursor = 0;
+    }
+
+    /**
+     * Claim the next chunk index, or -1 when the task is exhausted. The claim stays
+     * in flight until it is {@link #complete}d or {@link #requeue}d.
+     */
+    public synchronized int next() {
+        if (remaining == 0) return -1;
+        if (order != null) {
+            while (cursor < order.length) {
+                int index = order[cursor++];
+                if (clear(index)) {
+                    inFlight++;
+                    return index;
+                }
+            }
+        }
+        // Not ordered (or order exhausted): fall back to ascending bit order
+        for (int w = 0; w < mask.length; w++) {
+            if (mask[w] != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(mask[w]);
+                clear(index);
+                inFlight++;
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move the last half of the remaining chunks (in read order) into a new task.
+     * Returns null if this task is too small to split.
+     */
+    public synchronized RegionTask splitHalf() {
+        if (remaining < MIN_SPLIT) return null;
+        int[] pending = new int[remaining];
+        int n = 0;
+        if (order != null) {
+            for (int i = cursor; i < order.length; i++) {
+                if (contains(order[i])) pending[n++] = order[i];
+            }
+        }
+        if (n != remaining) {
+            n = 0;
+            for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+                if (contains(index)) pending[n++] = index;
+            }
+        }
+        RegionTask stolen = new RegionTask(regionX, regionZ);
+        for (int i = n / 2; i < n; i++) {
+            clear(pending[i]);
+            stolen.add(pending[i]);
+        }
+        return stolen;
+    }
+
+    private boolean clear(int index) {
+        long bit = 1L << (index & 63);
+        if ((mask[index >>> 6] & bit) == 0) return false;
+        mask[index >>> 6] &= ~bit;
+        remaining--;
+        return true;
+    }
+
+    public int chunkX(int index) {
+        return (regionX << 5) + (index & 31);
+    }
+
+    public int chunkZ(int index) {
+        return (regionZ << 5) + (index >>> 5);
+    }
+
+    /**
+     * Append the remaining chunks as {chunkX, chunkZ} pairs to the given list.
+     */
+    public synchronized void collectRemaining(java.util.List<int[]> out) {
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            if (contains(index)) out.add(new int[]{chunkX(index), chunkZ(index)});
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RegionTask{" + "r=" + regionX + "," + regionZ + ", remaining=" + remaining + ", inFlight=" + inFlight + '}';
+    }
+}
@@ -0,0 +1,416 @@
+package net.fabricmc.churn.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming output: one shard per region under {@code <output>/shards}, as NDJSON,
+ * CSV ({@link #text}) or a binary {@link ChunkPack}.
+ *
+ * Commit threads only encode a chunk's record and put it on a bounded queue; a
+ * single writer thread appends records to the region's shard through a large
+ * buffer (optionally gzip). A shard is written as {@code r.<x>.<z>.ndjson.part}
+ * and renamed to its final name once every chunk the job {@link #expect expected}
+ * for the region has been written or skipped, so a shard without {@code .part} is
+ * always complete.
+ *
+ * Memory does not depend on job size: the queue is bounded (producers block when
+ * it is full) and at most {@value #MAX_OPEN} shards are open at a time; the least
+ * recently used one is closed and reopened in append mode when more records arrive.
+ * Appending to a gzip shard starts a new gzip member, which gzip readers
+ * concatenate transparently. A paused job leaves its {@code .part} shards and the
+ * resumed job appends to them.
+ *
+ * Records are reported {@link Durable durable} once they are flushed to their
+ * shard file: every {@value #FLUSH_RECORDS} records, at least once a second while
+ * records arrive, and when the writer closes.
+ */
+public class ShardedOutputWriter implements ChunkSink {
+    /**
+     * How records are encoded and laid out in a shard file.
+     */
+    public interface Format {
+        /** File name suffix of a finished shard, e.g. {@code .ndjson.gz}. */
+        String suffix();
+
+        /** Encode one record; runs on the commit threads. */
+        byte[] encode(ChunkData chunk);
+
+        /** Open a shard file for appending, creating it if needed; writer thread only. */
+        Shard open(Path file) throws IOException;
+    }
+
+    public interface Shard {
+        void append(byte[] record) throws IOException;
+
+        /** Hand everything appended so far to the file, so a reader sees whole records. */
+        void flush() throws IOException;
+
+        /**
+         * Flush and close. {@code seal} is true when the shard is being finalized, so
+         * formats with a trailer write it now.
+         */
+        void close(boolean seal) throws IOException;
+    }
+
+    public static final String DIR_NAME = "shards";
+    private static final String PART = ".part";
+    private static final int BUFFER_BYTES = 128 * 1024;
+    private static final int MAX_OPEN = 64;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int FLUSH_RECORDS = 8192;
+    private static final long FLUSH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int RECORD = 0;
+    private static final int FINALIZE = 1;
+    private static final int CLOSE = 2;
+
+    private static final class Op {
+        final int kind;
+        final long region;
+        final byte[] line;
+        final int chunkX;
+        final int chunkZ;
+
+        Op(int kind, long region, byte[] line) {
+            this(kind, region, line, 0, 0);
+        }
+
+        Op(int kind, long region, byte[] line, int chunkX, int chunkZ) {
+            this.kind = kind;
+            this.region = region;
+            this.line = line;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+    }
+
+    private final Path dir;
+    private final Format format;
+    private final String suffix;
+    private final BlockingQueue<Op> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final RegionCountdown pending = new RegionCountdown();
+    private final Thread writer;
+    private volatile Durable durable;
+
+    // Producers hold this while enqueueing, so nothing is queued after CLOSE
+    private final Object submitLock = new Object();
+    private boolean closed;
+
+    // Writer thread only; access order makes the first entry the least recently used
+    private final LinkedHashMap<Long, Shard> open = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean finished;
+    // Appended but not yet flushed, as chunk positions
+    private final int[] unflushedX = new int[FLUSH_RECORDS];
+    private final int[] unflushedZ = new int[FLUSH_RECORDS];
+    private int unflushed;
+    private long lastFlush = System.nanoTime();
+
+    // Reported in the status
+    private volatile long records;
+    private volatile long bytes;
+    private volatile long finalized;
+    private volatile long evictions;
+    private volatile long errors;
+    private volatile int openShards;
+
+    public ShardedOutputWriter(Path outputDir, Format format) throws IOException {
+        this.dir = outputDir.resolve(DIR_NAME);
+        Files.createDirectories(dir);
+        this.format = format;
+        this.suffix = format.suffix();
+        this.writer = new Thread(this::run, "Churn-output-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private Path finalPath(long region) {
+        return dir.resolve("r." + (int) (region >> 32) + "." + (int) region + suffix);
+    }
+
+    private Path partPath(long region) {
+        return dir.resolve("r." + (int) (region >> 32) + "." + (int) region + suffix + PART);
+    }
+
+    @Override
+    public void expect(int regionX, int regionZ, int chunks) {
+        pending.expect(regionX, regionZ, chunks);
+    }
+
+    /**
+     * NDJSON ({@code csv == false}) or CSV shards, optionally gzip-compressed.
+     */
+    public static Format text(boolean csv, boolean gzip) {
+        return new TextFormat(csv, gzip);
+    }
+
+    @Override
+    public boolean setDurableListener(Durable listener) {
+        this.durable = listener;
+        return true;
+    }
+
+    @Override
+    public void write(ChunkData chunk) throws IOException {
+        long region = RegionCountdown.keyOfChunk(chunk.chunkX, chunk.chunkZ);
+        submit(new Op(RECORD, region, format.encode(chunk), chunk.chunkX, chunk.chunkZ));
+        countDown(region);
+    }
+
+    @Override
+    public void skip(int chunkX, int chunkZ) {
+        countDown(RegionCountdown.keyOfChunk(chunkX, chunkZ));
+    }
+
+    private void countDown(long region) {
+        if (!pending.countDown(region)) return;
+        try {
+            submit(new Op(FINALIZE, region, null));
+        } catch (IOException e) {
+            // Closed meanwhile; a finished job finalizes every shard on close
+        }
+    }
+
+    private void submit(Op op) throws IOException {
+        synchronized (submitLock) {
+            if (closed) throw new IOException("output writer is closed");
+            try {
+                queue.put(op);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while queueing output");
+            }
+        }
+    }
+
+    /**
+     * Write out everything queued and stop the writer thread. A finished job also
+     * finalizes all remaining shards, including {@code .part} files of earlier runs.
+     */
+    @Override
+    public void close(boolean finished) throws IOException {
+        synchronized (submitLock) {
+            if (closed) return;
+            closed = true;
+            this.finished = finished;
+            try {
+                queue.put(new Op(CLOSE, 0L, null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writer.interrupt();
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Op op = queue.poll(250, TimeUnit.MILLISECONDS);
+                try {
+                    if (op == null) {
+                        if (unflushed > 0) flushOpen();
+                        continue;
+                    }
+                    if (op.kind == RECORD) {
+                        shard(op.region).append(op.line);
+                        records++;
+                        bytes += op.line.length;
+                        unflushedX[unflushed] = op.chunkX;
+                        unflushedZ[unflushed] = op.chunkZ;
+                        unflushed++;
+                        if (unflushed == FLUSH_RECORDS || System.nanoTime() - lastFlush >= FLUSH_NANOS) flushOpen();
+                    } else if (op.kind == FINALIZE) {
+                        finalizeShard(op.region);
+                    } else {
+                        try {
+                            closeAll(finished);
+                            reportFlushed();
+                        } catch (IOException e) {
+                            if (errors++ < 10) System.err.println("[Churn] failed to close output shards: " + e);
+                        }
+                        return;
+                    }
+                } catch (IOException e) {
+                    if (errors++ < 10) System.err.println("[Churn] output writer error: " + e);
+                }
+            }
+        } catch (InterruptedException e) {
+            try {
+                closeAll(false);
+                reportFlushed();
+            } catch (IOException ex) {
+                System.err.println("[Churn] failed to close output shards: " + ex);
+            }
+        }
+    }
+
+    /**
+     * Flush every open shard, then report the records appended since the last flush.
+     * Closed and finalized shards were flushed when they were closed. If a flush
+     * fails the records are not reported, so a resumed job writes them again.
+     */
+    private void flushOpen() throws IOException {
+        lastFlush = System.nanoTime();
+        try {
+            for (Shard shard : open.values()) shard.flush();
+        } catch (IOException e) {
+            unflushed = 0;
+            throw e;
+        }
+        reportFlushed();
+    }
+
+    private void reportFlushed() {
+        Durable l = durable;
+        if (l != null) {
+            for (int i = 0; i < unflushed; i++) l.durable(unflushedX[i], unflushedZ[i]);
+        }
+        unflushed = 0;
+    }
+
+    private Shard shard(long region) throws IOException {
+        Shard shard = open.get(region);
+        if (shard != null) return shard;
+        if (open.size() >= MAX_OPEN) {
+            Iterator<Map.Entry<Long, Shard>> it = open.entrySet().iterator();
+            Shard eldest = it.next().getValue();
+            it.remove();
+            evictions++;
+            eldest.close(false);
+        }
+        Path part = partPath(region);
+        Path fin = finalPath(region);
+        // More chunks for a region finalized earlier (e.g. re-queued ones): reopen it
+        if (!Files.exists(part) && Files.exists(fin)) move(fin, part);
+        shard = format.open(part);
+        open.put(region, shard);
+        openShards = open.size();
+        return shard;
+    }
+
+    private void finalizeShard(long region) throws IOException {
+        Path part = partPath(region);
+        Shard shard = open.remove(region);
+        openShards = open.size();
+        if (shard == null) {
+            if (!Files.exists(part)) return;
+            shard = format.open(part);
+        }
+        shard.close(true);
+        move(part, finalPath(region));
+        finalized++;
+    }
+
+    private void closeAll(boolean finish) throws IOException {
+        IOException first = null;
+        for (Map.Entry<Long, Shard> e : open.entrySet()) {
+            try {
+                e.getValue().close(false);
+            } catch (IOException ex) {
+                if (first == null) first = ex;
+            }
+        }
+        open.clear();
+        openShards = 0;
+        if (finish) {
+            try (DirectoryStream<Path> parts = Files.newDirectoryStream(dir, "*" + suffix + PART)) {
+                for (Path part : parts) {
+                    String name = part.getFileName().toString();
+                    format.open(part).close(true);
+                    move(part, part.resolveSibling(name.substring(0, name.length() - PART.length())));
+                    finalized++;
+                }
+            }
+        }
+        if (first != null) throw first;
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static final class TextFormat implements Format {
+        private final boolean csv;
+        private final boolean gzip;
+
+        TextFormat(boolean csv, boolean gzip) {
+            this.csv = csv;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public String suffix() {
+            return (csv ? ".csv" : ".ndjson") + (gzip ? ".gz" : "");
+        }
+
+        @Override
+        public byte[] encode(ChunkData chunk) {
+            String line = csv ? OutputFormatter.toCsvLine(chunk) : OutputFormatter.toJsonLine(chunk);
+            return (line + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Shard open(Path file) {
+            return new Shard() {
+                private OutputStream out; // opened on the first record
+
+                @Override
+                public void append(byte[] record) throws IOException {
+                    if (out == null) {
+                        boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+                        OutputStream os = new FileOutputStream(file.toFile(), true);
+                        // Sync flush ends every flush on a byte boundary a reader can decode up to
+                        if (gzip) os = new GZIPOutputStream(os, 64 * 1024, true);
+                        out = new BufferedOutputStream(os, BUFFER_BYTES);
+                        if (fresh && csv) out.write((OutputFormatter.CSV_HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                    out.write(record);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (out != null) out.flush();
+                }
+
+                @Override
+                public void close(boolean seal) throws IOException {
+                    if (out != null) out.close();
+                    out = null;
+                }
+            };
+        }
+    }
+
+    @Override
+    public String statsJson() {
+        return String.format(Locale.ROOT,
+            "{\"format\":\"%s\",\"records\":%d,\"mb\":%.1f,\"queued\":%d,\"openShards\":%d,\"finalized\":%d,\"evictions\":%d,\"errors\":%d}",
+            suffix.substring(1), records, bytes / 1048576.0, queue.size(), openShards, finalized, evictions, errors);
+    }
+}
@@ -0,0 +1,364 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQLite output: one database file, {@code <output>/churn.db}, with the tables
+ *
+ * <pre>
+ * chunks   (chunkX, chunkZ, minY, maxY, blockCount, entityCount, timestamp)  key (chunkX, chunkZ)
+ * entities (chunkX, chunkZ, seq, type, x, y, z)                          key (chunkX, chunkZ, seq)
+ * palette  (chunkX, chunkZ, blockState, count)                           key (chunkX, chunkZ, blockState)
+ * </pre>
+ *
+ * The tables are clustered on their keys ({@code WITHOUT ROWID}). A chunk written
+ * again, e.g. by a resumed job, replaces its earlier rows: its palette and entity
+ * rows are deleted before the new ones go in.
+ *
+ * Commit threads only put chunks on a bounded queue; a single writer thread owns
+ * the connection and inserts them with batched prepared statements, committing
+ * once {@value #COMMIT_ROWS} rows are pending or every few seconds. The database
+ * runs in WAL mode with {@code synchronous=FULL}: each commit fsyncs the log before
+ * it returns, which the large batches keep to about one fsync every few seconds.
+ * ({@code NORMAL} would only sync the log at checkpoints, so a power loss could
+ * roll back commits already reported durable.) A slow disk only fills the queue;
+ * producers block when it is full, which keeps memory bounded. Chunks are reported
+ * {@link Durable durable} once the transaction holding their rows has committed.
+ *
+ * A failed insert or commit rolls the open transaction back, so the database only
+ * ever holds whole chunks; the rolled-back chunks were never reported durable and
+ * a resumed job extracts them again.
+ *
+ * The index on {@code palette.blockState} is created when the job finishes, after
+ * the bulk load, and dropped when a job reopens the file. A paused job leaves the
+ * committed rows in place and the resumed job adds to them.
+ */
+public class SqliteOutputWriter implements ChunkSink {
+    public static final String FILE_NAME = "churn.db";
+    private static final String DRIVER = "org.sqlite.JDBC";
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int BATCH_CHUNKS = 512;
+    private static final long COMMIT_ROWS = 200_000;
+    private static final long COMMIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final String[] TABLES = {
+        "CREATE TABLE IF NOT EXISTS chunks (chunkX INTEGER NOT NULL, chunkZ INTEGER NOT NULL, minY INTEGER, maxY INTEGER,"
+            + " blockCount INTEGER, entityCount INTEGER, timestamp INTEGER, PRIMARY KEY (chunkX, chunkZ)) WITHOUT ROWID",
+        "CREATE TABLE IF NOT EXISTS entities (chunkX INTEGER NOT NULL, chunkZ INTEGER NOT NULL, seq INTEGER NOT NULL,"
+            + " type TEXT, x REAL, y REAL, z REAL, PRIMARY KEY (chunkX, chunkZ, seq)) WITHOUT ROWID",
+        "CREATE TABLE IF NOT EXISTS palette (chunkX INTEGER NOT NULL, chunkZ INTEGER NOT NULL, blockState TEXT NOT NULL,"
+            + " count INTEGER, PRIMARY KEY (chunkX, chunkZ, blockState)) WITHOUT ROWID"
+    };
+    private static final String[][] INDEXES = {
+        {"palette_state", "palette (blockState)"}
+    };
+
+    // Queued after the last chunk; nothing is queued after it
+    private static final ChunkData CLOSE = new ChunkData();
+
+    private final Path file;
+    private final Connection db;
+    private final PreparedStatement deleteEntities;
+    private final PreparedStatement deletePalette;
+    private final PreparedStatement insertChunk;
+    private final PreparedStatement insertEntity;
+    private final PreparedStatement insertPalette;
+    private final BlockingQueue<ChunkData> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+
+    // Producers hold this while enqueueing, so nothing is queued after CLOSE
+    private final Object submitLock = new Object();
+    private boolean closed;
+    private boolean finished;
+    private volatile Durable durable;
+
+    // Writer thread only
+    private long uncommitted;
+    // Positions of chunks inserted since the last commit, as (x << 32) | z
+    private long[] inserted = new long[BATCH_CHUNKS];
+    private int insertedCount;
+    private long lastCommit = System.nanoTime();
+
+    // Reported in the status
+    private volatile long chunks;
+    private volatile long rows;
+    private volatile long transactions;
+    private volatile long errors;
+    private volatile long rolledBack;
+    private volatile boolean indexed;
+
+    public SqliteOutputWriter(Path outputDir) throws IOException {
+        Files.createDirectories(outputDir);
+        this.file = outputDir.resolve(FILE_NAME);
+        this.db = connect(file);
+        try {
+            try (Statement st = db.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA synchronous=FULL"); // commits are durable when durable() is called
+                st.execute("PRAGMA temp_store=MEMORY");
+                st.execute("PRAGMA cache_size=-65536"); // 64 MiB
+                for (String table : TABLES) st.execute(table);
+                for (String[] index : INDEXES) st.execute("DROP INDEX IF EXISTS " + index[0]);
+            }
+            db.setAutoCommit(false);
+            deleteEntities = db.prepareStatement("DELETE FROM entities WHERE chunkX = ? AND chunkZ = ?");
+            deletePalette = db.prepareStatement("DELETE FROM palette WHERE chunkX = ? AND chunkZ = ?");
+            insertChunk = db.prepareStatement("INSERT OR REPLACE INTO chunks VALUES (?, ?, ?, ?, ?, ?, ?)");
+            insertEntity = db.prepareStatement("INSERT OR REPLACE INTO entities VALUES (?, ?, ?, ?, ?, ?, ?)");
+            insertPalette = db.prepareStatement("INSERT OR REPLACE INTO palette VALUES (?, ?, ?, ?)");
+        } catch (SQLException e) {
+            try {
+                db.close();
+            } catch (SQLException ignored) {
+            }
+            throw new IOException("cannot initialize " + file + ": " + e.getMessage(), e);
+        }
+        this.writer = new Thread(this::run, "Churn-sqlite-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Instantiate the bundled driver directly: {@link java.sql.DriverManager} does not
+     * see drivers loaded by the mod class loader.
+     */
+    private static Connection connect(Path file) throws IOException {
+        try {
+            Driver driver = (Driver) Class.forName(DRIVER).getDeclaredConstructor().newInstance();
+            Connection c = driver.connect("jdbc:sqlite:" + file.toAbsolutePath(), new Properties());
+            if (c == null) throw new IOException("SQLite driver rejected " + file);
+            return c;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IOException("SQLite driver " + DRIVER + " is not available", e);
+        } catch (SQLException e) {
+            throw new IOException("cannot open " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean setDurableListener(Durable listener) {
+        this.durable = listener;
+        return true;
+    }
+
+    @Override
+    public void write(ChunkData chunk) throws IOException {
+        synchronized (submitLock) {
+            if (closed) throw new IOException("sqlite writer is closed");
+            put(chunk);
+        }
+    }
+
+    private void put(ChunkData c) throws InterruptedIOException {
+        try {
+            queue.put(c);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while queueing output");
+        }
+    }
+
+    /**
+     * Insert everything queued and close the database; a finished job builds the
+     * indexes first.
+     */
+    @Override
+    public void close(boolean finished) throws IOException {
+        synchronized (submitLock) {
+            if (closed) return;
+            closed = true;
+            this.finished = finished;
+            try {
+                put(CLOSE);
+            } catch (InterruptedIOException e) {
+                writer.interrupt();
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<ChunkData> batch = new ArrayList<>(BATCH_CHUNKS);
+        boolean stop = false;
+        try {
+            while (!stop) {
+                ChunkData first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_CHUNKS - 1);
+                    if (batch.get(batch.size() - 1) == CLOSE) {
+                        batch.remove(batch.size() - 1);
+                        stop = true;
+                    }
+                    insert(batch);
+                    batch.clear();
+                }
+                if (uncommitted > 0 && (first == null || uncommitted >= COMMIT_ROWS || System.nanoTime() - lastCommit >= COMMIT_NANOS)) {
+                    commit();
+                }
+            }
+        } catch (InterruptedException e) {
+            finished = false;
+        }
+        closeDatabase();
+    }
+
+    private void insert(List<ChunkData> batch) {
+        if (batch.isEmpty()) return;
+        long added = 0;
+        try {
+            for (ChunkData c : batch) {
+                deleteEntities.setInt(1, c.chunkX);
+                deleteEntities.setInt(2, c.chunkZ);
+                deleteEntities.addBatch();
+                deletePalette.setInt(1, c.chunkX);
+                deletePalette.setInt(2, c.chunkZ);
+                deletePalette.addBatch();
+                insertChunk.setInt(1, c.chunkX);
+                insertChunk.setInt(2, c.chunkZ);
+                insertChunk.setInt(3, c.minY);
+                insertChunk.setInt(4, c.maxY);
+                insertChunk.setInt(5, c.blockCount);
+                insertChunk.setInt(6, c.entities.size());
+                insertChunk.setLong(7, c.timestamp);
+                insertChunk.addBatch();
+                int seq = 0;
+                for (ChunkData.EntityData e : c.entities) {
+                    insertEntity.setInt(1, c.chunkX);
+                    insertEntity.setInt(2, c.chunkZ);
+                    insertEntity.setInt(3, seq++);
+                    insertEntity.setString(4, e.type);
+                    insertEntity.setDouble(5, e.x);
+                    insertEntity.setDouble(6, e.y);
+                    insertEntity.setDouble(7, e.z);
+                    insertEntity.addBatch();
+                }
+                for (Map.Entry<String, Integer> p : c.blockPalette.entrySet()) {
+                    insertPalette.setInt(1, c.chunkX);
+                    insertPalette.setInt(2, c.chunkZ);
+                    insertPalette.setString(3, p.getKey());
+                    insertPalette.setInt(4, p.getValue());
+                    insertPalette.addBatch();
+                }
+                added += 1 + c.entities.size() + c.blockPalette.size();
+            }
+            // A chunk's old rows go before its new ones; both within this transaction
+            deleteEntities.executeBatch();
+            deletePalette.executeBatch();
+            insertChunk.executeBatch();
+            insertEntity.executeBatch();
+            insertPalette.executeBatch();
+            chunks += batch.size();
+            rows += added;
+            uncommitted += added;
+            for (ChunkData c : batch) {
+                if (insertedCount == inserted.length) inserted = java.util.Arrays.copyOf(inserted, insertedCount * 2);
+                inserted[insertedCount++] = ((long) c.chunkX << 32) | (c.chunkZ & 0xFFFFFFFFL);
+            }
+        } catch (SQLException e) {
+            error("insert", e);
+            try {
+                deleteEntities.clearBatch();
+                deletePalette.clearBatch();
+                insertChunk.clearBatch();
+                insertEntity.clearBatch();
+                insertPalette.clearBatch();
+            } catch (SQLException ignored) {
+            }
+            rolledBack += batch.size();
+            rollback();
+        }
+    }
+
+    /**
+     * Undo the open transaction, including earlier batches of it, and forget its
+     * chunks: they are not reported durable, so a resumed job writes them again.
+     */
+    private void rollback() {
+        try {
+            db.rollback();
+        } catch (SQLException e) {
+            error("rollback", e);
+        }
+        chunks -= insertedCount;
+        rows -= uncommitted;
+        rolledBack += insertedCount;
+        insertedCount = 0;
+        uncommitted = 0;
+    }
+
+    private void commit() {
+        try {
+            db.commit();
+            transactions++;
+            Durable l = durable;
+            if (l != null) {
+                for (int i = 0; i < insertedCount; i++) l.durable((int) (inserted[i] >> 32), (int) inserted[i]);
+            }
+            insertedCount = 0;
+            uncommitted = 0;
+        } catch (SQLException e) {
+            error("commit", e);
+            rollback();
+        }
+        lastCommit = System.nanoTime();
+    }
+
+    private void closeDatabase() {
+        try {
+            if (uncommitted > 0) commit();
+            if (finished) {
+                System.out.println("[Churn] Indexing " + file.getFileName() + " (" + rows + " rows)");
+                try (Statement st = db.createStatement()) {
+                    for (String[] index : INDEXES) st.execute("CREATE INDEX IF NOT EXISTS " + index[0] + " ON " + index[1]);
+                    db.commit();
+                    indexed = true;
+                    st.execute("PRAGMA optimize");
+                }
+            }
+        } catch (SQLException e) {
+            error("index", e);
+        } finally {
+            try {
+                deleteEntities.close();
+                deletePalette.close();
+                insertChunk.close();
+                insertEntity.close();
+                insertPalette.close();
+                db.close();
+            } catch (SQLException e) {
+                error("close", e);
+            }
+        }
+    }
+
+    private void error(String op, SQLException e) {
+        if (errors++ < 10) System.err.println("[Churn] sqlite " + op + " failed: " + e.getMessage());
+    }
+
+    @Override
+    public String statsJson() {
+        return "{\"format\":\"sqlite\",\"chunks\":" + chunks + ",\"rows\":" + rows + ",\"queued\":" + queue.size()
+            + ",\"transactions\":" + transactions + ",\"indexed\":" + indexed + ",\"rolledBack\":" + rolledBack
+            + ",\"errors\":" + errors + "}";
+    }
+}
@@ -1,23 +1,98 @@
 package net.fabricmc.churn.generator;
 
+import java.util.Locale;
+
+/**
+ * Server load measured from real tick durations.
+ *
+ * {@link #tickStart} and {@link #tickEnd} are called from the Fabric start/end
+ * server tick events. Each tick's MSPT goes into a ring buffer of the last
+ * {@link #WINDOW} ticks; once a second (every 20 ticks) the mean and p50/p95/p99
+ * are recomputed and published in volatile fields, so readers on any thread get
+ * them without locking. TPS is derived from the mean MSPT: 20 while ticks fit in
+ * 50 ms, 1000 / MSPT beyond that.
+ */
 public class TPSMonitor {
+    public static final int WINDOW = 100;
+    private static final int PUBLISH_EVERY = 20;
+    private static final double TICK_MS = 50.0;
+
     private static final TPSMonitor INSTANCE = new TPSMonitor();
-    private volatile double tps = 20.0;
-    private long lastTick = System.currentTimeMillis();
-    private double ewma = 20.0;
-    private final double alpha = 0.15;
 
     public static TPSMonitor getInstance() { return INSTANCE; }
 
-    public synchronized void recordTick() {
-        long now = System.currentTimeMillis();
-        long dt = now - lastTick;
-        if (dt <= 0) return;
-        double inst = 1000.0 / dt;
-        ewma = alpha * inst + (1 - alpha) * ewma;
-        tps = ewma;
-        lastTick = now;
+    // Server thread only
+    private final long[] samples = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int next;
+    private int count;
+    private long tickStart;
+
+    // Published values
+    private volatile double tps = 20.0;
+    private volatile double mspt;
+    private volatile double p50;
+    private volatile double p95;
+    private volatile double p99;
+    private volatile long lastTickNanos;
+    private volatile long ticks;
+
+    private TPSMonitor() {
+    }
+
+    public void tickStart(long now) {
+        tickStart = now;
+    }
+
+    public void tickEnd(long now) {
+        if (tickStart == 0) return; // registered mid-tick
+        long d = now - tickStart;
+        tickStart = 0;
+        lastTickNanos = d;
+        samples[next] = d;
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) count++;
+        long t = ticks + 1;
+        ticks = t;
+        if (t % PUBLISH_EVERY == 0 || count < PUBLISH_EVERY) publish();
+    }
+
+    private void publish() {
+        int n = count;
+        System.arraycopy(samples, 0, sorted, 0, n);
+        java.util.Arrays.sort(sorted, 0, n);
+        long sum = 0;
+        for (int i = 0; i < n; i++) sum += sorted[i];
+        double mean = sum / (double) n / 1_000_000.0;
+        p50 = percentile(n, 0.50);
+        p95 = percentile(n, 0.95);
+        p99 = percentile(n, 0.99);
+        mspt = mean;
+        tps = mean <= TICK_MS ? 20.0 : 1000.0 / mean;
+    }
+
+    private double percentile(int n, double q) {
+        int i = Math.min(n - 1, (int) Math.ceil(q * n) - 1);
+        return sorted[Math.max(0, i)] / 1_000_000.0;
     }
 
     public double getTps() { return tps; }
+
+    /** Mean milliseconds per tick over the window. */
+    public double getMspt() { return mspt; }
+
+    public double getP50() { return p50; }
+
+    public double getP95() { return p95; }
+
+    public double getP99() { return p99; }
+
+    /** Duration of the most recently finished tick. */
+    public long getLastTickNanos() { return lastTickNanos; }
+
+    public String statsJson() {
+        return String.format(Locale.ROOT,
+            "{\"tps\":%.2f,\"mspt\":%.2f,\"p50\":%.2f,\"p95\":%.2f,\"p99\":%.2f,\"ticks\":%d}",
+            tps, mspt, p50, p95, p99, ticks);
+    }
 }
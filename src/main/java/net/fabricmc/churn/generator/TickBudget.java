@@ -0,0 +1,119 @@
+package net.fabricmc.churn.generator;
+
+import java.util.Locale;
+
+/**
+ * Per-tick time budget for Churn's main-thread work, in nanoseconds.
+ *
+ * {@link GeneratorManager#tickApply} runs at the start of a server tick and may
+ * spend at most {@link #budgetNanos()} on applier work. When the tick ends,
+ * {@link #endTick} gets its duration as measured by {@link TPSMonitor} and adapts
+ * the budget: it is halved whenever the tick overran the target MSPT, otherwise it
+ * grows by a small step, never beyond what the rest of the tick leaves free under
+ * the target nor beyond the configured maximum.
+ *
+ * Every tick's time spent in Churn is also counted in a fixed histogram, reported
+ * under {@code tick} in the status.
+ */
+public class TickBudget {
+    private static final long MIN_BUDGET_NANOS = 100_000L;  // 0.1 ms, so work always progresses
+    private static final long STEP_NANOS = 100_000L;
+    /** Upper bounds of the histogram buckets in microseconds; the last bucket is open. */
+    private static final long[] BUCKET_MICROS = {50, 100, 250, 500, 1000, 2000, 5000, 10000};
+    private static final String[] BUCKET_LABELS = {"<0.05ms", "<0.1ms", "<0.25ms", "<0.5ms", "<1ms", "<2ms", "<5ms", "<10ms", ">=10ms"};
+
+    private final long maxBudgetNanos;
+    private final long targetNanos;
+
+    // Written on the server thread only; volatile so the status can read them
+    private volatile long budgetNanos;
+    private volatile long lastTickNanos;
+    private volatile long lastChurnNanos;
+    private volatile long maxChurnNanos;
+    private volatile long totalChurnNanos;
+    private volatile long ticks;
+    private volatile long overruns;
+    private final long[] histogram = new long[BUCKET_LABELS.length];
+
+    private boolean inTick;
+    private long churnThisTick;
+
+    public TickBudget(double maxBudgetMs, double targetMspt) {
+        this.maxBudgetNanos = Math.max(MIN_BUDGET_NANOS, (long) (maxBudgetMs * 1_000_000L));
+        this.targetNanos = (long) (targetMspt * 1_000_000L);
+        this.budgetNanos = maxBudgetNanos;
+    }
+
+    /**
+     * Mark the start of a server tick.
+     */
+    public void startTick() {
+        inTick = true;
+        churnThisTick = 0;
+    }
+
+    public long budgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * Add time spent in Churn during the current tick.
+     */
+    public void recordChurn(long nanos) {
+        churnThisTick += nanos;
+    }
+
+    /**
+     * Close the current tick: record it and adapt the budget for the next one.
+     */
+    public void endTick(long tick) {
+        if (!inTick) return; // the job started mid-tick
+        long churn = churnThisTick;
+        inTick = false;
+
+        lastTickNanos = tick;
+        lastChurnNanos = churn;
+        if (churn > maxChurnNanos) maxChurnNanos = churn;
+        totalChurnNanos += churn;
+        ticks++;
+        long micros = churn / 1000;
+        int b = 0;
+        while (b < BUCKET_MICROS.length && micros >= BUCKET_MICROS[b]) b++;
+        histogram[b]++;
+
+        long budget = budgetNanos;
+        long ceiling = Math.max(MIN_BUDGET_NANOS, Math.min(maxBudgetNanos, targetNanos - (tick - churn)));
+        if (tick > targetNanos) {
+            overruns++;
+            budget = budget / 2;
+        } else {
+            budget = budget + STEP_NANOS;
+        }
+        budgetNanos = Math.max(MIN_BUDGET_NANOS, Math.min(ceiling, budget));
+    }
+
+    /**
+     * Budget, last tick and the per-tick Churn time histogram as a JSON object.
+     */
+    public String statsJson() {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"budgetMs\":").append(ms(budgetNanos))
+          .append(",\"targetMspt\":").append(ms(targetNanos))
+          .append(",\"lastTickMs\":").append(ms(lastTickNanos))
+          .append(",\"lastChurnMs\":").append(ms(lastChurnNanos))
+          .append(",\"maxChurnMs\":").append(ms(maxChurnNanos))
+          .append(",\"avgChurnMs\":").append(ms(ticks == 0 ? 0 : totalChurnNanos / ticks))
+          .append(",\"ticks\":").append(ticks)
+          .append(",\"overruns\":").append(overruns)
+          .append(",\"churnHistogram\":{");
+        for (int i = 0; i < BUCKET_LABELS.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(BUCKET_LABELS[i]).append("\":").append(histogram[i]);
+        }
+        return sb.append("}}").toString();
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+}
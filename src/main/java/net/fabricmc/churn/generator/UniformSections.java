@@ -0,0 +1,160 @@
+package net.fabricmc.churn.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fast path for sections filled with a single block state (air, stone, water, ...).
+ * Their {@code block_states} is a one-entry palette without a {@code data} array.
+ *
+ * {@link #HANDLER} is attached to {@code sections[].block_states}. It scans the
+ * encoded compound in place; for a uniform section it skips it entirely and stores a
+ * small integer state id under {@link #STATE_TAG} in the section instead. The id
+ * comes from a global table keyed by the raw bytes of the palette entry, so once a
+ * state has been seen nothing is decoded or allocated for it. Anything else is
+ * decoded normally. A stream-mode reader cannot rewind, so the compound is first
+ * captured into a scratch buffer and probed there.
+ */
+public final class UniformSections {
+    /** Section entry holding the uniform state id, see {@link #stateKey(int)}. */
+    public static final String STATE_TAG = "churn:uniform_state";
+
+    private static final int CAPACITY = 4096; // power of two
+    private static final int MAX_PROBE = 16;
+    private static final int PENDING = -2;
+    private static final byte[] PALETTE = "palette".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA = "data".getBytes(StandardCharsets.UTF_8);
+
+    private static final class Entry {
+        final byte[] encoded; // the palette entry compound as stored
+        final int hash;
+        volatile int id = PENDING; // set by the thread that installed the entry
+
+        Entry(byte[] encoded, int hash) {
+            this.encoded = encoded;
+            this.hash = hash;
+        }
+    }
+
+    private static final AtomicReferenceArray<Entry> TABLE = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicReferenceArray<String> KEYS = new AtomicReferenceArray<>(CAPACITY);
+    private static final boolean[] AIR = new boolean[CAPACITY];
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    public static final NbtReader.ValueHandler HANDLER = UniformSections::probe;
+
+    private UniformSections() {
+    }
+
+    public static String stateKey(int id) {
+        return KEYS.get(id);
+    }
+
+    public static boolean isAir(int id) {
+        return KEYS.get(id) != null && AIR[id]; // volatile read first, see register()
+    }
+
+    private static boolean probe(NbtReader r, byte type, String name, NbtCompound section) throws IOException {
+        if (type != NbtReader.TAG_COMPOUND) return false;
+        if (!r.isBuffered()) {
+            NbtReader captured = new NbtReader(r.capture(type));
+            if (!probe(captured, type, name, section)) {
+                // Not uniform: decode from a copy, since array views would alias the scratch buffer
+                ByteBuffer b = captured.buffer();
+                byte[] copy = new byte[b.remaining()];
+                b.get(b.position(), copy);
+                section.putRef(name, type, new NbtReader(ByteBuffer.wrap(copy)).readCompactCompound(NbtProjection.ALL.root()));
+            }
+            return true;
+        }
+        int start = r.position();
+        int entryStart = -1;
+        int entryEnd = -1;
+        byte t;
+        while ((t = r.nextTag()) != NbtReader.TAG_END) {
+            if (r.nameEquals(DATA)) {
+                r.position(start);
+                return false;
+            }
+            if (t == NbtReader.TAG_LIST && r.nameEquals(PALETTE)) {
+                byte elementType = r.readByte();
+                int length = r.readInt();
+                if (elementType != NbtReader.TAG_COMPOUND || length != 1) {
+                    r.position(start);
+                    return false;
+                }
+                entryStart = r.position();
+                r.skip(NbtReader.TAG_COMPOUND);
+                entryEnd = r.position();
+            } else {
+                r.skip(t);
+            }
+        }
+        int id = entryStart < 0 ? -1 : lookup(r.buffer(), entryStart, entryEnd);
+        if (id < 0) {
+            r.position(start);
+            return false;
+        }
+        section.putPrimitive(STATE_TAG, NbtReader.TAG_INT, id);
+        BlockStatesDecoder.UNIFORM_SECTIONS.increment();
+        return true;
+    }
+
+    /**
+     * State id for the encoded palette entry in buf[from, to), registering it on first
+     * sight. Returns -1 if the table is full.
+     */
+    private static int lookup(ByteBuffer buf, int from, int to) throws IOException {
+        int len = to - from;
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) h = (h ^ (buf.get(i) & 0xFF)) * 0x01000193;
+        for (int p = 0; p < MAX_PROBE; p++) {
+            int slot = (h + p) & (CAPACITY - 1);
+            Entry e = TABLE.get(slot);
+            if (e == null) {
+                byte[] copy = new byte[len];
+                buf.get(from, copy, 0, len);
+                Entry mine = new Entry(copy, h);
+                if (TABLE.compareAndSet(slot, null, mine)) {
+                    // Only the winner of the slot takes an id
+                    int id = register(buf, from, to);
+                    mine.id = id;
+                    return id;
+                }
+                e = TABLE.get(slot);
+            }
+            if (e.hash == h && matches(e.encoded, buf, from, len)) {
+                int id;
+                while ((id = e.id) == PENDING) Thread.onSpinWait(); // the winner is registering it
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private static int register(ByteBuffer buf, int from, int to) {
+        int id = NEXT_ID.getAndIncrement();
+        if (id >= CAPACITY) return -1;
+        try {
+            ByteBuffer entry = buf.duplicate();
+            entry.position(from).limit(to);
+            String key = BlockStatesDecoder.stateKey(new NbtReader(entry.slice()).readCompactCompound(NbtProjection.ALL.root()));
+            AIR[id] = BlockStatesDecoder.isAir(key);
+            KEYS.set(id, key); // volatile write publishes AIR[id] too
+            return id;
+        } catch (IOException | RuntimeException e) {
+            return -1; // the slot stays taken and its sections decode normally
+        }
+    }
+
+    private static boolean matches(byte[] encoded, ByteBuffer buf, int from, int len) {
+        if (encoded.length != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (encoded[i] != buf.get(from + i)) return false;
+        }
+        return true;
+    }
+}
@@ -1,122 +1,116 @@
 package net.fabricmc.churn.generator;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 /**
- * Worker runnable that extracts chunk data from world files and enqueues
- * results to the MainThreadApplier.
+ * Read stage of the {@link ExtractionPipeline}: claims whole regions from the work
+ * queue, reads their chunk payloads in sector order and hands them to the
+ * inflate stage. Before each chunk the worker checks in with the
+ * {@link ConcurrencyController}, which may park it or pace it.
  */
 public class Worker implements Runnable {
     private final ChurnWorkQueue queue;
-    private final MainThreadApplier applier;
-    private final AtomicLong completedCounter;
+    private final ExtractionPipeline pipeline;
+    private final ExtractionPipeline.Stage stage;
     private final GeneratorManager manager;
     private final ChunkExtractor extractor;
+    private final ConcurrencyController controller;
+    private final MemoryBudget budget;
+    private final int index;
 
-    public Worker(ChurnWorkQueue queue, MainThreadApplier applier, AtomicLong completedCounter, 
-                  GeneratorManager manager, ChunkExtractor extractor) {
+    public Worker(ChurnWorkQueue queue, ExtractionPipeline pipeline, ExtractionPipeline.Stage stage,
+                  GeneratorManager manager, ChunkExtractor extractor, ConcurrencyController controller,
+                  MemoryBudget budget, int index) {
         this.queue = queue;
-        this.applier = applier;
-        this.completedCounter = completedCounter;
+        this.pipeline = pipeline;
+        this.stage = stage;
         this.manager = manager;
         this.extractor = extractor;
+        this.controller = controller;
+        this.budget = budget;
+        this.index = index;
     }
 
     @Override
     public void run() {
         try {
-            int processedSinceSleep = 0;
             while (!Thread.currentThread().isInterrupted() && !manager.isCancelRequested()) {
-                // Respect global paused state (e.g., TPS-based throttling)
-                while (manager.isWorkersPaused() && !Thread.currentThread().isInterrupted() && !manager.isCancelRequested()) {
-                    try {
-                        Thread.sleep(200);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
+                RegionTask task = queue.poll();
+                if (task == null) {
+                    // Nothing queued: help with the largest region still in progress
+                    task = queue.steal();
                 }
-
-                ChurnTask task = queue.poll();
                 if (task == null) {
                     break;
                 }
-
-                // Extract actual chunk data from world files using ChunkExtractor
                 try {
-                    ChunkData chunkData = extractChunkData(task);
-                    byte[] serialized = serializeChunkData(chunkData);
-                    ChurnBuildResult result = new ChurnBuildResult(task.chunkX, task.chunkZ, serialized);
-                    applier.enqueue(result);
-                } catch (Exception e) {
-                    System.err.println("[Churn] failed to extract chunk " + task.chunkX + "," + task.chunkZ + ": " + e.getMessage());
-                }
-
-                // Update metrics
-                completedCounter.incrementAndGet();
-                processedSinceSleep++;
-                if (processedSinceSleep >= 10) {
-                    processedSinceSleep = 0;
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
+                    processRegion(task);
+                } finally {
+                    if (task.remaining() == 0) queue.finish(task);
                 }
             }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
         } catch (Exception ex) {
             System.err.println("[Churn] Worker error: " + ex);
         }
     }
 
-    private byte[] simulateGenerate(ChurnTask task) {
-        // light-weight placeholder for generated content
-        String payload = "chunk:" + task.chunkX + "," + task.chunkZ;
-        return payload.getBytes();
-    }
-
-    private ChunkData extractChunkData(ChurnTask task) throws Exception {
-        // Extract chunk data using extractor's main API
+    private void processRegion(RegionTask task) throws InterruptedException {
+        RegionFile region = null;
+        boolean unreadable = false; // the region file exists but could not be opened
         try {
-            // Use extractor to pull chunk data from region files
-            java.util.List<ChunkData> chunks = extractor.extractChunksInRadius(task.chunkX, task.chunkZ, 0);
-            if (chunks != null && !chunks.isEmpty()) {
-                return chunks.get(0);
-            }
-            // Fallback: return empty ChunkData if extraction fails
-            ChunkData cd = new ChunkData();
-            cd.chunkX = task.chunkX;
-            cd.chunkZ = task.chunkZ;
-            cd.minY = -64;
-            cd.maxY = 320;
-            cd.blockCount = 0;
-            cd.timestamp = System.currentTimeMillis();
-            cd.metadata.put("status", "extraction_failed");
-            return cd;
+            region = extractor.openRegion(task.regionX, task.regionZ);
         } catch (Exception e) {
-            System.err.println("[Churn] Warning: ChunkExtractor failed, falling back to stub: " + e.getMessage());
-            // Fallback: return a stub chunk if extraction completely fails
-            ChunkData cd = new ChunkData();
-            cd.chunkX = task.chunkX;
-            cd.chunkZ = task.chunkZ;
-            cd.minY = -64;
-            cd.maxY = 320;
-            cd.blockCount = 256 * 256 * 384 / 2; // rough estimate
-            cd.timestamp = System.currentTimeMillis();
-            cd.metadata.put("extracted", "false");
-            cd.metadata.put("error", e.getMessage());
-            return cd;
+            net.fabricmc.churn.ui.ConsoleLogger.warnCorruptedRegion("r." + task.regionX + "." + task.regionZ + ".mca", e.getMessage());
+            unreadable = true;
+        }
+        try {
+            task.orderBySector(region);
+            while (!manager.isCancelRequested()) {
+                controller.await(index);
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                int chunkIndex = task.next();
+                if (chunkIndex < 0) break;
+
+                ChunkWork work = new ChunkWork(task.chunkX(chunkIndex), task.chunkZ(chunkIndex));
+                work.task = task;
+                stage.enter();
+                try {
+                    if (region == null || !extractor.readChunk(region, work)) {
+                        work.data = ChunkExtractor.failedChunk(work.chunkX, work.chunkZ);
+                        if (unreadable) work.failed = true;
+                    }
+                } finally {
+                    stage.exit();
+                }
+                try {
+                    // Blocks while the job's in-flight bytes are at the budget
+                    long reserve = budget.estimate(payloadBytes(work));
+                    budget.reserve(reserve);
+                    work.budget = budget;
+                    work.charged = reserve;
+                    pipeline.submit(work);
+                } catch (InterruptedException ie) {
+                    // Put the chunk back so a pause persists it with the rest of the task
+                    work.releaseBudget();
+                    work.releasePayload();
+                    task.requeue(chunkIndex);
+                    throw ie;
+                }
+            }
+        } finally {
+            if (region != null) region.release();
         }
     }
 
-    private byte[] serializeChunkData(ChunkData cd) {
-        // Simple serialization to JSON bytes
-        String json = "{"
-                + "\"x\":" + cd.chunkX + ","
-                + "\"z\":" + cd.chunkZ + ","
-                + "\"blocks\":" + cd.blockCount
-                + "}";
-        return json.getBytes();
+    private static long payloadBytes(ChunkWork work) {
+        if (work.payload != null) return work.payload.remaining();
+        if (work.external != null) {
+            try {
+                return java.nio.file.Files.size(work.external);
+            } catch (java.io.IOException e) {
+                return 0;
+            }
+        }
+        return 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArrowIpcWriterTest {
+    private static final String[] NAMES = {"x", "ts", "state"};
+    private static final ArrowIpcWriter.Type[] TYPES = {
+        ArrowIpcWriter.Type.INT32, ArrowIpcWriter.Type.INT64, ArrowIpcWriter.Type.UTF8};
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path dir;
+
+    private static Object[] batch(int from, int length) {
+        int[] x = new int[length];
+        long[] ts = new long[length];
+        String[] state = new String[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = from + i;
+            ts[i] = 1700000000000L + from + i;
+            state[i] = "minecraft:block_" + (from + i);
+        }
+        return new Object[]{x, ts, state};
+    }
+
+    private Path write(String name, int batches) throws IOException {
+        Path file = dir.resolve(name);
+        try (ArrowIpcWriter w = new ArrowIpcWriter(file, NAMES, TYPES)) {
+            for (int b = 0; b < batches; b++) w.writeBatch(10 + b, batch(b * 100, 10 + b));
+        }
+        return file;
+    }
+
+    /** Offset just past the last record batch: before the end-of-stream marker and footer. */
+    private static long batchesEnd(byte[] file) {
+        int footerLength = ByteBuffer.wrap(file, file.length - 10, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        return file.length - 10 - footerLength - 8;
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(size);
+        }
+    }
+
+    @Test
+    void writesFileFraming() throws IOException {
+        byte[] file = Files.readAllBytes(write("a.arrow", 2));
+        assertArrayEquals(MAGIC, Arrays.copyOf(file, 6));
+        assertArrayEquals(MAGIC, Arrays.copyOfRange(file, file.length - 6, file.length));
+        long end = batchesEnd(file);
+        assertTrue(end > 8 && end < file.length);
+        ByteBuffer eos = ByteBuffer.wrap(file, (int) end, 8).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0xFFFFFFFF, eos.getInt());
+        assertEquals(0, eos.getInt());
+        assertEquals(0, end % 8, "messages are 8-byte aligned");
+    }
+
+    @Test
+    void countsRows() throws IOException {
+        try (ArrowIpcWriter w = new ArrowIpcWriter(dir.resolve("rows.arrow"), NAMES, TYPES)) {
+            w.writeBatch(5, batch(0, 5));
+            w.writeBatch(0, batch(0, 0));
+            w.writeBatch(3, batch(5, 3));
+            assertEquals(8, w.rows());
+        }
+    }
+
+    @Test
+    void recoveringAnIntactFileReproducesIt() throws IOException {
+        Path file = write("a.arrow", 3);
+        byte[] original = Files.readAllBytes(file);
+        truncate(file, batchesEnd(original));
+        ArrowIpcWriter w = ArrowIpcWriter.recover(file, NAMES, TYPES);
+        assertNotNull(w);
+        w.close();
+        assertArrayEquals(original, Files.readAllBytes(file));
+    }
+
+    @Test
+    void recoveryDropsATornBatch() throws IOException {
+        byte[] expected = Files.readAllBytes(write("two.arrow", 2));
+        Path file = write("three.arrow", 3);
+        byte[] three = Files.readAllBytes(file);
+        truncate(file, batchesEnd(three) - 10);
+        ArrowIpcWriter w = ArrowIpcWriter.recover(file, NAMES, TYPES);
+        assertNotNull(w);
+        w.close();
+        assertArrayEquals(expected, Files.readAllBytes(file));
+    }
+
+    @Test
+    void recoveredWriterAppends() throws IOException {
+        byte[] expected = Files.readAllBytes(write("three.arrow", 3));
+        Path file = write("two.arrow", 2);
+        truncate(file, batchesEnd(Files.readAllBytes(file)));
+        try (ArrowIpcWriter w = ArrowIpcWriter.recover(file, NAMES, TYPES)) {
+            w.writeBatch(12, batch(200, 12));
+        }
+        assertArrayEquals(expected, Files.readAllBytes(file));
+    }
+
+    @Test
+    void recoveryGivesUpOnUnusableFiles() throws IOException {
+        Path tiny = dir.resolve("tiny.arrow");
+        Files.write(tiny, new byte[]{'A', 'R', 'R'});
+        assertNull(ArrowIpcWriter.recover(tiny, NAMES, TYPES));
+
+        Path foreign = dir.resolve("foreign.arrow");
+        Files.write(foreign, new byte[64]);
+        assertNull(ArrowIpcWriter.recover(foreign, NAMES, TYPES));
+
+        // Header intact, schema torn
+        Path torn = write("torn.arrow", 0);
+        truncate(torn, 20);
+        assertNull(ArrowIpcWriter.recover(torn, NAMES, TYPES));
+    }
+}
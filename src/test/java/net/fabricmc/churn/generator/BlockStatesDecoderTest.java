@@ -0,0 +1,99 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class BlockStatesDecoderTest {
+    private static final int BLOCKS = BlockStatesDecoder.SECTION_BLOCKS;
+
+    /** Pack palette indices the way vanilla does: no entry spans two longs. */
+    private static long[] pack(int[] indices, int bits) {
+        int perLong = 64 / bits;
+        long[] packed = new long[(indices.length + perLong - 1) / perLong];
+        for (int i = 0; i < indices.length; i++) {
+            packed[i / perLong] |= (long) indices[i] << (i % perLong * bits);
+        }
+        return packed;
+    }
+
+    private static NbtCompound blockStates(String[] palette, long[] data) throws IOException {
+        TestNbt t = TestNbt.root().beginList("palette", NbtReader.TAG_COMPOUND, palette.length);
+        for (String name : palette) t.putString("Name", name).end();
+        if (data != null) t.putLongArray("data", data);
+        return NbtReader.readCompact(ByteBuffer.wrap(t.end().toByteArray()), NbtProjection.ALL);
+    }
+
+    @Test
+    void countUnpacksEveryWidth() {
+        for (int bits = 4; bits <= 12; bits++) {
+            int n = Math.min(1 << bits, 37);
+            int[] indices = new int[BLOCKS];
+            int[] expected = new int[1 << bits];
+            for (int i = 0; i < BLOCKS; i++) {
+                indices[i] = (i * 7) % n;
+                expected[indices[i]]++;
+            }
+            long[] packed = pack(indices, bits);
+            int[] counts = new int[1 << bits];
+            BlockStatesDecoder.count(packed, packed.length, bits, counts);
+            assertArrayEquals(expected, counts);
+        }
+    }
+
+    @Test
+    void countIgnoresPaddingInTheLastWord() {
+        int bits = 5; // 12 per long: the last of 342 words holds 4 entries
+        long[] packed = pack(new int[BLOCKS], bits);
+        packed[packed.length - 1] |= -1L << (4 * bits);
+        int[] counts = new int[1 << bits];
+        BlockStatesDecoder.count(packed, packed.length, bits, counts);
+        assertEquals(BLOCKS, counts[0]);
+        assertEquals(0, counts[31]);
+    }
+
+    @Test
+    void decodesMixedSection() throws IOException {
+        int[] indices = new int[BLOCKS];
+        for (int i = 0; i < BLOCKS / 4; i++) indices[i] = 1;
+        ChunkData cd = new ChunkData();
+        int nonAir = BlockStatesDecoder.decodeSection(
+            blockStates(new String[]{"minecraft:air", "minecraft:stone"}, pack(indices, 4)), cd);
+        assertEquals(BLOCKS / 4, nonAir);
+        assertEquals(BLOCKS / 4, (int) cd.blockPalette.get("minecraft:stone"));
+        assertEquals(BLOCKS * 3 / 4, (int) cd.blockPalette.get("minecraft:air"));
+    }
+
+    @Test
+    void decodesSingleEntryPaletteWithoutData() throws IOException {
+        ChunkData cd = new ChunkData();
+        assertEquals(BLOCKS, BlockStatesDecoder.decodeSection(blockStates(new String[]{"minecraft:stone"}, null), cd));
+        assertEquals(BLOCKS, (int) cd.blockPalette.get("minecraft:stone"));
+    }
+
+    @Test
+    void countsIndicesPastThePaletteAsInvalid() throws IOException {
+        int[] indices = new int[BLOCKS];
+        indices[0] = 5;
+        indices[1] = 9;
+        ChunkData cd = new ChunkData();
+        BlockStatesDecoder.decodeSection(blockStates(new String[]{"minecraft:air", "minecraft:dirt"}, pack(indices, 4)), cd);
+        assertEquals("2", cd.metadata.get("invalid_palette_indices"));
+        assertEquals(BLOCKS - 2, (int) cd.blockPalette.get("minecraft:air"));
+    }
+
+    @Test
+    void rejectsDataOfTheWrongLength() throws IOException {
+        NbtCompound states = blockStates(new String[]{"minecraft:air", "minecraft:stone"}, new long[100]);
+        assertThrows(IOException.class, () -> BlockStatesDecoder.decodeSection(states, new ChunkData()));
+    }
+
+    @Test
+    void rejectsMissingPalette() throws IOException {
+        NbtCompound states = NbtReader.readCompact(ByteBuffer.wrap(TestNbt.root().end().toByteArray()), NbtProjection.ALL);
+        assertThrows(IOException.class, () -> BlockStatesDecoder.decodeSection(states, new ChunkData()));
+    }
+}
@@ -0,0 +1,70 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CheckpointJournalTest {
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeInstance() {
+        RegionCheckpointManager.close();
+    }
+
+    private RegionCheckpointManager open() throws IOException {
+        RegionCheckpointManager.close();
+        RegionCheckpointManager.init(dir);
+        return RegionCheckpointManager.getInstance();
+    }
+
+    @Test
+    void replaysJournalAndDropsTornTail() throws IOException {
+        RegionCheckpointManager m = open();
+        ByteBuffer entries = ByteBuffer.allocate(3 * 8 + 5);
+        entries.putInt(4).putInt(9);
+        entries.putInt(-40).putInt(-3);
+        entries.putInt(4).putInt(9); // duplicate
+        entries.put(new byte[]{0, 0, 0, 7, 0}); // torn entry
+        Path journal = dir.resolve(CheckpointJournal.FILE_NAME);
+        Files.write(journal, entries.array());
+        assertEquals(3, CheckpointJournal.replay(journal, m));
+        assertTrue(m.isChunkDone(4, 9));
+        assertTrue(m.isChunkDone(-40, -3));
+        assertFalse(m.isChunkDone(7, 0));
+        assertEquals(1, m.doneInRegion(0, 0));
+    }
+
+    @Test
+    void journaledMarksSurviveLosingTheBitmap() throws IOException {
+        JobConfig cfg = new JobConfig();
+        cfg.checkpointDurability = "batch";
+        RegionCheckpointManager m = open();
+        m.openJournal(cfg);
+        for (int i = 0; i < 100; i++) m.markChunkDone(i, -i);
+        m.closeJournal();
+        m = open();
+        for (int i = 0; i < 100; i++) assertTrue(m.isChunkDone(i, -i));
+
+        // A journal written while the bitmap was lost is replayed into a fresh one
+        Path journal = dir.resolve(CheckpointJournal.FILE_NAME);
+        ByteBuffer entries = ByteBuffer.allocate(16);
+        entries.putInt(500).putInt(500).putInt(-500).putInt(7);
+        Files.write(journal, entries.array());
+        RegionCheckpointManager.close();
+        Files.delete(dir.resolve(RegionCheckpointManager.FILE_NAME));
+        m = open();
+        m.openJournal(cfg);
+        assertTrue(m.isChunkDone(500, 500));
+        assertTrue(m.isChunkDone(-500, 7));
+        assertFalse(m.isChunkDone(5, -5));
+    }
+}
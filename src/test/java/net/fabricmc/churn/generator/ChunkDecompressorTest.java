@@ -0,0 +1,146 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkDecompressorTest {
+    /** Mildly compressible bytes, so the inflater has real work to do. */
+    private static byte[] payload(int length, long seed) {
+        byte[] b = new byte[length];
+        Random r = new Random(seed);
+        for (int i = 0; i < length; i++) b[i] = (byte) (r.nextInt(16) + (i >> 10));
+        return b;
+    }
+
+    private static byte[] zlib(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream z = new DeflaterOutputStream(out)) {
+            z.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream z = new GZIPOutputStream(out)) {
+            z.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(ChunkDecompressor d, int compression, byte[] compressed) throws IOException {
+        ChunkBuffer out = ChunkBuffer.acquire();
+        try {
+            d.decompress(compression, ByteBuffer.wrap(compressed), out);
+            return Arrays.copyOf(out.array, out.length);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Test
+    void pooledDecompressorIsReusedAcrossCodecs() throws IOException {
+        byte[] a = payload(200_000, 1);
+        byte[] b = payload(3_000, 2);
+        ChunkDecompressor d = ChunkDecompressor.acquire();
+        assertArrayEquals(a, decompress(d, ChunkDecompressor.COMPRESSION_ZLIB, zlib(a)));
+        assertArrayEquals(b, decompress(d, ChunkDecompressor.COMPRESSION_GZIP, gzip(b)));
+        d.release();
+
+        // Whichever instance comes back, its inflaters must start from a clean state
+        d = ChunkDecompressor.acquire();
+        assertArrayEquals(b, decompress(d, ChunkDecompressor.COMPRESSION_ZLIB, zlib(b)));
+        assertArrayEquals(a, decompress(d, ChunkDecompressor.COMPRESSION_GZIP, gzip(a)));
+        d.release();
+    }
+
+    @Test
+    void streamsRoundTrip() throws IOException {
+        byte[] raw = payload(300_000, 3);
+        ChunkDecompressor d = ChunkDecompressor.acquire();
+        try {
+            for (int compression : new int[]{ChunkDecompressor.COMPRESSION_ZLIB, ChunkDecompressor.COMPRESSION_GZIP}) {
+                byte[] compressed = compression == ChunkDecompressor.COMPRESSION_ZLIB ? zlib(raw) : gzip(raw);
+                try (InputStream in = d.openStream(compression, new ByteArrayInputStream(compressed))) {
+                    assertArrayEquals(raw, in.readAllBytes());
+                }
+            }
+        } finally {
+            d.release();
+        }
+    }
+
+    @Test
+    void outputLargerThanThePoolCapGrowsAndIsNotRetained() throws IOException {
+        byte[] raw = payload(9 * 1024 * 1024, 4);
+        ChunkDecompressor d = ChunkDecompressor.acquire();
+        ChunkBuffer out = ChunkBuffer.acquire();
+        try {
+            d.decompress(ChunkDecompressor.COMPRESSION_ZLIB, ByteBuffer.wrap(zlib(raw)), out);
+            assertEquals(raw.length, out.length);
+            assertArrayEquals(raw, Arrays.copyOf(out.array, out.length));
+        } finally {
+            d.release();
+        }
+        byte[] big = out.array;
+        out.release();
+        List<ChunkBuffer> taken = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            ChunkBuffer b = ChunkBuffer.acquire();
+            assertNotSame(big, b.array);
+            taken.add(b);
+        }
+        for (ChunkBuffer b : taken) b.release();
+    }
+
+    @Test
+    void decompressorsPastThePoolCapAreNotHandedOutAgain() throws IOException {
+        byte[] raw = payload(10_000, 5);
+        byte[] compressed = zlib(raw);
+        List<ChunkDecompressor> held = new ArrayList<>();
+        for (int i = 0; i < 200; i++) held.add(ChunkDecompressor.acquire());
+        // Most of these are evicted and ended; none of them may come back
+        for (ChunkDecompressor d : held) d.release();
+        held.clear();
+        for (int i = 0; i < 200; i++) {
+            ChunkDecompressor d = ChunkDecompressor.acquire();
+            assertArrayEquals(raw, decompress(d, ChunkDecompressor.COMPRESSION_ZLIB, compressed));
+            held.add(d);
+        }
+        for (ChunkDecompressor d : held) d.release();
+    }
+
+    @Test
+    void rejectsCorruptAndTruncatedInput() throws IOException {
+        byte[] compressed = zlib(payload(50_000, 6));
+        byte[] cut = Arrays.copyOf(compressed, compressed.length / 2);
+        byte[] garbage = compressed.clone();
+        garbage[0] = 0;
+        byte[] notGzip = zlib(payload(100, 7));
+        ChunkDecompressor d = ChunkDecompressor.acquire();
+        try {
+            assertThrows(IOException.class, () -> decompress(d, ChunkDecompressor.COMPRESSION_ZLIB, cut));
+            assertThrows(IOException.class, () -> decompress(d, ChunkDecompressor.COMPRESSION_ZLIB, garbage));
+            assertThrows(IOException.class, () -> decompress(d, ChunkDecompressor.COMPRESSION_GZIP, notGzip));
+            assertThrows(IOException.class, () -> decompress(d, 99, compressed));
+            // A failed inflate must not poison the next one
+            byte[] raw = payload(1_000, 8);
+            assertArrayEquals(raw, decompress(d, ChunkDecompressor.COMPRESSION_ZLIB, zlib(raw)));
+        } finally {
+            d.release();
+        }
+    }
+}
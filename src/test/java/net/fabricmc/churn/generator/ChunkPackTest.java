@@ -0,0 +1,137 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChunkPackTest {
+    @TempDir
+    Path dir;
+
+    private static ChunkData chunk(int x, int z) {
+        ChunkData c = new ChunkData();
+        c.chunkX = x;
+        c.chunkZ = z;
+        c.minY = -64;
+        c.maxY = 320;
+        c.blockCount = Math.abs(x * 1000 + z);
+        c.timestamp = 1700000000123L;
+        c.blockPalette.put("minecraft:stone", 4000 + x);
+        c.blockPalette.put("minecraft:air", 10);
+        c.metadata.put("Status", "full");
+        return c;
+    }
+
+    private Path pack(int regionX, int regionZ) {
+        return dir.resolve("r." + regionX + "." + regionZ + ChunkPack.SUFFIX);
+    }
+
+    private void write(Path file, boolean seal, ChunkData... chunks) throws IOException {
+        ShardedOutputWriter.Shard shard = ChunkPack.FORMAT.open(file);
+        for (ChunkData c : chunks) shard.append(ChunkPack.encode(c));
+        shard.close(seal);
+    }
+
+    @Test
+    void roundTripsRecords() throws IOException {
+        List<ChunkData> chunks = new ArrayList<>();
+        for (int z = -32; z < 0; z++) for (int x = -32; x < 0; x++) chunks.add(chunk(x, z));
+        write(pack(-1, -1), true, chunks.toArray(new ChunkData[0]));
+        try (ChunkPackReader r = new ChunkPackReader(dir)) {
+            ChunkPackReader.Record rec = r.get(-7, -20);
+            assertEquals(-7, rec.chunkX);
+            assertEquals(-20, rec.chunkZ);
+            assertEquals(-64, rec.minY);
+            assertEquals(320, rec.maxY);
+            assertEquals(7020, rec.blockCount);
+            assertEquals(1700000000123L, rec.timestamp);
+            assertEquals(3993, (int) rec.blockPalette.get("minecraft:stone"));
+            assertEquals("full", rec.metadata.get("Status"));
+            assertNull(r.get(5, 5));
+            int[] seen = {0};
+            r.scan(-10, -20, -5, -18, c -> seen[0]++);
+            assertEquals(18, seen[0]);
+        }
+    }
+
+    @Test
+    void latestRecordWinsAcrossReopen() throws IOException {
+        write(pack(0, 0), true, chunk(1, 1), chunk(2, 1));
+        ChunkData again = chunk(1, 1);
+        again.blockCount = 42;
+        write(pack(0, 0), true, again, chunk(3, 1));
+        try (ChunkPackReader r = new ChunkPackReader(dir)) {
+            assertEquals(42, r.get(1, 1).blockCount);
+            assertEquals(2001, r.get(2, 1).blockCount);
+            assertEquals(3001, r.get(3, 1).blockCount);
+        }
+    }
+
+    @Test
+    void reopenDropsATornTail() throws IOException {
+        Path file = pack(0, 0);
+        write(file, false, chunk(1, 1), chunk(2, 1));
+        byte[] whole = ChunkPack.encode(chunk(3, 1));
+        Files.write(file, Arrays.copyOf(whole, whole.length - 3), StandardOpenOption.APPEND);
+        write(file, true, chunk(4, 1));
+        try (ChunkPackReader r = new ChunkPackReader(dir)) {
+            assertEquals(1001, r.get(1, 1).blockCount);
+            assertEquals(2001, r.get(2, 1).blockCount);
+            assertNull(r.get(3, 1));
+            assertEquals(4001, r.get(4, 1).blockCount);
+        }
+    }
+
+    @Test
+    void reopenDropsAMalformedVarint() throws IOException {
+        Path file = pack(0, 0);
+        write(file, false, chunk(1, 1));
+        byte[] junk = new byte[12];
+        Arrays.fill(junk, (byte) 0xFF);
+        Files.write(file, junk, StandardOpenOption.APPEND);
+        write(file, true, chunk(2, 1));
+        try (ChunkPackReader r = new ChunkPackReader(dir)) {
+            assertEquals(1001, r.get(1, 1).blockCount);
+            assertEquals(2001, r.get(2, 1).blockCount);
+        }
+    }
+
+    @Test
+    void varintsRoundTrip() {
+        ChunkData c = chunk(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        c.timestamp = Long.MIN_VALUE;
+        ByteBuffer b = ByteBuffer.wrap(ChunkPack.encode(c));
+        int length = (int) ChunkPack.readUvarint(b);
+        assertEquals(b.remaining(), length);
+        ChunkPackReader.Record rec = ChunkPackReader.decode(b);
+        assertEquals(Integer.MIN_VALUE, rec.chunkX);
+        assertEquals(Integer.MAX_VALUE, rec.chunkZ);
+        assertEquals(Long.MIN_VALUE, rec.timestamp);
+        assertThrows(IllegalArgumentException.class, () -> ChunkPack.readUvarint(ByteBuffer.wrap(new byte[]{
+            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1})));
+    }
+
+    @Test
+    void readerRejectsUnsealedPack() throws IOException {
+        write(pack(0, 0), false, chunk(1, 1));
+        try (ChunkPackReader r = new ChunkPackReader(dir)) {
+            assertThrows(IOException.class, () -> r.get(1, 1));
+        }
+    }
+
+    @Test
+    void shardRejectsForeignFile() throws IOException {
+        Files.write(pack(0, 0), new byte[64]);
+        assertThrows(IOException.class, () -> ChunkPack.FORMAT.open(pack(0, 0)));
+    }
+}
@@ -0,0 +1,99 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class Lz4BlockDecoderTest {
+    private static final int RAW = 0x10;
+    private static final int LZ4 = 0x20;
+
+    // "abcd", then a 12-byte match at offset 4, then the literal-only tail "xyz"
+    private static final byte[] COMPRESSED = {0x48, 'a', 'b', 'c', 'd', 4, 0, 0x30, 'x', 'y', 'z'};
+    private static final String DECOMPRESSED = "abcdabcdabcdabcdxyz";
+
+    /** One block in lz4-java's LZ4BlockOutputStream framing. */
+    private static byte[] block(int method, byte[] body, int decompressedLength) {
+        ByteBuffer b = ByteBuffer.allocate(21 + body.length).order(ByteOrder.LITTLE_ENDIAN);
+        b.put("LZ4Block".getBytes(StandardCharsets.US_ASCII)).put((byte) method)
+            .putInt(body.length).putInt(decompressedLength).putInt(0).put(body);
+        return b.array();
+    }
+
+    private static byte[] stream(byte[]... blocks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] b : blocks) out.writeBytes(b);
+        return out.toByteArray();
+    }
+
+    private static String decode(byte[] data) throws IOException {
+        ChunkBuffer out = ChunkBuffer.acquire();
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            Lz4BlockDecoder.decode(in, out);
+            assertEquals(data.length, in.position());
+            return new String(out.array, 0, out.length, StandardCharsets.US_ASCII);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Test
+    void decodesRawAndCompressedBlocks() throws IOException {
+        byte[] raw = "raw-".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = stream(block(RAW, raw, raw.length), block(LZ4, COMPRESSED, DECOMPRESSED.length()), block(RAW, new byte[0], 0));
+        assertEquals("raw-" + DECOMPRESSED, decode(data));
+    }
+
+    @Test
+    void streamMatchesBufferDecode() throws IOException {
+        byte[] data = stream(block(LZ4, COMPRESSED, DECOMPRESSED.length()), block(RAW, new byte[0], 0),
+            block(LZ4, COMPRESSED, DECOMPRESSED.length()));
+        try (InputStream in = Lz4BlockDecoder.stream(new ByteArrayInputStream(data))) {
+            assertEquals(decode(data), new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void rejectsBadMagic() {
+        byte[] data = block(RAW, new byte[]{1}, 1);
+        data[0] = 'X';
+        assertThrows(IOException.class, () -> decode(data));
+    }
+
+    @Test
+    void rejectsTruncatedHeader() {
+        byte[] data = block(RAW, new byte[]{1}, 1);
+        assertThrows(IOException.class, () -> decode(java.util.Arrays.copyOf(data, 10)));
+    }
+
+    @Test
+    void rejectsHugeLengthBeforeGrowingOutput() {
+        byte[] data = block(LZ4, COMPRESSED, Integer.MAX_VALUE);
+        ChunkBuffer out = ChunkBuffer.acquire();
+        int capacity = out.array.length;
+        assertThrows(IOException.class, () -> Lz4BlockDecoder.decode(ByteBuffer.wrap(data), out));
+        assertEquals(capacity, out.array.length);
+        out.release();
+    }
+
+    @Test
+    void rejectsMatchBeforeStartOfOutput() {
+        byte[] bad = COMPRESSED.clone();
+        bad[5] = 9; // offset 9 with only 4 bytes written
+        assertThrows(IOException.class, () -> decode(block(LZ4, bad, DECOMPRESSED.length())));
+    }
+
+    @Test
+    void rejectsWrongDecompressedLength() {
+        assertThrows(IOException.class, () -> decode(block(LZ4, COMPRESSED, DECOMPRESSED.length() + 1)));
+    }
+}
@@ -0,0 +1,120 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class NbtReaderTest {
+    /** A small chunk: position, status, one mixed and one uniform section. */
+    private static byte[] chunk() {
+        TestNbt t = TestNbt.root()
+            .putInt("xPos", 3)
+            .putInt("zPos", -7)
+            .putString("Status", "minecraft:full")
+            .putString("Unprojected", "dropped");
+        t.beginList("sections", NbtReader.TAG_COMPOUND, 2);
+        // Mixed: air and stone, 4 bits per entry, first half stone
+        t.tag(NbtReader.TAG_BYTE, "Y").b(-4);
+        t.beginCompound("block_states");
+        t.beginList("palette", NbtReader.TAG_COMPOUND, 2)
+            .putString("Name", "minecraft:air").end()
+            .putString("Name", "minecraft:stone").end();
+        long[] data = new long[256];
+        Arrays.fill(data, 0, 128, 0x1111111111111111L);
+        t.putLongArray("data", data);
+        t.end();
+        t.end();
+        // Uniform water
+        t.tag(NbtReader.TAG_BYTE, "Y").b(-3);
+        t.beginCompound("block_states");
+        t.beginList("palette", NbtReader.TAG_COMPOUND, 1)
+            .putString("Name", "minecraft:water")
+            .beginCompound("Properties").putString("level", "0").end()
+            .end();
+        t.end();
+        t.end();
+        return t.end().toByteArray();
+    }
+
+    private static NbtCompound readBuffer(byte[] b, NbtProjection p) throws IOException {
+        return NbtReader.readCompact(ByteBuffer.wrap(b), p);
+    }
+
+    private static NbtCompound readStream(byte[] b, NbtProjection p) throws IOException {
+        return NbtReader.readCompact(new ByteArrayInputStream(b), p);
+    }
+
+    @Test
+    void bufferAndStreamReadTheSameTree() throws IOException {
+        byte[] b = chunk();
+        NbtCompound fromBuffer = readBuffer(b, NbtProjection.ALL);
+        NbtCompound fromStream = readStream(b, NbtProjection.ALL);
+        for (NbtCompound c : new NbtCompound[]{fromBuffer, fromStream}) {
+            assertEquals(3, c.getInt("xPos", 0));
+            assertEquals(-7, c.getInt("zPos", 0));
+            assertEquals("minecraft:full", c.getString("Status"));
+            NbtList sections = c.getList("sections");
+            assertEquals(2, sections.size());
+            NbtArray data = sections.getCompound(0).getCompound("block_states").getArray("data");
+            assertEquals(256, data.length());
+            assertEquals(0x1111111111111111L, data.getLong(0));
+            assertEquals(0L, data.getLong(255));
+        }
+        assertEquals(fromBuffer.toMap().keySet(), fromStream.toMap().keySet());
+    }
+
+    @Test
+    void projectionKeepsOnlySelectedPaths() throws IOException {
+        NbtProjection p = NbtProjection.compile("xPos, sections[].Y");
+        for (NbtCompound c : new NbtCompound[]{readBuffer(chunk(), p), readStream(chunk(), p)}) {
+            assertEquals(3, c.getInt("xPos", 0));
+            assertFalse(c.contains("zPos"));
+            assertFalse(c.contains("Unprojected"));
+            NbtCompound section = c.getList("sections").getCompound(1);
+            assertEquals(-3, section.getInt("Y", 0));
+            assertFalse(section.contains("block_states"));
+        }
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        byte[] b = chunk();
+        byte[] cut = Arrays.copyOf(b, b.length / 2);
+        assertThrows(IOException.class, () -> readBuffer(cut, NbtProjection.ALL));
+        assertThrows(IOException.class, () -> readStream(cut, NbtProjection.ALL));
+    }
+
+    @Test
+    void rejectsArrayLengthsPastTheInput() {
+        byte[] b = TestNbt.root().tag(NbtReader.TAG_LONG_ARRAY, "data").i(1 << 28).end().toByteArray();
+        assertThrows(IOException.class, () -> readBuffer(b, NbtProjection.ALL));
+        // A stream cannot tell how much is left; the length cap applies instead
+        assertThrows(IOException.class, () -> readStream(b, NbtProjection.ALL));
+        byte[] list = TestNbt.root().beginList("l", NbtReader.TAG_LONG, Integer.MAX_VALUE).end().toByteArray();
+        assertThrows(IOException.class, () -> readStream(list, NbtProjection.ALL));
+    }
+
+    @Test
+    void rejectsNegativeLengthsAndUnknownTags() {
+        byte[] negative = TestNbt.root().tag(NbtReader.TAG_INT_ARRAY, "a").i(-1).end().toByteArray();
+        assertThrows(IOException.class, () -> readBuffer(negative, NbtProjection.ALL));
+        byte[] unknown = TestNbt.root().tag((byte) 42, "x").end().toByteArray();
+        assertThrows(IOException.class, () -> readBuffer(unknown, NbtProjection.ALL));
+        assertThrows(IOException.class, () -> readStream(unknown, NbtProjection.ALL));
+    }
+
+    @Test
+    void rejectsDeepNesting() {
+        TestNbt t = TestNbt.root();
+        for (int i = 0; i < 600; i++) t.beginCompound("c");
+        for (int i = 0; i <= 600; i++) t.end();
+        byte[] b = t.toByteArray();
+        assertThrows(IOException.class, () -> readBuffer(b, NbtProjection.ALL));
+        assertThrows(IOException.class, () -> readStream(b, NbtProjection.ALL));
+    }
+}
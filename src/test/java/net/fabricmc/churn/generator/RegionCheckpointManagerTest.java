@@ -0,0 +1,69 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RegionCheckpointManagerTest {
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeInstance() {
+        RegionCheckpointManager.close();
+    }
+
+    private RegionCheckpointManager open() throws IOException {
+        RegionCheckpointManager.close();
+        RegionCheckpointManager.init(dir);
+        return RegionCheckpointManager.getInstance();
+    }
+
+    @Test
+    void marksChunksAcrossRegions() throws IOException {
+        RegionCheckpointManager m = open();
+        m.markChunkDone(0, 0);
+        m.markChunkDone(31, 31);
+        m.markChunkDone(-1, -1);
+        m.markChunkDone(-33, 64);
+        m.markChunkDone(0, 0); // already set
+        assertTrue(m.isChunkDone(0, 0));
+        assertTrue(m.isChunkDone(31, 31));
+        assertTrue(m.isChunkDone(-1, -1));
+        assertTrue(m.isChunkDone(-33, 64));
+        assertFalse(m.isChunkDone(1, 0));
+        assertFalse(m.isChunkDone(-32, 64));
+        assertFalse(m.isChunkDone(1000, 1000));
+        assertEquals(2, m.doneInRegion(0, 0));
+        assertEquals(1, m.doneInRegion(-1, -1));
+        assertEquals(1, m.doneInRegion(-2, 2));
+        assertEquals(0, m.doneInRegion(5, 5));
+    }
+
+    @Test
+    void bitmapSurvivesReopen() throws IOException {
+        RegionCheckpointManager m = open();
+        // More regions than the initial slot table, so the mapping grows
+        for (int r = 0; r < 300; r++) m.markChunkDone(r * 32 + 5, -r * 32);
+        for (int x = 0; x < 32; x++) for (int z = 0; z < 32; z++) m.markChunkDone(x, z + 64);
+        m = open();
+        for (int r = 0; r < 300; r++) {
+            assertTrue(m.isChunkDone(r * 32 + 5, -r * 32));
+            assertFalse(m.isChunkDone(r * 32 + 6, -r * 32));
+        }
+        assertEquals(1024, m.doneInRegion(0, 2));
+        assertTrue(m.isChunkDone(17, 80));
+    }
+
+    @Test
+    void rejectsForeignBitmapFile() throws IOException {
+        Files.write(dir.resolve(RegionCheckpointManager.FILE_NAME), new byte[128]);
+        assertThrows(IOException.class, () -> RegionCheckpointManager.init(dir));
+    }
+}
@@ -0,0 +1,97 @@
+package net.fabricmc.churn.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Tiny big-endian NBT writer for building test inputs.
+ */
+final class TestNbt {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    /** Start an unnamed root compound. */
+    static TestNbt root() {
+        return new TestNbt().tag(NbtReader.TAG_COMPOUND, "");
+    }
+
+    TestNbt tag(byte type, String name) {
+        try {
+            out.writeByte(type);
+            out.writeUTF(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    TestNbt putInt(String name, int v) {
+        return tag(NbtReader.TAG_INT, name).i(v);
+    }
+
+    TestNbt putString(String name, String v) {
+        return tag(NbtReader.TAG_STRING, name).s(v);
+    }
+
+    TestNbt putLongArray(String name, long[] v) {
+        tag(NbtReader.TAG_LONG_ARRAY, name).i(v.length);
+        for (long l : v) l(l);
+        return this;
+    }
+
+    TestNbt beginCompound(String name) {
+        return tag(NbtReader.TAG_COMPOUND, name);
+    }
+
+    /** Start a list; its elements are written with the raw writers below. */
+    TestNbt beginList(String name, byte elementType, int length) {
+        return tag(NbtReader.TAG_LIST, name).b(elementType).i(length);
+    }
+
+    /** TAG_END: closes a compound. */
+    TestNbt end() {
+        return b(NbtReader.TAG_END);
+    }
+
+    TestNbt b(int v) {
+        try {
+            out.writeByte(v);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    TestNbt i(int v) {
+        try {
+            out.writeInt(v);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    TestNbt l(long v) {
+        try {
+            out.writeLong(v);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    TestNbt s(String v) {
+        try {
+            out.writeUTF(v);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,68 @@
+package net.fabricmc.churn.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class UniformSectionsTest {
+    /** One mixed section (air and stone) and one uniform water section. */
+    private static byte[] chunk() {
+        TestNbt t = TestNbt.root();
+        t.beginList("sections", NbtReader.TAG_COMPOUND, 2);
+        t.tag(NbtReader.TAG_BYTE, "Y").b(-4);
+        t.beginCompound("block_states");
+        t.beginList("palette", NbtReader.TAG_COMPOUND, 2)
+            .putString("Name", "minecraft:air").end()
+            .putString("Name", "minecraft:stone").end();
+        t.putLongArray("data", new long[256]);
+        t.end();
+        t.end();
+        t.tag(NbtReader.TAG_BYTE, "Y").b(-3);
+        t.beginCompound("block_states");
+        t.beginList("palette", NbtReader.TAG_COMPOUND, 1)
+            .putString("Name", "minecraft:water")
+            .beginCompound("Properties").putString("level", "0").end()
+            .end();
+        t.end();
+        t.end();
+        return t.end().toByteArray();
+    }
+
+    @Test
+    void uniformSectionsTakeTheFastPathInBothModes() throws IOException {
+        byte[] b = chunk();
+        for (NbtCompound c : new NbtCompound[]{
+                NbtReader.readCompact(ByteBuffer.wrap(b), NbtProjection.DEFAULT),
+                NbtReader.readCompact(new ByteArrayInputStream(b), NbtProjection.DEFAULT)}) {
+            NbtCompound mixed = c.getList("sections").getCompound(0);
+            NbtCompound uniform = c.getList("sections").getCompound(1);
+            assertFalse(mixed.contains(UniformSections.STATE_TAG));
+            assertNotNull(mixed.getCompound("block_states"));
+            int id = uniform.getInt(UniformSections.STATE_TAG, -1);
+            assertTrue(id >= 0, "uniform section should carry a state id");
+            assertEquals("minecraft:water[level=0]", UniformSections.stateKey(id));
+            assertFalse(UniformSections.isAir(id));
+        }
+    }
+
+    @Test
+    void handlerOnlySeesTheTagItIsAttachedTo() throws IOException {
+        List<String> seen = new ArrayList<>();
+        NbtProjection p = NbtProjection.compile("sections[].block_states")
+            .attach("sections[].block_states", (r, type, name, parent) -> {
+                seen.add(name);
+                return false;
+            });
+        NbtCompound c = NbtReader.readCompact(ByteBuffer.wrap(chunk()), p);
+        assertEquals(List.of("block_states", "block_states"), seen);
+        NbtCompound water = c.getList("sections").getCompound(1).getCompound("block_states")
+            .getList("palette").getCompound(0);
+        assertEquals("0", water.getCompound("Properties").getString("level"));
+    }
+}